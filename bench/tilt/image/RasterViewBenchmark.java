@@ -0,0 +1,144 @@
+/*
+ * This file is part of TILT.
+ *
+ *  TILT is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  TILT is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with TILT.  If not, see <http://www.gnu.org/licenses/>.
+ *  (c) copyright Desmond Schmidt 2015
+ */
+
+package tilt.image;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import javax.imageio.ImageIO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compare the two ways the stages walk a greyscale raster: a getPixel or
+ * setPixel call for each pixel, as the loops did before they moved to
+ * RasterView, and stepping through the raster's byte array by rows. Each
+ * pair does the same work on the same two-tone SyntheticPage: counting
+ * its black pixels (a read-only pass, like Border and Blob) and
+ * thresholding it into a second raster (a read and write pass, like
+ * FindLines.lightenImage and RemoveNoise).
+ * Run with "ant bench -Dbench.args=RasterViewBenchmark".
+ * @author desmond
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations=3)
+@Measurement(iterations=5)
+@Fork(1)
+@State(Scope.Thread)
+public class RasterViewBenchmark
+{
+    /** the grey level below which a pixel counts as black */
+    static int THRESHOLD = 128;
+    @Param({"1200","2400","4800"})
+    public int width;
+    WritableRaster src;
+    WritableRaster dst;
+    /**
+     * Draw a page and make two-tone and blank rasters of it
+     * @throws Exception
+     */
+    @Setup(Level.Trial)
+    public void open() throws Exception
+    {
+        File dir = Files.createTempDirectory("tilt-bench").toFile();
+        SyntheticPage sp = new SyntheticPage( width, dir );
+        BufferedImage page = ImageIO.read( sp.image );
+        sp.image.delete();
+        sp.text.delete();
+        dir.delete();
+        BufferedImage grey = new BufferedImage( page.getWidth(),
+            page.getHeight(), BufferedImage.TYPE_BYTE_GRAY );
+        grey.getGraphics().drawImage( page, 0, 0, null );
+        src = grey.getRaster();
+        RasterView rv = new RasterView( src );
+        for ( int y=0;y<rv.height;y++ )
+        {
+            int end = rv.row(y)+rv.width;
+            for ( int i=rv.row(y);i<end;i++ )
+                rv.data[i] = ((rv.data[i]&0xFF)<THRESHOLD)?0:(byte)255;
+        }
+        dst = new BufferedImage( page.getWidth(), page.getHeight(),
+            BufferedImage.TYPE_BYTE_GRAY ).getRaster();
+    }
+    @Benchmark
+    public int countBlackGetPixel()
+    {
+        int[] iArray = new int[1];
+        int count = 0;
+        for ( int y=0;y<src.getHeight();y++ )
+        {
+            for ( int x=0;x<src.getWidth();x++ )
+            {
+                src.getPixel( x, y, iArray );
+                if ( iArray[0] == 0 )
+                    count++;
+            }
+        }
+        return count;
+    }
+    @Benchmark
+    public int countBlackRasterView()
+    {
+        RasterView rv = new RasterView( src );
+        return rv.countBlack( 0, 0, rv.width, rv.height );
+    }
+    @Benchmark
+    public Object thresholdGetPixel()
+    {
+        int[] iArray = new int[1];
+        for ( int y=0;y<src.getHeight();y++ )
+        {
+            for ( int x=0;x<src.getWidth();x++ )
+            {
+                src.getPixel( x, y, iArray );
+                iArray[0] = (iArray[0]<THRESHOLD)?0:255;
+                dst.setPixel( x, y, iArray );
+            }
+        }
+        return dst;
+    }
+    @Benchmark
+    public Object thresholdRasterView()
+    {
+        RasterView in = new RasterView( src );
+        RasterView out = new RasterView( dst );
+        for ( int y=0;y<in.height;y++ )
+        {
+            int i = in.row(y);
+            int j = out.row(y);
+            int end = i+in.width;
+            for ( ;i<end;i++,j++ )
+                out.data[j] = ((in.data[i]&0xFF)<THRESHOLD)?0:(byte)255;
+        }
+        return dst;
+    }
+}
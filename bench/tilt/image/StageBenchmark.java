@@ -0,0 +1,275 @@
+/*
+ * This file is part of TILT.
+ *
+ *  TILT is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  TILT is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with TILT.  If not, see <http://www.gnu.org/licenses/>.
+ *  (c) copyright Desmond Schmidt 2015
+ */
+
+package tilt.image;
+
+import java.io.File;
+import java.net.InetAddress;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.json.simple.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import tilt.constants.ImageType;
+import tilt.handler.post.Options;
+import tilt.handler.post.TextIndex;
+
+/**
+ * Time each stage of the pipeline on its own. Every benchmark has its own
+ * state, which runs the earlier stages once per trial and, before each
+ * invocation, throws away the stage being measured (and rebuilds the page
+ * model for the stages that change it), so only that stage is timed. The
+ * stage cache is turned off in the forked JVM.
+ * <p>
+ * A page is either "sample", the image polygon/00000005.jpg read with the
+ * text polygon/43746034.html, or a width in pixels for a SyntheticPage.
+ * Run with "ant bench", which adds -prof gc to report allocation per op.
+ * @author desmond
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations=2)
+@Measurement(iterations=5)
+@Fork(value=1, jvmArgsAppend={"-Dtilt.cache=false"})
+public class StageBenchmark
+{
+    static Double[][] WHOLE_PAGE = {{0.0,0.0},{100.0,0.0},{100.0,100.0},
+        {0.0,100.0}};
+    /** makes each state's url unique, since the registry refuses repeats */
+    static AtomicInteger serial = new AtomicInteger();
+    /**
+     * A picture of one page with the stages before some stage computed
+     */
+    @State(Scope.Thread)
+    public static abstract class PageState
+    {
+        @Param({"sample","1200","2400","4800"})
+        public String page;
+        File dir;
+        String url;
+        Picture pic;
+        /**
+         * Load the page and run the stages before the one measured
+         * @throws Exception
+         */
+        @Setup(Level.Trial)
+        public void open() throws Exception
+        {
+            File image,text;
+            if ( page.equals("sample") )
+            {
+                File samples = new File( System.getProperty("tilt.bench.dir",
+                    "polygon") );
+                image = new File( samples, "00000005.jpg" );
+                text = new File( samples, "43746034.html" );
+            }
+            else
+            {
+                dir = Files.createTempDirectory("tilt-bench").toFile();
+                SyntheticPage sp = new SyntheticPage( Integer.parseInt(page),
+                    dir );
+                image = sp.image;
+                text = sp.text;
+            }
+            String html = new String( Files.readAllBytes(text.toPath()),
+                "UTF-8" );
+            url = image.toURI().toString()+"#"+serial.incrementAndGet();
+            // the new picture stays pinned, so the registry's sweeper 
+            // can't dispose of it mid-trial, until close releases it
+            pic = new Picture( new Options(new JSONObject()), url,
+                new TextIndex(html,"en_GB"), WHOLE_PAGE,
+                InetAddress.getLoopbackAddress() );
+            pic.load();
+            prepare();
+        }
+        /**
+         * Run the stages the measured one depends on
+         * @throws Exception
+         */
+        abstract void prepare() throws Exception;
+        @TearDown(Level.Trial)
+        public void close() throws Exception
+        {
+            PictureRegistry.release( pic );
+            PictureRegistry.remove( url );
+            if ( dir != null )
+            {
+                File[] files = dir.listFiles();
+                for ( int i=0;files!=null&&i<files.length;i++ )
+                    files[i].delete();
+                dir.delete();
+            }
+        }
+    }
+    public static class Preflight extends PageState
+    {
+        void prepare()
+        {
+        }
+        @Setup(Level.Invocation)
+        public void reset()
+        {
+            pic.stages.remove( ImageType.preflight );
+        }
+    }
+    public static class Greyscale extends PageState
+    {
+        void prepare() throws Exception
+        {
+            pic.convertToPreflight();
+        }
+        @Setup(Level.Invocation)
+        public void reset()
+        {
+            pic.stages.remove( ImageType.greyscale );
+        }
+    }
+    public static class TwoTone extends PageState
+    {
+        void prepare() throws Exception
+        {
+            pic.convertToGreyscale();
+        }
+        @Setup(Level.Invocation)
+        public void reset()
+        {
+            pic.stages.remove( ImageType.twotone );
+        }
+    }
+    public static class Cleaned extends PageState
+    {
+        void prepare() throws Exception
+        {
+            pic.convertToTwoTone();
+            pic.getCropRectangle();
+        }
+        @Setup(Level.Invocation)
+        public void reset()
+        {
+            pic.stages.remove( ImageType.cleaned );
+        }
+    }
+    public static class Reconstructed extends PageState
+    {
+        void prepare() throws Exception
+        {
+            pic.convertToCleaned();
+        }
+        @Setup(Level.Invocation)
+        public void reset()
+        {
+            pic.stages.remove( ImageType.reconstructed );
+        }
+    }
+    public static class Baselines extends PageState
+    {
+        void prepare() throws Exception
+        {
+            pic.convertToReconstructed();
+        }
+    }
+    public static class Words extends PageState
+    {
+        void prepare() throws Exception
+        {
+            pic.convertToReconstructed();
+        }
+        /** FindWords adds shapes to the page, so start from a fresh one */
+        @Setup(Level.Invocation)
+        public void reset() throws Exception
+        {
+            pic.convertToBaselines();
+            pic.stages.remove( ImageType.words );
+        }
+    }
+    public static class Link extends PageState
+    {
+        void prepare() throws Exception
+        {
+            pic.convertToReconstructed();
+        }
+        /** alignment splits and merges shapes, so start from fresh ones */
+        @Setup(Level.Invocation)
+        public void reset() throws Exception
+        {
+            pic.convertToBaselines();
+            pic.convertToWords();
+            pic.linked = false;
+        }
+    }
+    @Benchmark
+    public Object preflight( Preflight s ) throws Exception
+    {
+        s.pic.convertToPreflight();
+        return s.pic.stages.get( ImageType.preflight );
+    }
+    @Benchmark
+    public Object greyscale( Greyscale s ) throws Exception
+    {
+        s.pic.convertToGreyscale();
+        return s.pic.stages.get( ImageType.greyscale );
+    }
+    @Benchmark
+    public Object twotone( TwoTone s ) throws Exception
+    {
+        s.pic.convertToTwoTone();
+        return s.pic.stages.get( ImageType.twotone );
+    }
+    @Benchmark
+    public Object cleaned( Cleaned s ) throws Exception
+    {
+        s.pic.convertToCleaned();
+        return s.pic.stages.get( ImageType.cleaned );
+    }
+    @Benchmark
+    public Object reconstructed( Reconstructed s ) throws Exception
+    {
+        s.pic.convertToReconstructed();
+        return s.pic.stages.get( ImageType.reconstructed );
+    }
+    @Benchmark
+    public Object baselines( Baselines s ) throws Exception
+    {
+        s.pic.convertToBaselines();
+        return s.pic.page;
+    }
+    @Benchmark
+    public Object words( Words s ) throws Exception
+    {
+        s.pic.convertToWords();
+        return s.pic.page;
+    }
+    @Benchmark
+    public Object link( Link s ) throws Exception
+    {
+        s.pic.convertToLinks();
+        return s.pic.page;
+    }
+}
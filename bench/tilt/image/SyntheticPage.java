@@ -0,0 +1,104 @@
+/*
+ * This file is part of TILT.
+ *
+ *  TILT is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  TILT is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with TILT.  If not, see <http://www.gnu.org/licenses/>.
+ *  (c) copyright Desmond Schmidt 2015
+ */
+
+package tilt.image;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Random;
+import javax.imageio.ImageIO;
+
+/**
+ * A page of printed text made up for benchmarking, so that the stages can
+ * be timed on pages of any width. The words are chosen at random (from a
+ * fixed seed, so every run gets the same page) and set in lines of serif
+ * type with ragged right margins. The same words are written out as the
+ * page's HTML text so the link stage has something to align with.
+ * @author desmond
+ */
+public class SyntheticPage
+{
+    static String[] WORDS = {"the","of","and","to","in","that","was","his",
+        "with","for","had","not","which","upon","their","country","river",
+        "before","whenever","government","settlement","unfortunately",
+        "nevertheless","northern","expedition","a","it","be","as","from",
+        "letters","station","colonists","miles","between","remarkable"};
+    /** the page image, a JPEG */
+    public final File image;
+    /** its text, as HTML */
+    public final File text;
+    /**
+     * Draw a page and write it and its text to a directory
+     * @param width the width of the page in pixels
+     * @param dir the directory to write page.jpg and page.html to
+     * @throws Exception if the files could not be written
+     */
+    public SyntheticPage( int width, File dir ) throws Exception
+    {
+        int height = width*7/5;
+        BufferedImage bi = new BufferedImage( width, height,
+            BufferedImage.TYPE_INT_RGB );
+        Graphics2D g = bi.createGraphics();
+        g.setRenderingHint( RenderingHints.KEY_TEXT_ANTIALIASING,
+            RenderingHints.VALUE_TEXT_ANTIALIAS_ON );
+        g.setColor( Color.white );
+        g.fillRect( 0, 0, width, height );
+        g.setColor( Color.black );
+        g.setFont( new Font(Font.SERIF,Font.PLAIN,Math.max(8,width/60)) );
+        FontMetrics fm = g.getFontMetrics();
+        int margin = width/10;
+        int lineHeight = fm.getHeight()*3/2;
+        Random rand = new Random( 1 );
+        StringBuilder html = new StringBuilder( "<html><body>\n" );
+        for ( int y=margin+fm.getAscent();y<height-margin;y+=lineHeight )
+        {
+            int x = margin;
+            int right = width-margin-rand.nextInt(margin);
+            html.append( "<p>" );
+            while ( true )
+            {
+                String word = WORDS[rand.nextInt(WORDS.length)];
+                int w = fm.stringWidth( word );
+                if ( x+w > right )
+                    break;
+                g.drawString( word, x, y );
+                html.append( word ).append( ' ' );
+                x += w+fm.charWidth(' ');
+            }
+            html.append( "</p>\n" );
+        }
+        g.dispose();
+        html.append( "</body></html>\n" );
+        this.image = new File( dir, "page.jpg" );
+        this.text = new File( dir, "page.html" );
+        ImageIO.write( bi, "jpg", image );
+        try ( Writer w = new OutputStreamWriter(new FileOutputStream(text),
+            "UTF-8") )
+        {
+            w.write( html.toString() );
+        }
+    }
+}
@@ -0,0 +1,4 @@
+package tilt.image.jmh_generated;
+public class RasterViewBenchmark_jmhType extends RasterViewBenchmark_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package tilt.image.jmh_generated;
+public class StageBenchmark_Baselines_jmhType extends StageBenchmark_Baselines_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package tilt.image.jmh_generated;
+public class StageBenchmark_Greyscale_jmhType extends StageBenchmark_Greyscale_jmhType_B3 {
+}
+
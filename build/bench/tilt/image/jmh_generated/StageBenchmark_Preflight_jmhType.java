@@ -0,0 +1,4 @@
+package tilt.image.jmh_generated;
+public class StageBenchmark_Preflight_jmhType extends StageBenchmark_Preflight_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package tilt.image.jmh_generated;
+public class StageBenchmark_Reconstructed_jmhType extends StageBenchmark_Reconstructed_jmhType_B3 {
+}
+
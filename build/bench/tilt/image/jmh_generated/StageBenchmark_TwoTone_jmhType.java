@@ -0,0 +1,4 @@
+package tilt.image.jmh_generated;
+public class StageBenchmark_TwoTone_jmhType extends StageBenchmark_TwoTone_jmhType_B3 {
+}
+
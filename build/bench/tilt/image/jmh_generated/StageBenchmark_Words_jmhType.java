@@ -0,0 +1,4 @@
+package tilt.image.jmh_generated;
+public class StageBenchmark_Words_jmhType extends StageBenchmark_Words_jmhType_B3 {
+}
+
@@ -0,0 +1,377 @@
+/*
+ * This file is part of TILT.
+ *
+ *  TILT is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  TILT is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with TILT.  If not, see <http://www.gnu.org/licenses/>.
+ *  (c) copyright Desmond Schmidt 2015
+ */
+
+package tilt;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.JSONValue;
+import tilt.constants.ImageType;
+import tilt.exception.TiltException;
+import tilt.handler.post.Options;
+import tilt.handler.post.TextIndex;
+import tilt.image.Picture;
+import tilt.image.PictureRegistry;
+
+/**
+ * Recognise a whole document from the command line, without the web
+ * service or the database. A manifest lists the pages, each with its
+ * image file, HTML text, crop coordinates and options:
+ * <pre>
+ * {"options":{...},
+ *  "pages":[{"name":"p1","image":"p1.jpg","text":"p1.html",
+ *    "coords":[[0,0],[100,0],[100,100],[0,100]],"options":{...}},...]}
+ * </pre>
+ * Page options override the document's. Only image and text are required;
+ * relative paths are resolved against the manifest's directory. The pages
+ * are recognised in parallel and each page's GeoJSON is written to
+ * outdir/name.json. Per-stage timings and throughput are printed at the end.
+ * @author desmond
+ */
+public class Batch
+{
+    /** the stages timed, in the order they are run */
+    static ImageType[] STAGES = {ImageType.load, ImageType.preflight,
+        ImageType.greyscale, ImageType.twotone, ImageType.cleaned,
+        ImageType.reconstructed, ImageType.baselines, ImageType.words,
+        ImageType.link};
+    static Double[][] WHOLE_PAGE = {{0.0,0.0},{100.0,0.0},{100.0,100.0},
+        {0.0,100.0}};
+    File manifest;
+    File outDir;
+    int threads;
+    String lang;
+    /** total nanoseconds spent in each stage by all pages */
+    AtomicLongArray stageTimes;
+    AtomicInteger done;
+    AtomicInteger failed;
+    /**
+     * Create a batch
+     * @param manifest the manifest file
+     * @param outDir the directory to write GeoJSON to
+     * @param threads the number of pages to recognise at once
+     * @param lang the language of the texts
+     */
+    Batch( File manifest, File outDir, int threads, String lang )
+    {
+        this.manifest = manifest;
+        this.outDir = outDir;
+        this.threads = threads;
+        this.lang = lang;
+        this.stageTimes = new AtomicLongArray( STAGES.length );
+        this.done = new AtomicInteger();
+        this.failed = new AtomicInteger();
+    }
+    /**
+     * One page to recognise
+     */
+    class Page implements Runnable
+    {
+        String name;
+        File image;
+        File text;
+        Double[][] coords;
+        JSONObject options;
+        Page( String name, File image, File text, Double[][] coords,
+            JSONObject options )
+        {
+            this.name = name;
+            this.image = image;
+            this.text = text;
+            this.coords = coords;
+            this.options = options;
+        }
+        /**
+         * Run one stage and add its time to the totals
+         * @param p the picture
+         * @param stage the index of the stage in STAGES
+         * @throws Exception
+         */
+        void runStage( Picture p, int stage ) throws Exception
+        {
+            long start = System.nanoTime();
+            switch ( STAGES[stage] )
+            {
+                case load:
+                    p.load();
+                    break;
+                case preflight:
+                    p.convertToPreflight();
+                    break;
+                case greyscale:
+                    p.convertToGreyscale();
+                    break;
+                case twotone:
+                    p.convertToTwoTone();
+                    break;
+                case cleaned:
+                    p.convertToCleaned();
+                    break;
+                case reconstructed:
+                    p.convertToReconstructed();
+                    break;
+                case baselines:
+                    p.convertToBaselines();
+                    break;
+                case words:
+                    p.convertToWords();
+                    break;
+                case link:
+                    p.convertToLinks();
+                    break;
+            }
+            stageTimes.addAndGet( stage, System.nanoTime()-start );
+        }
+        public void run()
+        {
+            String url = image.toURI().toString();
+            long start = System.currentTimeMillis();
+            try
+            {
+                String html = new String( Files.readAllBytes(text.toPath()),
+                    "UTF-8" );
+                Picture p = new Picture( new Options(options), url,
+                    new TextIndex(html,lang), coords,
+                    InetAddress.getLoopbackAddress() );
+                try
+                {
+                    for ( int i=0;i<STAGES.length;i++ )
+                        runStage( p, i );
+                    File dest = new File( outDir, name+".json" );
+                    try ( Writer w = new OutputStreamWriter(
+                        new FileOutputStream(dest),"UTF-8") )
+                    {
+                        w.write( p.getGeoJson() );
+                    }
+                }
+                finally
+                {
+                    PictureRegistry.release( p );
+                    PictureRegistry.remove( url );
+                }
+                done.incrementAndGet();
+                System.out.println( name+": "
+                    +(System.currentTimeMillis()-start)+"ms" );
+            }
+            catch ( Exception e )
+            {
+                failed.incrementAndGet();
+                System.out.println( name+": failed: "+e.getMessage() );
+                e.printStackTrace( System.out );
+            }
+        }
+    }
+    /**
+     * Resolve a path in the manifest
+     * @param path a path, relative to the manifest or absolute
+     * @return the file
+     */
+    File resolve( String path )
+    {
+        File f = new File( path );
+        if ( !f.isAbsolute() )
+            f = new File( manifest.getAbsoluteFile().getParentFile(), path );
+        return f;
+    }
+    /**
+     * Read crop coordinates from a JSON array of x,y percentages
+     * @param arr the array or null for the whole page
+     * @return the coordinates as Picture wants them
+     * @throws TiltException
+     */
+    static Double[][] readCoords( JSONArray arr ) throws TiltException
+    {
+        if ( arr == null )
+            return WHOLE_PAGE;
+        if ( arr.size() != 4 )
+            throw new TiltException("coords must have 4 points");
+        Double[][] coords = new Double[4][2];
+        for ( int i=0;i<4;i++ )
+        {
+            JSONArray pt = (JSONArray)arr.get(i);
+            coords[i][0] = ((Number)pt.get(0)).doubleValue();
+            coords[i][1] = ((Number)pt.get(1)).doubleValue();
+        }
+        return coords;
+    }
+    /**
+     * Combine the document's options with a page's own
+     * @param docOpts the options for every page
+     * @param pageOpts the page's options, which win, or null
+     * @return a new object holding both
+     */
+    @SuppressWarnings("unchecked")
+    static JSONObject mergeOptions( JSONObject docOpts, JSONObject pageOpts )
+    {
+        // JSONObject is a raw HashMap, so copying into it is unchecked
+        JSONObject options = new JSONObject();
+        options.putAll( docOpts );
+        if ( pageOpts != null )
+            options.putAll( pageOpts );
+        return options;
+    }
+    /**
+     * Read the manifest
+     * @return the pages in it
+     * @throws Exception
+     */
+    ArrayList<Page> readManifest() throws Exception
+    {
+        String json = new String( Files.readAllBytes(manifest.toPath()),
+            "UTF-8" );
+        Object obj = JSONValue.parse( json );
+        JSONObject docOpts = new JSONObject();
+        JSONArray pages;
+        if ( obj instanceof JSONArray )
+            pages = (JSONArray)obj;
+        else if ( obj instanceof JSONObject )
+        {
+            JSONObject doc = (JSONObject)obj;
+            if ( doc.containsKey("options") )
+                docOpts = (JSONObject)doc.get("options");
+            pages = (JSONArray)doc.get("pages");
+        }
+        else
+            throw new TiltException("Invalid manifest "+manifest);
+        if ( pages == null )
+            throw new TiltException("No pages in manifest "+manifest);
+        ArrayList<Page> list = new ArrayList<>();
+        for ( int i=0;i<pages.size();i++ )
+        {
+            JSONObject page = (JSONObject)pages.get(i);
+            String image = (String)page.get("image");
+            String text = (String)page.get("text");
+            if ( image == null || text == null )
+                throw new TiltException("page "+(i+1)
+                    +" needs an image and a text");
+            String name = (String)page.get("name");
+            if ( name == null )
+            {
+                name = new File(image).getName();
+                int pos = name.lastIndexOf('.');
+                if ( pos > 0 )
+                    name = name.substring(0,pos);
+            }
+            JSONObject options = mergeOptions( docOpts, 
+                (JSONObject)page.get("options") );
+            list.add( new Page(name, resolve(image), resolve(text),
+                readCoords((JSONArray)page.get("coords")), options) );
+        }
+        return list;
+    }
+    /**
+     * Recognise all the pages and print the totals
+     * @return true if every page succeeded
+     * @throws Exception
+     */
+    boolean run() throws Exception
+    {
+        ArrayList<Page> pages = readManifest();
+        if ( !outDir.exists() && !outDir.mkdirs() )
+            throw new TiltException("Couldn't create "+outDir);
+        long start = System.currentTimeMillis();
+        ExecutorService pool = Executors.newFixedThreadPool( threads );
+        Iterator<Page> iter = pages.iterator();
+        while ( iter.hasNext() )
+            pool.execute( iter.next() );
+        pool.shutdown();
+        pool.awaitTermination( Long.MAX_VALUE, TimeUnit.MILLISECONDS );
+        long elapsed = Math.max(System.currentTimeMillis()-start,1);
+        printTotals( elapsed );
+        return failed.get() == 0;
+    }
+    /**
+     * Print the time spent in each stage and the overall throughput
+     * @param elapsed the wall-clock time in milliseconds
+     */
+    void printTotals( long elapsed )
+    {
+        int n = done.get()+failed.get();
+        long total = 0;
+        for ( int i=0;i<STAGES.length;i++ )
+            total += stageTimes.get(i);
+        System.out.println( String.format("%-14s %10s %10s %6s",
+            "stage","total ms","ms/page","%") );
+        for ( int i=0;i<STAGES.length;i++ )
+        {
+            long ms = stageTimes.get(i)/1000000;
+            System.out.println( String.format("%-14s %10d %10d %5.1f%%",
+                STAGES[i].toString(), ms, (n==0)?0:ms/n,
+                (total==0)?0.0:stageTimes.get(i)*100.0/total) );
+        }
+        System.out.println( String.format(
+            "%d pages (%d failed) in %.1fs on %d threads: %.2f pages/min",
+            n, failed.get(), elapsed/1000.0, threads,
+            done.get()*60000.0/elapsed) );
+    }
+    /**
+     * Tell user how to invoke it on commandline
+     */
+    private static void usage()
+    {
+        System.out.println( "java -cp tilt2.jar tilt.Batch [-t threads] "
+            +"[-l lang] manifest.json outdir" );
+    }
+    /**
+     * @param args the command line arguments
+     */
+    public static void main( String[] args )
+    {
+        int threads = Runtime.getRuntime().availableProcessors();
+        String lang = "en_GB";
+        ArrayList<String> files = new ArrayList<>();
+        try
+        {
+            for ( int i=0;i<args.length;i++ )
+            {
+                if ( args[i].equals("-t") && i+1<args.length )
+                    threads = Integer.parseInt(args[++i]);
+                else if ( args[i].equals("-l") && i+1<args.length )
+                    lang = args[++i];
+                else
+                    files.add( args[i] );
+            }
+            if ( files.size() != 2 || threads < 1 )
+            {
+                usage();
+                System.exit( 2 );
+            }
+            Batch batch = new Batch( new File(files.get(0)),
+                new File(files.get(1)), threads, lang );
+            System.exit( batch.run()?0:1 );
+        }
+        catch ( Exception e )
+        {
+            System.out.println("Exception in main:"+e.getMessage());
+            System.exit( 1 );
+        }
+    }
+}
@@ -61,16 +61,7 @@ public class JettyServer extends AbstractHandler
             if ( service.equals(Service.TILT) )
             {
                 String urn = Utils.pop(target);
-                if ( method.equals("GET") )
-                    new TiltGetHandler().handle( request, response, urn );
-                else if ( method.equals("PUT") )
-                     new TiltPutHandler().handle( request, response, urn );
-                else if ( method.equals("POST") )
-                    new TiltPostHandler().handle( request, response, urn );
-               else if ( method.equals("DELETE") )
-                    new TiltDeleteHandler().handle( request, response, urn );
-                else
-                    throw new TiltException("Unknown http method "+method);
+                Routes.forMethod(method).handle( request, response, urn );
             }
             else
                 throw new TiltException("Unknown service"+service);
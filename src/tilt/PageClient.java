@@ -0,0 +1,295 @@
+/*
+ * This file is part of TILT.
+ *
+ *  TILT is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  TILT is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with TILT.  If not, see <http://www.gnu.org/licenses/>.
+ *  (c) copyright Desmond Schmidt 2015
+ */
+
+package tilt;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import tilt.metrics.Metrics;
+
+/**
+ * Fetch the small documents a page needs from the pages and tilt services
+ * of the server: its text, its crop rectangle, its document's options and
+ * the server's uri template. Replies are kept for a short time (tilt.fetch.ttl
+ * milliseconds), keyed by what was asked for, so the several requests made
+ * while an editor opens a page fetch each one only once. A fetch that is
+ * already under way is shared, and prefetch starts all of a page's fetches
+ * at once on a small shared pool so their round-trips overlap. Failed
+ * fetches are not kept.
+ * <p>
+ * For tests, setting tilt.fetch.stub to a directory serves every url from
+ * a file there instead of the network. The file is named after the url's
+ * path and query with every character but letters, digits, '.' and '-'
+ * turned into '_', so /pages/html?docid=a/b&amp;pageid=3 is read from
+ * _pages_html_docid_a_b_pageid_3. Replies can also be set with stub.
+ * @author desmond
+ */
+public class PageClient
+{
+    /** how long a reply is kept in milliseconds (tilt.fetch.ttl) */
+    static long TTL = Long.getLong("tilt.fetch.ttl",60000L);
+    /** most replies kept before expired ones are cleared out */
+    static int MAX_ENTRIES = 1000;
+    /** directory to serve stub replies from (tilt.fetch.stub) */
+    static File STUB_DIR = (System.getProperty("tilt.fetch.stub")!=null)
+        ?new File(System.getProperty("tilt.fetch.stub")):null;
+    /** replies set by tests, keyed by url */
+    static final ConcurrentHashMap<String,String> stubs =
+        new ConcurrentHashMap<>();
+    static final ConcurrentHashMap<String,Entry> cache =
+        new ConcurrentHashMap<>();
+    static final ExecutorService pool = Executors.newFixedThreadPool(
+        Integer.getInteger("tilt.fetch.threads",8), new ThreadFactory() {
+            public Thread newThread( Runnable r )
+            {
+                Thread t = new Thread( r, "PageClient fetcher" );
+                t.setDaemon( true );
+                return t;
+            }
+        });
+    /**
+     * A reply, or a fetch of it that may still be going on
+     */
+    static class Entry
+    {
+        final FutureTask<String> task;
+        final long expires;
+        Entry( FutureTask<String> task )
+        {
+            this.task = task;
+            this.expires = System.currentTimeMillis()+TTL;
+        }
+    }
+    static String textUrl( String server, String docid, String pageid )
+    {
+        return "http://"+server+"/pages/html?docid="+docid+"&pageid="+pageid;
+    }
+    static String cropRectUrl( String server, String docid, String pageid )
+    {
+        return "http://"+server+"/pages/crop_rect?docid="+docid
+            +"&pageid="+pageid;
+    }
+    static String optionsUrl( String server, String docid )
+    {
+        return "http://"+server+"/tilt/options?docid="+docid;
+    }
+    static String templateUrl( String server )
+    {
+        return "http://"+server+"/pages/uri_template";
+    }
+    /**
+     * Get the entry for a url, starting a fetch if there is none
+     * @param url the url to fetch
+     * @param background true to fetch on the pool, false to fetch now
+     * @return its entry, whose task has been started if it is new
+     */
+    private static Entry lookup( final String url, boolean background )
+    {
+        Entry e = cache.get( url );
+        long now = System.currentTimeMillis();
+        if ( e != null && e.expires > now )
+        {
+            Metrics.count( "page_cache_hits", 1 );
+            return e;
+        }
+        FutureTask<String> task = new FutureTask<>( new Callable<String>() {
+            public String call() throws IOException
+            {
+                return fetch( url );
+            }
+        });
+        Entry fresh = new Entry( task );
+        boolean won = ( e == null )?cache.putIfAbsent(url,fresh)==null
+            :cache.replace(url,e,fresh);
+        if ( !won )
+            return lookup( url, background );
+        Metrics.count( "page_cache_misses", 1 );
+        if ( cache.size() > MAX_ENTRIES )
+            expire( now );
+        if ( background )
+            pool.execute( task );
+        else
+            task.run();
+        return fresh;
+    }
+    /**
+     * Drop the replies that have expired
+     * @param now the time now
+     */
+    private static void expire( long now )
+    {
+        Iterator<Map.Entry<String,Entry>> iter = cache.entrySet().iterator();
+        while ( iter.hasNext() )
+        {
+            if ( iter.next().getValue().expires <= now )
+                iter.remove();
+        }
+    }
+    /**
+     * Get the reply for a url, from the cache or by fetching it
+     * @param url the url
+     * @return the body of its reply
+     * @throws IOException if it could not be fetched
+     */
+    public static String get( String url ) throws IOException
+    {
+        Entry e = lookup( url, false );
+        try
+        {
+            return e.task.get();
+        }
+        catch ( InterruptedException ie )
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException( ie );
+        }
+        catch ( ExecutionException ee )
+        {
+            // don't keep failures
+            cache.remove( url, e );
+            Throwable cause = ee.getCause();
+            if ( cause instanceof IOException )
+                throw (IOException)cause;
+            throw new IOException( cause );
+        }
+    }
+    /**
+     * Fetch a url, or its stub in stub mode
+     * @param url the url
+     * @return the body of its reply
+     * @throws IOException
+     */
+    static String fetch( String url ) throws IOException
+    {
+        String body = stubs.get( url );
+        if ( body != null )
+            return body;
+        if ( STUB_DIR != null )
+        {
+            File f = new File( STUB_DIR, stubName(url) );
+            if ( !f.exists() )
+                throw new IOException("No stub "+f+" for "+url);
+            return new String( Files.readAllBytes(f.toPath()), "UTF-8" );
+        }
+        return Utils.getFromUrl( url );
+    }
+    /**
+     * Work out the name of the stub file for a url
+     * @param url the url
+     * @return its path and query with unsafe characters replaced
+     */
+    static String stubName( String url )
+    {
+        int start = url.indexOf("://");
+        start = url.indexOf('/',(start<0)?0:start+3);
+        String path = (start<0)?"":url.substring(start);
+        return path.replaceAll("[^A-Za-z0-9.\\-]","_");
+    }
+    /**
+     * Set the reply to a url, for tests. It is served without a fetch
+     * until cleared.
+     * @param url the url
+     * @param body its reply, or null to clear it
+     */
+    public static void stub( String url, String body )
+    {
+        if ( body == null )
+            stubs.remove( url );
+        else
+            stubs.put( url, body );
+        cache.remove( url );
+    }
+    /**
+     * Forget all kept replies
+     */
+    public static void clear()
+    {
+        cache.clear();
+    }
+    /**
+     * Start fetching everything a new picture of a page needs, in parallel
+     * @param server the server's host name
+     * @param docid the document identifier
+     * @param pageid the page identifier
+     */
+    public static void prefetch( String server, String docid, String pageid )
+    {
+        lookup( templateUrl(server), true );
+        lookup( cropRectUrl(server,docid,pageid), true );
+        lookup( optionsUrl(server,docid), true );
+        lookup( textUrl(server,docid,pageid), true );
+    }
+    /**
+     * Get the HTML text of a page
+     * @param server the server's host name
+     * @param docid the document identifier
+     * @param pageid the page identifier
+     * @return the page's text as HTML
+     * @throws IOException
+     */
+    public static String getText( String server, String docid,
+        String pageid ) throws IOException
+    {
+        return get( textUrl(server,docid,pageid) );
+    }
+    /**
+     * Get the crop rectangle of a page
+     * @param server the server's host name
+     * @param docid the document identifier
+     * @param pageid the page identifier
+     * @return the JSON array of its four corners in percent
+     * @throws IOException
+     */
+    public static String getCropRect( String server, String docid,
+        String pageid ) throws IOException
+    {
+        return get( cropRectUrl(server,docid,pageid) );
+    }
+    /**
+     * Get the options set for a document
+     * @param server the server's host name
+     * @param docid the document identifier
+     * @return the options as a JSON object
+     * @throws IOException
+     */
+    public static String getOptions( String server, String docid )
+        throws IOException
+    {
+        return get( optionsUrl(server,docid) );
+    }
+    /**
+     * Get the server's template for page image urls
+     * @param server the server's host name
+     * @return the template, with {docid} and {pageid} to fill in
+     * @throws IOException
+     */
+    public static String getUriTemplate( String server ) throws IOException
+    {
+        return get( templateUrl(server) );
+    }
+}
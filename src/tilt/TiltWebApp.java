@@ -24,7 +24,6 @@ import calliope.core.exception.CalliopeExceptionMessage;
 import calliope.core.exception.CalliopeException;
 import java.util.Enumeration;
 import tilt.handler.*;
-import tilt.exception.TiltException;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -117,17 +116,7 @@ public class TiltWebApp extends HttpServlet
                 inited = true;
             }
             target = Utils.pop( target );
-            TiltHandler handler;
-            if ( method.equals("GET") )
-                handler = new TiltGetHandler();
-            else if ( method.equals("PUT") )
-                handler = new TiltPutHandler();
-            else if ( method.equals("DELETE") )
-                handler = new TiltDeleteHandler();
-            else if ( method.equals("POST") )
-                handler = new TiltPostHandler();
-            else
-                throw new TiltException("Unknown http method "+method);
+            TiltHandler handler = Routes.forMethod( method );
             resp.setStatus(HttpServletResponse.SC_OK);
             handler.handle( req, resp, target );
         }
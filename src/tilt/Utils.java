@@ -27,6 +27,7 @@ import java.awt.image.DataBufferByte;
 import java.awt.image.DataBufferInt;
 import java.awt.image.DataBufferShort;
 import java.awt.image.DataBufferUShort;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
@@ -34,6 +35,7 @@ import java.net.URL;
 import java.net.URLConnection;
 import tilt.image.convexhull.*;
 import tilt.image.geometry.Polygon;
+import tilt.metrics.Metrics;
 
 /**
  * Some routines that need sharing by all
@@ -41,6 +43,12 @@ import tilt.image.geometry.Polygon;
  */
 public class Utils 
 {
+    /** milliseconds to wait for a connection (tilt.fetch.connectTimeout) */
+    static int CONNECT_TIMEOUT = Integer.getInteger(
+        "tilt.fetch.connectTimeout",10000);
+    /** milliseconds to wait for each read (tilt.fetch.readTimeout) */
+    static int READ_TIMEOUT = Integer.getInteger("tilt.fetch.readTimeout",
+        30000);
     /**
      * Convert a URL into a form suitable as a parameter
      * @param value the raw, unescapedURL
@@ -252,27 +260,37 @@ public class Utils
         else
             return path+"/";
     }
+    /**
+     * Fetch a text from a url, timed as a "text" fetch. The reply
+     * is read to the end so the connection goes back to the keep-alive
+     * cache. Most callers want PageClient, which keeps replies.
+     * @param url the url to read
+     * @return its contents as a UTF-8 string
+     */
     public static String getFromUrl( String url ) throws MalformedURLException, 
         IOException
     {
         URL loc = new URL(url);
+        Metrics.Timer t = Metrics.start( Metrics.FETCH, "text" );
         URLConnection pagesService = loc.openConnection();
-        InputStream is = pagesService.getInputStream();
-        StringBuilder sb = new StringBuilder();
-        while ( is.available() != 0 )
+        pagesService.setConnectTimeout( CONNECT_TIMEOUT );
+        pagesService.setReadTimeout( READ_TIMEOUT );
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try ( InputStream is = pagesService.getInputStream() )
         {
-            byte[] data = new byte[is.available()];
-            is.read( data );
-            sb.append( new String(data) );
+            byte[] data = new byte[8192];
+            int n;
+            while ( (n=is.read(data)) > 0 )
+                bos.write( data, 0, n );
         }
-        is.close();
-        return sb.toString();
+        t.stop();
+        Metrics.count( "fetched_bytes", bos.size() );
+        return bos.toString( "UTF-8" );
     }
     public static String getUrl( String serverName, String docid, 
         String pageid ) throws MalformedURLException, IOException
     {
-        String url = "http://"+serverName+"/pages/uri_template";
-        String template = getFromUrl(url);
+        String template = PageClient.getUriTemplate( serverName );
         if  ( template.contains("{pageid}") )
             template= template.replace("{pageid}",pageid);
         if ( template.contains("{docid}") )
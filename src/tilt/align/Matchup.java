@@ -17,7 +17,7 @@
  */
 package tilt.align;
 import tilt.exception.MatchupException;
-import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * Align word-shapes with actual words. 
@@ -29,10 +29,12 @@ public class Matchup
     int[] A,B;
     /** index of last element in D */
     int maxindex;
-    /** the diagonals */
-    Pos[] D;
-    /** full matrix of computed positions */
-    Pos[][] M;
+    /** the furthest position reached on each diagonal */
+    int[] D;
+    /** all the positions reached */
+    Positions P;
+    /** cost of the last extension found */
+    int extScore;
     /**
      * Bracket an integer as a five-character string for debugging
      * @param l the left bracket
@@ -85,9 +87,44 @@ public class Matchup
     {
         this.A = A;
         this.B = B;
-        D = new Pos[A.length+B.length+1];
+        D = new int[A.length+B.length+1];
+        Arrays.fill( D, Positions.NONE );
         maxindex = D.length-1;
-        M = new Pos[B.length+1][A.length+1];
+        // a mid move looks back 2 anti-diagonals, an extension 1 more 
+        // than the widths it gathers
+        int run = Math.max( longestRun(B,max(A)), longestRun(A,max(B)) );
+        P = new Positions( B.length+1, A.length+1, Math.max(run,2)+2 );
+    }
+    /**
+     * Get the largest of some widths
+     * @param X the widths
+     * @return the largest or 0 if there are none
+     */
+    private static int max( int[] X )
+    {
+        int largest = 0;
+        for ( int i=0;i<X.length;i++ )
+            largest = Math.max( largest, X[i] );
+        return largest;
+    }
+    /**
+     * Find the longest run of widths an extension could gather
+     * @param X the widths to gather
+     * @param limit the most they may add up to
+     * @return the length of the longest run whose sum is within limit
+     */
+    private static int longestRun( int[] X, int limit )
+    {
+        int longest = 0;
+        long sum = 0;
+        for ( int first=0,i=0;i<X.length;i++ )
+        {
+            sum += X[i];
+            while ( sum > limit && first <= i )
+                sum -= X[first++];
+            longest = Math.max( longest, i-first+1 );
+        }
+        return longest;
     }
     /**
      * Get the index into the diagonals array starting at 0
@@ -126,21 +163,42 @@ public class Matchup
             else
                 System.out.print(" (A)  ");
             for ( int j=0;j<B.length+1;j++ )
-                System.out.print(printNumber("[",M[j][i].score,"]"));
+            {
+                int p = P.at( j, i );
+                if ( p == Positions.NONE )
+                    System.out.print("[    ]");
+                else if ( !P.kept(p) )
+                    System.out.print("[ .. ]");
+                else
+                    System.out.print(printNumber("[",P.score(p),"]"));
+            }
             System.out.print("\n");
         }
         System.out.print("\n");
     }
     /**
-     * Align segments of B with one from A, backwards
+     * Get the latest position at a cell that an extension starts from
+     * @param x the x-coordinate (index into B)
+     * @param y the y-coordinate (index into A)
+     * @return the position's number
+     */
+    private int extensionStart( int x, int y )
+    {
+        int p = P.at( x, y );
+        if ( p == Positions.NONE )
+            throw new IllegalStateException("no position at "+x+","+y);
+        return p;
+    }
+    /**
+     * Find where a backwards alignment of segments of B with one from A 
+     * starts. This depends only on the widths.
      * @param x the x-coordinate (index into B) to end at
      * @param y the y-coordinate (index into A) to end at
-     * @return an extension object or null if not found
+     * @return the x-coordinate to start from at y-1 or NONE if not found
      */
-    private Extension alignAcross( int x, int y )
+    private int acrossFrom( int x, int y )
     {
         int startX = x;
-        int score=0;
         int bestX = --x;
         if ( x > 0 )
         {
@@ -154,28 +212,41 @@ public class Matchup
                 bSum += B[x];
             }
             if ( bestX < startX-1 ) // we found something
-            {
-                score = M[bestX][y-1].score;
-                int diff = A[y-1] - B[bestX];
-                for ( int i=bestX+1;i<startX;i++ )
-                    diff -= B[i];
-                score += diff;
-                return new Extension( bestX, y-1, score, M[bestX][y-1], true, 
-                    startX-bestX );
-            }       
+                return bestX;
+        }
+        return Positions.NONE;
+    }
+    /**
+     * Align segments of B with one from A, backwards. The extension always 
+     * ends at (x,y); its cost is left in extScore.
+     * @param x the x-coordinate (index into B) to end at
+     * @param y the y-coordinate (index into A) to end at
+     * @return the position the extension starts from or NONE if not found
+     */
+    private int alignAcross( int x, int y )
+    {
+        int bestX = acrossFrom( x, y );
+        if ( bestX != Positions.NONE )
+        {
+            int start = extensionStart( bestX, y-1 );
+            int diff = A[y-1] - B[bestX];
+            for ( int i=bestX+1;i<x;i++ )
+                diff -= B[i];
+            extScore = P.score(start) + diff;
+            return start;
         }
-        return null;
+        return Positions.NONE;
     }
     /**
-     * Align segments of A with one from B, upwards
+     * Find where an upwards alignment of segments of A with one from B 
+     * starts. This depends only on the widths.
      * @param x the x-coordinate (index into B) to end at
      * @param y the y-coordinate (index into A) to end at
-     * @return an extension object or null if not found
+     * @return the y-coordinate to start from at x-1 or NONE if not found
      */
-    private Extension alignUp( int x, int y )
+    private int upFrom( int x, int y )
     {
         int startY = y;
-        int score=0;
         int bestY = --y;
         if ( y > 0 )
         {
@@ -189,17 +260,30 @@ public class Matchup
                 aSum += A[y];
             }
             if ( bestY < startY-1 ) // we found something
-            {
-                score = M[x-1][bestY].score;
-                int diff = B[x-1] - A[bestY];
-                for ( int i=bestY+1;i<startY;i++ )
-                    diff -= A[i];
-                score += diff;
-                return new Extension( x-1, bestY, score, M[x-1][bestY], false, 
-                    startY-bestY );
-            }
+                return bestY;
         }
-        return null;
+        return Positions.NONE;
+    }
+    /**
+     * Align segments of A with one from B, upwards. The extension always 
+     * ends at (x,y); its cost is left in extScore.
+     * @param x the x-coordinate (index into B) to end at
+     * @param y the y-coordinate (index into A) to end at
+     * @return the position the extension starts from or NONE if not found
+     */
+    private int alignUp( int x, int y )
+    {
+        int bestY = upFrom( x, y );
+        if ( bestY != Positions.NONE )
+        {
+            int start = extensionStart( x-1, bestY );
+            int diff = B[x-1] - A[bestY];
+            for ( int i=bestY+1;i<y;i++ )
+                diff -= A[i];
+            extScore = P.score(start) + diff;
+            return start;
+        }
+        return Positions.NONE;
     }
     /**
      * Is there room to move below?
@@ -207,18 +291,45 @@ public class Matchup
      * @param d the diagonal we want to go to
      * @return true if we can move down up to 1-space outside the edit graph
      */
-    private boolean roomBelow( Pos p, int d )
+    private boolean roomBelow( int p, int d )
     {
-        return p!=null && p.x-d < A.length;
+        return p!=Positions.NONE && P.x(p)-d < A.length;
     }
     /**
      * Is there room right?
      * @param p the position to start from
      * @return true if we can move right up to 1-space outside the edit graph
      */
-    private boolean roomRight( Pos p )
+    private boolean roomRight( int p )
     {
-        return p != null && p.x < B.length;
+        return p!=Positions.NONE && P.x(p) < B.length;
+    }
+    /**
+     * Get the position another was reached from, working it out again
+     * from the move that was recorded
+     * @param p the position
+     * @return its parent or NONE for the first position
+     */
+    private int parent( int p )
+    {
+        Score move = P.move( p );
+        if ( move == null )
+            return Positions.NONE;
+        int x = P.x( p );
+        int y = P.y( p );
+        switch ( move )
+        {
+            case TOP:
+                return P.at( x, y-1 );
+            case MID:
+                return P.at( x-1, y-1 );
+            case BOT:
+                return P.at( x-1, y );
+            case HEXT:
+                return P.at( acrossFrom(x,y), y-1 );
+            default:
+                return P.at( x-1, upFrom(x,y) );
+        }
     }
     /**
      * Create a path of linked Path objects tracing the optimal alignment
@@ -226,24 +337,22 @@ public class Matchup
      * @param finish the index of the final diagonal
      * @return the head of the list being the path of aligned cells
      */
-    private Path makePath( Pos[] D, int finish )
+    private Path makePath( int[] D, int finish )
     {
-        Pos end = D[finish];
-        ArrayList<Pos> list = new ArrayList<>();
-        while ( end != null )
-        {
-            list.add(0,end);
-            end = end.parent;
-        }
-        Pos current;
-        Pos prev = list.get(0);
+        int len = 0;
+        for ( int end=D[finish];end!=Positions.NONE;end=parent(end) )
+            len++;
+        int[] list = new int[len];
+        for ( int end=D[finish];end!=Positions.NONE;end=parent(end) )
+            list[--len] = end;
+        int prev = list[0];
         Path head = null;
         Path p = null;
-        for ( int i=1;i<list.size();i++ )
+        for ( int i=1;i<list.length;i++ )
         {
             Path prevP = p;
-            current = list.get(i);
-            p = new Path( prev, current );
+            int current = list[i];
+            p = new Path( P.x(prev), P.y(prev), P.x(current), P.y(current) );
             if ( prevP != null )
                 prevP.next = p;
             if ( head == null )
@@ -287,71 +396,67 @@ public class Matchup
     }
     /**
      * Create a new position
-     * @param top the Pos above us
+     * @param top the position above us
      * @param mid the one on the same diagonal as us
      * @param bot the one to the left
-     * @param d the diagonal we are trying to create a new Pos for
+     * @param d the diagonal we are trying to create a new position for
+     * @return the number of the new position
      */
-    private Pos makePos( Pos top, Pos mid, Pos bot, int d )
+    private int makePos( int top, int mid, int bot, int d )
     {
-        Extension hExt=null,vExt=null;
-        Pos p = new Pos();
+        int hExt=Positions.NONE,vExt=Positions.NONE;
         int topScore = Integer.MAX_VALUE;
         int botScore = Integer.MAX_VALUE;
         int midScore = Integer.MAX_VALUE;
         int hScore = Integer.MAX_VALUE;
         int vScore = Integer.MAX_VALUE;
-        if ( top!=null && roomBelow(top,d+1) )
-            topScore = top.score + A[top.x-(d+1)];
-        if ( bot != null && roomRight(bot)  )
-            botScore = bot.score + B[bot.x];
-        if ( mid != null && roomRight(mid) && roomBelow(mid,d) )
+        if ( top!=Positions.NONE && roomBelow(top,d+1) )
+            topScore = P.score(top) + A[P.x(top)-(d+1)];
+        if ( bot != Positions.NONE && roomRight(bot)  )
+            botScore = P.score(bot) + B[P.x(bot)];
+        if ( mid != Positions.NONE && roomRight(mid) && roomBelow(mid,d) )
         {
-            midScore = mid.score + Math.abs(B[mid.x]-A[mid.x-d]);
-            hExt = alignAcross( mid.x+1, mid.y+1);
-            if ( hExt != null )
-                hScore = hExt.score;
-            vExt = alignUp( mid.x+1, mid.y+1 );
-            if ( vExt != null )
-                vScore = vExt.score;
+            int mx = P.x(mid);
+            midScore = P.score(mid) + Math.abs(B[mx]-A[mx-d]);
+            hExt = alignAcross( mx+1, P.y(mid)+1 );
+            if ( hExt != Positions.NONE )
+                hScore = extScore;
+            vExt = alignUp( mx+1, P.y(mid)+1 );
+            if ( vExt != Positions.NONE )
+                vScore = extScore;
         }
         Score s = getBestScore( topScore, midScore, botScore, hScore, vScore );
+        int x=0,y=0,score=0;
         switch ( s )
         {
             case TOP:
-                p.x = top.x;
-                p.y = top.x-d;
-                p.score = topScore;
-                p.parent = top;
+                x = P.x(top);
+                y = x-d;
+                score = topScore;
                 break;
             case MID:
-                p.x = mid.x+1;
-                p.y = p.x-d;
-                p.score = midScore;
-                p.parent = mid;
+                x = P.x(mid)+1;
+                y = x-d;
+                score = midScore;
                 break;
             case BOT:
-                p.x = bot.x+1;
-                p.y = p.x-d;
-                p.score = botScore;
-                p.parent = bot;
+                x = P.x(bot)+1;
+                y = x-d;
+                score = botScore;
                 break;
+            // extensions end where the diagonal move would have
             case HEXT:
-                p.x = hExt.xPosition();
-                p.y = hExt.yPosition();
-                p.score = hScore;
-                p.parent = hExt.parent;
+                x = P.x(mid)+1;
+                y = P.y(mid)+1;
+                score = hScore;
                 break;
             case VEXT:
-                p.x = vExt.xPosition();
-                p.y = vExt.yPosition();
-                p.score = vScore;
-                p.parent = vExt.parent;
+                x = P.x(mid)+1;
+                y = P.y(mid)+1;
+                score = vScore;
                 break;
-            
         }
-        M[p.x][p.y] = p;
-        return p;
+        return P.add( x, y, score, s );
     }
     /**
      * Run the alignment
@@ -360,29 +465,28 @@ public class Matchup
      */
     public int[][][] align() throws MatchupException
     {
-        // first Pos will be installed manually at index(0)
+        // first position will be installed manually at index(0)
         int left=index(-1),right=index(1);
         // destination diagonal
         int finish = index(B.length-A.length);
         try
         {
-            Pos top,mid,bot;
+            int top,mid,bot;
             // do the first match manually
-            D[index(0)] = new Pos(0,0,0,null);
-            M[0][0] = D[index(0)];
+            D[index(0)] = P.add( 0, 0, 0, null );
             do
             {
                 for ( int i=left;i<=right;i+=2 )
                 {
                     int d = diagonal(i);// diagonal we are trying to fill in
-                    top = (i<maxindex&&roomBelow(D[i+1],d+1))?D[i+1]:null;
-                    mid = (roomBelow(D[i],d)&&roomRight(D[i]))?D[i]:null;
-                    bot = (i>0&&roomRight(D[i-1]))?D[i-1]:null;
-                    if ( top!=null||bot!=null||mid!=null )
-                    {
-                        Pos p = makePos(top,mid,bot,d);
-                        D[i] = p;
-                    }
+                    top = (i<maxindex&&roomBelow(D[i+1],d+1))
+                        ?D[i+1]:Positions.NONE;
+                    mid = (roomBelow(D[i],d)&&roomRight(D[i]))
+                        ?D[i]:Positions.NONE;
+                    bot = (i>0&&roomRight(D[i-1]))?D[i-1]:Positions.NONE;
+                    if ( top!=Positions.NONE||bot!=Positions.NONE
+                        ||mid!=Positions.NONE )
+                        D[i] = makePos(top,mid,bot,d);
                 }
                 if ( roomBelow(D[left],diagonal(left)) )
                     left--;
@@ -393,12 +497,12 @@ public class Matchup
                 else
                     right--;
                 //print();
-            } while ( D[finish]== null 
-                || D[finish].x!=B.length||D[finish].y!=A.length );
+            } while ( D[finish]==Positions.NONE 
+                || P.x(D[finish])!=B.length||P.y(D[finish])!=A.length );
             //print();
             Path path = makePath( D, finish );
             //path.print();
-            //System.out.println( "lowest cost alignment="+D[finish].score);
+            //System.out.println( "lowest cost alignment="+P.score[D[finish]]);
             return path.toArray();
         }
         catch ( Exception e )
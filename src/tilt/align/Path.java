@@ -29,15 +29,15 @@ class Path
         this.xValues = xValues;
         this.yValues = yValues;
     }
-    Path( Pos parent, Pos child )
+    Path( int parentX, int parentY, int childX, int childY )
     {
-        int xLen = child.x-parent.x;
-        int yLen = child.y-parent.y;
+        int xLen = childX-parentX;
+        int yLen = childY-parentY;
         this.xValues = new int[xLen];
         this.yValues = new int[yLen];
-        for ( int j=0,i=parent.x;i<child.x;i++,j++ )
+        for ( int j=0,i=parentX;i<childX;i++,j++ )
             this.xValues[j] = i;
-        for ( int j=0,i=parent.y;i<child.y;i++,j++ )
+        for ( int j=0,i=parentY;i<childY;i++,j++ )
             this.yValues[j] = i;
     }
     void print()
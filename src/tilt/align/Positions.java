@@ -0,0 +1,171 @@
+/*
+ * This file is part of TILT.
+ *
+ *  TILT is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  TILT is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with TILT.  If not, see <http://www.gnu.org/licenses/>.
+ *  (c) copyright Desmond Schmidt 2015
+ */
+package tilt.align;
+
+/**
+ * The positions reached by the aligner. The wavefront makes exactly one
+ * position at each cell of the edit graph, one anti-diagonal (x+y) after
+ * another. A position is numbered by its cell, with x in the high bits
+ * and y in the low, so both can be read back without dividing. Moves and
+ * extensions only look back a few anti-diagonals, so scores are kept for
+ * just that band, in a ring of rows indexed by x. Each cell also keeps
+ * the move that reached it as a 4-bit code, two to a byte, from which
+ * the path can be traced back. A position never changes once made.
+ * @author desmond
+ */
+class Positions
+{
+    /** returned when there is no such position */
+    static final int NONE = -1;
+    /** trail code of the first position, which has no parent */
+    private static final int START = 7;
+    /** the moves in trail-code order */
+    private static final Score[] MOVES = Score.values();
+    /** the move that made each cell, 0 if not yet reached */
+    byte[] trail;
+    /** the scores of the most recent anti-diagonals, indexed by x */
+    int[] band;
+    /** number of anti-diagonals kept in band, less one */
+    int mask;
+    /** number of cells in each column */
+    int rows;
+    /** bits of a position's number taken up by y */
+    int shift;
+    /** mask for the y-bits of a position's number */
+    int yMask;
+    /** number of cells in each row */
+    int columns;
+    /** the latest anti-diagonal reached */
+    int front;
+    /**
+     * Create an empty set of positions
+     * @param columns the number of columns in the edit graph (B.length+1)
+     * @param rows the number of rows in the edit graph (A.length+1)
+     * @param depth the number of anti-diagonals whose scores are needed
+     */
+    Positions( int columns, int rows, int depth )
+    {
+        this.rows = rows;
+        this.columns = columns;
+        this.shift = 32-Integer.numberOfLeadingZeros( Math.max(rows-1,1) );
+        this.yMask = (1<<shift)-1;
+        if ( ((long)columns<<shift) > Integer.MAX_VALUE )
+            throw new IllegalArgumentException("edit graph of "+columns+"x"
+                +rows+" is too large");
+        int needed = Math.min( depth, columns+rows );
+        int kept = Integer.highestOneBit( needed );
+        if ( kept < needed )
+            kept <<= 1;
+        this.mask = kept-1;
+        trail = new byte[(int)(((long)columns*rows+1)/2)];
+        band = new int[kept*columns];
+    }
+    /**
+     * Make the position at a cell. Scores are never negative.
+     * @param px the x-position (index into B)
+     * @param py the y-position (index into A)
+     * @param pScore the cost expended to get there
+     * @param move the move that got there or null for the first position
+     * @return the number of the new position
+     */
+    int add( int px, int py, int pScore, Score move )
+    {
+        int cell = px*rows+py;
+        if ( code(cell) != 0 )
+            throw new IllegalStateException("position at "+px+","+py
+                +" made twice");
+        int code = (move==null)?START:move.ordinal()+1;
+        trail[cell>>1] |= (byte)(code<<((cell&1)<<2));
+        if ( px+py > front )
+            front = px+py;
+        band[((px+py)&mask)*columns+px] = pScore;
+        return (px<<shift)|py;
+    }
+    /**
+     * Get the trail code of a cell
+     * @param cell the cell's index, column by column
+     * @return 0 if no position has been made there, else its move's code
+     */
+    private int code( int cell )
+    {
+        return (trail[cell>>1]>>((cell&1)<<2))&0xF;
+    }
+    /**
+     * Get the cost of reaching a position
+     * @param p the position's number
+     * @return its score
+     */
+    int score( int p )
+    {
+        int px = p>>>shift;
+        int k = px+(p&yMask);
+        if ( front-k > mask )
+            throw new IllegalStateException("score at "+px+","+(k-px)
+                +" has left the band");
+        return band[(k&mask)*columns+px];
+    }
+    /**
+     * Is the score of a position still kept?
+     * @param p the position's number
+     * @return true if it is in the band
+     */
+    boolean kept( int p )
+    {
+        return front-(x(p)+y(p)) <= mask;
+    }
+    /**
+     * Get the move that reached a position
+     * @param p the position's number
+     * @return the move or null for the first position
+     */
+    Score move( int p )
+    {
+        int code = code( x(p)*rows+y(p) );
+        if ( code == 0 )
+            throw new IllegalStateException("no position at "+x(p)+","+y(p));
+        return (code==START)?null:MOVES[code-1];
+    }
+    /**
+     * Get the x-position of a position
+     * @param p the position's number
+     * @return its index into B
+     */
+    int x( int p )
+    {
+        return p>>>shift;
+    }
+    /**
+     * Get the y-position of a position
+     * @param p the position's number
+     * @return its index into A
+     */
+    int y( int p )
+    {
+        return p&yMask;
+    }
+    /**
+     * Get the position made at a cell
+     * @param px the x-position
+     * @param py the y-position
+     * @return the position's number or NONE
+     */
+    int at( int px, int py )
+    {
+        return (code(px*rows+py)==0)?NONE:(px<<shift)|py;
+    }
+}
@@ -31,4 +31,8 @@ public class Params
     public static String TEXT="text";
     public static String SERVER = "server";
     public static String URL = "url";
+    public static String JOBID = "id";
+    public static String VERSION = "version";
+    public static String WAIT = "wait";
+    public static String FORMAT = "format";
 }
@@ -40,4 +40,8 @@ public class Service
     public static final String OPTIONS = "options";
     /** options for a tilt document */
     public static final String BOUNDS = "bounds";
+    /** status of a recognition job */
+    public static final String JOB = "job";
+    /** timings and counts of the work done, as JSON or Prometheus text */
+    public static final String METRICS = "metrics";
 }
@@ -0,0 +1,142 @@
+/*
+ * This file is part of TILT.
+ *
+ *  TILT is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  TILT is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with TILT.  If not, see <http://www.gnu.org/licenses/>.
+ *  (c) copyright Desmond Schmidt 2015
+ */
+
+package tilt.handler;
+
+import java.util.HashMap;
+import tilt.constants.Service;
+import tilt.exception.TiltException;
+import tilt.handler.get.*;
+import tilt.handler.post.TiltRecogniseHandler;
+import tilt.handler.post.TiltTestHandler;
+
+/**
+ * The table of services, built once. Handlers that keep nothing between
+ * requests are made once and shared by all requests. Those that keep the
+ * request's parameters in their fields (docid, pageid, text etc.) are
+ * request-scoped: their route makes a fresh one for every request.
+ * @author desmond
+ */
+public class Routes
+{
+    /**
+     * Supplies the handler for one request to a service
+     */
+    public interface Route
+    {
+        /**
+         * Get a handler for a request
+         * @return the shared handler or a new one just for this request
+         */
+        TiltHandler handler();
+    }
+    /** the handlers for each http method */
+    static final HashMap<String,TiltHandler> METHODS = new HashMap<>();
+    /** GET services by name */
+    static final HashMap<String,Route> GET = new HashMap<>();
+    /** POST services by name */
+    static final HashMap<String,Route> POST = new HashMap<>();
+    /** serves anything under /tilt that isn't a service */
+    static final TiltFileHandler FILES = new TiltFileHandler();
+    static
+    {
+        METHODS.put( "GET", new TiltGetHandler() );
+        METHODS.put( "POST", new TiltPostHandler() );
+        METHODS.put( "PUT", new TiltPutHandler() );
+        METHODS.put( "DELETE", new TiltDeleteHandler() );
+        GET.put( Service.EDITOR, shared(new TiltEditor()) );
+        GET.put( Service.JOB, shared(new TiltJobHandler()) );
+        GET.put( Service.METRICS, shared(new TiltMetricsHandler()) );
+        GET.put( Service.GEOJSON, shared(new TiltGeoJsonHandler()) );
+        GET.put( Service.IMAGE, new Route() {
+            public TiltHandler handler()
+            {
+                return new TiltImageHandler();
+            }
+        });
+        GET.put( Service.OPTIONS, new Route() {
+            public TiltHandler handler()
+            {
+                return new TiltOptionsHandler();
+            }
+        });
+        GET.put( Service.BOUNDS, new Route() {
+            public TiltHandler handler()
+            {
+                return new TiltBoundsHandler();
+            }
+        });
+        POST.put( Service.TEST, new Route() {
+            public TiltHandler handler()
+            {
+                return new TiltTestHandler();
+            }
+        });
+        POST.put( Service.RECOGNISE, new Route() {
+            public TiltHandler handler()
+            {
+                return new TiltRecogniseHandler();
+            }
+        });
+    }
+    /**
+     * Make a route that always gives the same handler
+     * @param h a handler with no per-request fields
+     * @return the route
+     */
+    private static Route shared( final TiltHandler h )
+    {
+        return new Route() {
+            public TiltHandler handler()
+            {
+                return h;
+            }
+        };
+    }
+    /**
+     * Get the handler for an http method
+     * @param method the method, e.g. "GET"
+     * @return its shared handler
+     * @throws TiltException if the method is not supported
+     */
+    public static TiltHandler forMethod( String method ) throws TiltException
+    {
+        TiltHandler h = METHODS.get( method );
+        if ( h == null )
+            throw new TiltException("Unknown http method "+method);
+        return h;
+    }
+    /**
+     * Look up a GET service
+     * @param service its name, the first part of the urn
+     * @return its route or null if there is no such service
+     */
+    static Route get( String service )
+    {
+        return GET.get( service );
+    }
+    /**
+     * Look up a POST service
+     * @param service its name, the first part of the urn
+     * @return its route or null if there is no such service
+     */
+    static Route post( String service )
+    {
+        return POST.get( service );
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * This file is part of TILT.
+ *
+ *  TILT is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  TILT is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with TILT.  If not, see <http://www.gnu.org/licenses/>.
+ *  (c) copyright Desmond Schmidt 2015
+ */
+
+package tilt.handler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A file served as it is, such as a script, a stylesheet, a font or an
+ * image. Its contents are read onto the heap when it is first asked for,
+ * and those of a type worth compressing are gzipped once as well, so
+ * requests just copy out an array. Nothing is mapped, so a file changed
+ * or truncated on disk can't alter or break what is being sent. It
+ * remembers the length and time of the file it was read from so a
+ * changed file can be noticed and read again.
+ * @author desmond
+ */
+public class StaticFile
+{
+    /** largest file to keep in memory, bigger ones are read per request */
+    static final long KEEP_MAX = Long.getLong("tilt.static.keepMax",
+        1024L*1024);
+    /** content types by file suffix */
+    static final HashMap<String,String> TYPES = new HashMap<>();
+    /** content types worth gzipping */
+    static final HashMap<String,Boolean> COMPRESSIBLE = new HashMap<>();
+    static
+    {
+        addType( "png", "image/png", false );
+        addType( "jpg", "image/jpeg", false );
+        addType( "jpeg", "image/jpeg", false );
+        addType( "gif", "image/gif", false );
+        addType( "svg", "image/svg+xml", true );
+        addType( "json", "application/json", true );
+        addType( "html", "text/html", true );
+        addType( "js", "text/javascript", true );
+        addType( "css", "text/css", true );
+        addType( "txt", "text/plain", true );
+        addType( "woff", "application/font-woff", false );
+        addType( "woff2", "font/woff2", false );
+        addType( "ttf", "application/x-font-ttf", true );
+        addType( "otf", "application/x-font-opentype", true );
+        addType( "eot", "application/vnd.ms-fontobject", true );
+    }
+    final File file;
+    final long length;
+    final long lastModified;
+    final String contentType;
+    /** a strong validator made from the file's length and time */
+    final String etag;
+    /** the contents or null if the file is too big to keep */
+    final byte[] data;
+    /** the gzipped contents or null if not worth it */
+    final byte[] gzipped;
+    /** when the file on disk was last compared with this */
+    volatile long checked;
+    /**
+     * Load a file
+     * @param file the file, which must exist
+     * @throws IOException if it could not be read
+     */
+    StaticFile( File file ) throws IOException
+    {
+        this.file = file;
+        // taken first, so a change while reading is seen as one later
+        this.lastModified = file.lastModified();
+        this.contentType = typeOf( file.getName() );
+        if ( file.length() <= KEEP_MAX )
+        {
+            this.data = Files.readAllBytes( file.toPath() );
+            this.length = data.length;
+            this.gzipped = COMPRESSIBLE.containsKey(contentType)
+                ?gzip(data):null;
+        }
+        else
+        {
+            this.data = null;
+            this.length = file.length();
+            this.gzipped = null;
+        }
+        this.etag = "\""+Long.toHexString(length)+"-"
+            +Long.toHexString(lastModified)+"\"";
+        this.checked = System.currentTimeMillis();
+    }
+    /**
+     * Register a file type
+     * @param suffix the file suffix without the dot
+     * @param type its content type
+     * @param compressible true if it is worth gzipping
+     */
+    private static void addType( String suffix, String type,
+        boolean compressible )
+    {
+        TYPES.put( suffix, type );
+        if ( compressible )
+            COMPRESSIBLE.put( type, Boolean.TRUE );
+    }
+    /**
+     * Work out the content type of a file from its name
+     * @param name the file name
+     * @return its type, or application/octet-stream if not known
+     */
+    static String typeOf( String name )
+    {
+        int pos = name.lastIndexOf('.');
+        String type = (pos<0)?null:TYPES.get(name.substring(pos+1)
+            .toLowerCase());
+        return (type==null)?"application/octet-stream":type;
+    }
+    /**
+     * Compress some contents
+     * @param src the contents
+     * @return the gzipped bytes, or null if they are not much smaller
+     * @throws IOException
+     */
+    private static byte[] gzip( byte[] src ) throws IOException
+    {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try ( GZIPOutputStream gos = new GZIPOutputStream(bos) )
+        {
+            gos.write( src );
+        }
+        byte[] zipped = bos.toByteArray();
+        return ( zipped.length < src.length*9/10 )?zipped:null;
+    }
+    /**
+     * Is the file on disk still the one this was loaded from?
+     * @return true if its length and time are unchanged
+     */
+    boolean isCurrent()
+    {
+        return file.exists() && file.lastModified() == lastModified
+            && file.length() == length;
+    }
+    /**
+     * Write part of the file
+     * @param offset the first byte to write
+     * @param len the number of bytes to write
+     * @param out the stream to write to
+     * @throws IOException
+     */
+    void writeTo( long offset, long len, OutputStream out )
+        throws IOException
+    {
+        if ( data != null )
+            out.write( data, (int)offset, (int)len );
+        else
+        {
+            try ( RandomAccessFile raf = new RandomAccessFile(file,"r") )
+            {
+                FileChannel fc = raf.getChannel();
+                WritableByteChannel ch = Channels.newChannel( out );
+                long done = 0;
+                while ( done < len )
+                {
+                    long n = fc.transferTo( offset+done, len-done, ch );
+                    if ( n <= 0 )
+                        throw new EOFException( file.getPath() );
+                    done += n;
+                }
+            }
+        }
+    }
+}
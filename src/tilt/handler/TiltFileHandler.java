@@ -22,15 +22,59 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import tilt.exception.TiltException;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * Handle requests for ordinary files like scripts
+ * Handle requests for ordinary files like scripts, stylesheets, fonts and
+ * images. Each path asked for is resolved once to the canonical path of
+ * the file it names, and only paths of files that exist are remembered,
+ * the most recently used MAX_PATHS of them. The file is kept as a
+ * StaticFile under its canonical path, so there is one copy of each file
+ * however it is asked for. Both are checked against the disk at most
+ * once every RECHECK milliseconds. Responses carry an ETag, Last-Modified and
+ * Cache-Control (max-age from tilt.static.maxAge seconds), so browsers
+ * that already have a file get a 304. Compressible files are sent gzipped
+ * to clients that accept it, and a single byte range may be asked for.
  * @author desmond
  */
 public class TiltFileHandler extends TiltHandler 
 {
+    /** how often to check a file on disk for changes */
+    static final long RECHECK = 1000;
+    /** how long browsers may use a file without asking, in seconds */
+    static final int MAX_AGE = Integer.getInteger("tilt.static.maxAge",600);
+    /** most paths to remember (tilt.static.maxPaths) */
+    static final int MAX_PATHS = Integer.getInteger("tilt.static.maxPaths",
+        1024);
+    /** 
+     * A path resolved to an existing file
+     */
+    static class Resolved
+    {
+        final String key;
+        final long checked;
+        Resolved( String key, long checked )
+        {
+            this.key = key;
+            this.checked = checked;
+        }
+    }
+    /** resolved paths in least-recently-used order, guarded by itself */
+    static final LinkedHashMap<String,Resolved> paths = 
+        new LinkedHashMap<String,Resolved>( 16, 0.75f, true ) {
+        protected boolean removeEldestEntry( 
+            Map.Entry<String,Resolved> eldest )
+        {
+            return size() > MAX_PATHS;
+        }
+    };
+    /** files already read, keyed by their canonical path */
+    static final ConcurrentHashMap<String,StaticFile> files = 
+        new ConcurrentHashMap<>();
     /**
      * Look in all the likely places for this relatively specified file
      * @param relPath the relative path from somewhere
@@ -54,43 +98,220 @@ public class TiltFileHandler extends TiltHandler
         }
         return file;
     }
+    /**
+     * Find the file a path names, looking for it only if the path is new
+     * or was last resolved RECHECK milliseconds ago
+     * @param relPath the relative path
+     * @param now the time now
+     * @return the canonical path of the file
+     * @throws Exception if there is no such file
+     */
+    private String resolve( String relPath, long now ) throws Exception
+    {
+        synchronized ( paths )
+        {
+            Resolved r = paths.get( relPath );
+            if ( r != null && now-r.checked < RECHECK )
+                return r.key;
+        }
+        File file = getStaticFile( relPath );
+        if ( !file.isFile() )
+        {
+            synchronized ( paths )
+            {
+                paths.remove( relPath );
+            }
+            throw new FileNotFoundException(file.getAbsolutePath());
+        }
+        String key = file.getCanonicalPath();
+        synchronized ( paths )
+        {
+            paths.put( relPath, new Resolved(key,now) );
+        }
+        return key;
+    }
+    /**
+     * Get a file, reading it the first time or if it changed
+     * @param relPath its relative path
+     * @return the loaded file
+     * @throws Exception if it could not be found or read
+     */
+    private StaticFile lookup( String relPath ) throws Exception
+    {
+        long now = System.currentTimeMillis();
+        String key = resolve( relPath, now );
+        StaticFile sf = files.get( key );
+        if ( sf != null && now-sf.checked >= RECHECK )
+        {
+            if ( sf.isCurrent() )
+                sf.checked = now;
+            else
+            {
+                files.remove( key, sf );
+                sf = null;
+            }
+        }
+        if ( sf == null )
+        {
+            sf = new StaticFile( new File(key) );
+            files.put( key, sf );
+        }
+        return sf;
+    }
+    /**
+     * Does the client accept gzipped content?
+     * @param request the http request
+     * @return true if its Accept-Encoding allows gzip
+     */
+    private boolean acceptsGzip( HttpServletRequest request )
+    {
+        String ae = request.getHeader("Accept-Encoding");
+        if ( ae == null )
+            return false;
+        for ( String coding : ae.split(",") )
+        {
+            String[] parts = coding.trim().split(";");
+            if ( parts[0].trim().equalsIgnoreCase("gzip") )
+                return parts.length==1 || !parts[1].trim().matches(
+                    "q=0(\\.0*)?");
+        }
+        return false;
+    }
+    /**
+     * Does the client already have this version of the file?
+     * @param request the http request
+     * @param sf the file
+     * @param etag the tag of the version that would be sent
+     * @return true if a 304 should be sent
+     */
+    private boolean notModified( HttpServletRequest request, StaticFile sf,
+        String etag )
+    {
+        String inm = request.getHeader("If-None-Match");
+        if ( inm != null )
+        {
+            for ( String tag : inm.split(",") )
+            {
+                tag = tag.trim();
+                if ( tag.startsWith("W/") )
+                    tag = tag.substring(2);
+                if ( tag.equals("*") || tag.equals(etag) )
+                    return true;
+            }
+            return false;
+        }
+        try
+        {
+            long since = request.getDateHeader("If-Modified-Since");
+            return since != -1 && sf.lastModified/1000 <= since/1000;
+        }
+        catch ( IllegalArgumentException iae )
+        {
+            return false;
+        }
+    }
+    /**
+     * Work out the byte range asked for, if any
+     * @param request the http request
+     * @param sf the file
+     * @return null for the whole file, an empty array if the range can't
+     * be satisfied, or the first and last byte positions
+     */
+    private long[] getRange( HttpServletRequest request, StaticFile sf )
+    {
+        String range = request.getHeader("Range");
+        if ( range == null || !range.startsWith("bytes=") 
+            || range.indexOf(',') != -1 )
+            return null;
+        String ifRange = request.getHeader("If-Range");
+        if ( ifRange != null && !ifRange.equals(sf.etag) )
+            return null;
+        String spec = range.substring(6).trim();
+        int dash = spec.indexOf('-');
+        if ( dash == -1 )
+            return null;
+        try
+        {
+            long first, last;
+            if ( dash == 0 )
+            {
+                long suffix = Long.parseLong( spec.substring(1) );
+                if ( suffix == 0 )
+                    return new long[0];
+                first = Math.max( 0, sf.length-suffix );
+                last = sf.length-1;
+            }
+            else
+            {
+                first = Long.parseLong( spec.substring(0,dash) );
+                if ( first >= sf.length )
+                    return new long[0];
+                last = ( dash == spec.length()-1 )?sf.length-1
+                    :Math.min(sf.length-1,
+                    Long.parseLong(spec.substring(dash+1)));
+                if ( last < first )
+                    return null;
+            }
+            return new long[]{first,last};
+        }
+        catch ( NumberFormatException nfe )
+        {
+            return null;
+        }
+    }
     public void handle(HttpServletRequest request,
         HttpServletResponse response, String urn) throws TiltException {
         try
         // serve up any other form of data in its native format
         // this is for secondary requests made by this service itself
         {
-            File file = getStaticFile(urn);
-            if ( file != null )
+            StaticFile sf = lookup( urn );
+            boolean gzip = sf.gzipped != null && acceptsGzip(request);
+            String etag = gzip?sf.etag.substring(0,sf.etag.length()-1)
+                +"-gz\"":sf.etag;
+            response.setHeader("ETag", etag );
+            response.setDateHeader("Last-Modified", sf.lastModified );
+            response.setHeader("Cache-Control", "public, max-age="+MAX_AGE );
+            response.setHeader("Accept-Ranges", "bytes" );
+            if ( sf.gzipped != null )
+                response.setHeader("Vary", "Accept-Encoding");
+            if ( notModified(request,sf,etag) )
             {
-                FileInputStream fis = new FileInputStream(file);
-                int len = (int)file.length();
-                byte[] data = new byte[len];
-                fis.read( data );
-                fis.close();
-                if ( file.getName().endsWith(".png") )
-                    response.setContentType("image/png");
-                else if ( file.getName().endsWith(".jpg") )
-                    response.setContentType("image/jpg");
-                else if ( file.getName().endsWith(".json") )
-                    response.setContentType("application/json");
-                else if ( file.getName().endsWith(".html") )
-                    response.setContentType("text/html");
-                else if ( file.getName().endsWith(".js") )
-                    response.setContentType("text/javascript");
-                else if ( file.getName().endsWith(".css") )
-                    response.setContentType("text/css");
-                else if ( file.getName().endsWith(".txt"))
-                    response.setContentType("text/plain");
-                else    // else assume binary data
-                {
-                    //System.out.println(urn);
-                    response.setContentType("application/octet-stream");
-                }
-                response.getOutputStream().write(data);
+                response.setStatus( HttpServletResponse.SC_NOT_MODIFIED );
+                return;
+            }
+            response.setContentType( sf.contentType );
+            OutputStream out = response.getOutputStream();
+            long[] range = getRange( request, sf );
+            if ( range != null && range.length == 0 )
+            {
+                response.setStatus( 
+                    HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE );
+                response.setHeader("Content-Range","bytes */"+sf.length);
+            }
+            else if ( range != null )
+            {
+                long len = range[1]-range[0]+1;
+                // a part is the same whether or not the whole is gzipped
+                response.setHeader("ETag", sf.etag );
+                response.setStatus( HttpServletResponse.SC_PARTIAL_CONTENT );
+                response.setHeader("Content-Range","bytes "+range[0]+"-"
+                    +range[1]+"/"+sf.length);
+                response.setHeader("Content-Length", Long.toString(len) );
+                sf.writeTo( range[0], len, out );
+            }
+            else if ( gzip )
+            {
+                response.setHeader("Content-Encoding", "gzip");
+                response.setContentLength( sf.gzipped.length );
+                out.write( sf.gzipped );
             }
             else
-                throw new FileNotFoundException(file.getAbsolutePath());
+            {
+                response.setHeader("Content-Length", 
+                    Long.toString(sf.length) );
+                sf.writeTo( 0, sf.length, out );
+            }
         }
         catch ( Exception e )
         {
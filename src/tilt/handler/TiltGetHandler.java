@@ -24,7 +24,6 @@ import javax.servlet.http.HttpServletResponse;
 import tilt.exception.TiltException;
 import tilt.Utils;
 import tilt.test.Test;
-import tilt.handler.get.*;
 /**
  * Handle a GET request for various image types, text, GeoJSON
  *
@@ -40,7 +39,7 @@ public class TiltGetHandler extends TiltHandler {
                     String second = Utils.second(urn);
                     if ( second.contains(".") )
                     {
-                        new TiltFileHandler().handle(request,response, second );
+                        Routes.FILES.handle(request,response, second );
                     }
                     else
                     {
@@ -59,28 +58,14 @@ public class TiltGetHandler extends TiltHandler {
                     throw new TiltException(e);
                 }
             } 
-            else if (service.equals(Service.EDITOR))
-            {
-                new TiltEditor().handle(request, response, Utils.pop(urn));
-            }
-            else if (service.equals(Service.IMAGE)) {
-                new TiltImageHandler().handle(request, response, Utils.pop(urn));
-            }
-            else if ( service.equals(Service.GEOJSON) )
-            {
-                new TiltGeoJsonHandler().handle(request, response, Utils.pop(urn));
-            }
-            else if ( service.equals(Service.OPTIONS) )
-            {
-                new TiltOptionsHandler().handle(request, response, Utils.pop(urn));
-            }
-            else if ( service.equals(Service.BOUNDS) )
+            else
             {
-                new TiltBoundsHandler().handle(request, response, Utils.pop(urn));
+                Routes.Route route = Routes.get( service );
+                if ( route != null )
+                    route.handler().handle(request, response, Utils.pop(urn));
+                else
+                    Routes.FILES.handle(request,response,urn);
             }
-            else
-                new TiltFileHandler().handle(request,response,urn);
-                
         } catch (Exception e) {
             throw new TiltException(e);
         }
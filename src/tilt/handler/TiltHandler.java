@@ -22,7 +22,7 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONValue;
-import tilt.Utils;
+import tilt.PageClient;
 
 /**
  * Abstract super-class for all handlers: PUT, POST, DELETE, GET
@@ -46,19 +46,6 @@ abstract public class TiltHandler
         InetAddress addr = InetAddress.getByName(ipAddress);
         return addr;
     }
-    /**
-     * Compose a url to retrieve a page's text
-     * @param request the http request object
-     * @param docid the document the text comes from
-     * @param pageid the pageid of the text desired
-     * @return a url to retrieve the text
-     */
-    protected String composeTextUrl( HttpServletRequest request, String docid, 
-        String pageid )
-    {
-        return "http://"+request.getServerName()+"/pages/html?docid="
-            +docid+"&pageid="+pageid;
-    }
     /**
      * Getthe crop rect for the given docid+pageid combination
      * @param server the server host name
@@ -72,9 +59,7 @@ abstract public class TiltHandler
     {
         try
         {
-            String url = "http://"+server+"/pages/crop_rect?docid="
-                +docid+"&pageid="+pageid;
-            String jstr = Utils.getFromUrl( url );
+            String jstr = PageClient.getCropRect( server, docid, pageid );
             JSONArray jarr = (JSONArray)JSONValue.parse( jstr );
             if ( jarr.size()==4 )
             {
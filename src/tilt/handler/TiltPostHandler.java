@@ -20,9 +20,6 @@ import tilt.exception.*;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import tilt.Utils;
-import tilt.handler.post.TiltTestHandler;
-import tilt.constants.Service;
-import tilt.handler.post.TiltRecogniseHandler;
 import org.json.simple.JSONArray;
 /**
  * Handle a PUT request (used for update)
@@ -35,13 +32,9 @@ public class TiltPostHandler extends TiltHandler
     {
         try {
             String service = Utils.first(urn);
-            if ( service.equals(Service.TEST) ) {
-                new TiltTestHandler().handle(request,response,Utils.pop(urn));
-            }
-            else if ( service.equals(Service.RECOGNISE) )
-            {
-                new TiltRecogniseHandler().handle(request, response, Utils.pop(urn));
-            }
+            Routes.Route route = Routes.post( service );
+            if ( route != null )
+                route.handler().handle(request,response,Utils.pop(urn));
         }
         catch ( Exception e )
         {
@@ -23,7 +23,7 @@ import javax.servlet.http.HttpServletResponse;
 import tilt.constants.GeoJSON;
 import org.json.simple.JSONObject;
 import org.json.simple.JSONArray;
-import tilt.Utils;
+import tilt.PageClient;
 import tilt.constants.Params;
 import tilt.exception.TiltException;
 
@@ -41,9 +41,7 @@ public class TiltBoundsHandler extends TiltGeoJsonHandler
         {
             try
             {
-                String textUrl = "http://"+serverName+"/pages/html?docid="
-                    +docid+"&pageid="+pageid;
-                text = Utils.getFromUrl(textUrl);
+                text = PageClient.getText( serverName, docid, pageid );
             }
             catch ( Exception e )
             {
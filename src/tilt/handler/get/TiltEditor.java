@@ -25,16 +25,24 @@ import tilt.exception.TiltException;
 import tilt.handler.TiltGetHandler;
 import tilt.constants.Params;
 import java.io.File;
+import java.io.Writer;
 import java.util.HashSet;
 import html.Head;
 
 /**
- * Editor GUI for Tilt GeoJSON documents
+ * Editor GUI for Tilt GeoJSON documents. The page is the same for every
+ * request except for the div holding the script, so the header is built
+ * once and shared. It is built again only when the static css or js
+ * directory changes, which is checked at most once every RECHECK
+ * milliseconds.
  * @author desmond
  */
 public class TiltEditor extends TiltGetHandler 
 {
-    HTML doc;
+    /** how often to check the static directories for changes */
+    static final long RECHECK = 1000;
+    /** stands in for the body when the page is split */
+    static final String MARKER = "\u0000BODY\u0000";
     static HashSet<String> cssExceptions;
     static HashSet<String> jsExceptions;
     static
@@ -47,18 +55,52 @@ public class TiltEditor extends TiltGetHandler
         cssExceptions.add("post.css");
     }
     /**
-     * Add all the css or js files in the given directory to the header
+     * The page split around its body, with the state of the static
+     * directories it was built from
+     */
+    static class Page
+    {
+        final String prefix;
+        final String suffix;
+        final long cssModified;
+        final long jsModified;
+        final long checked;
+        Page( String prefix, String suffix, long cssModified, 
+            long jsModified, long checked )
+        {
+            this.prefix = prefix;
+            this.suffix = suffix;
+            this.cssModified = cssModified;
+            this.jsModified = jsModified;
+            this.checked = checked;
+        }
+    }
+    /** the current page, replaced whole when rebuilt */
+    volatile Page page;
+    /**
+     * Find the static directory for a file type
      * @param suffix the file type suffix (minus the dot)
+     * @return the directory, which may not exist
      */
-    void addFilesInDir( String suffix, HashSet<String> exceptions )
+    static File staticDir( String suffix )
     {
-        Head h = doc.getHead();
         File parent1 = new File(System.getProperty("user.dir"));
         String path = TiltEditor.class.getProtectionDomain().getCodeSource().getLocation().getPath();
         File parent2 = new File(path).getParentFile();
-        File cssDir = new File(parent1,"/static/"+suffix);
-        if ( !cssDir.exists())
-            cssDir = new File(parent2,"/static/"+suffix);
+        File dir = new File(parent1,"/static/"+suffix);
+        if ( !dir.exists())
+            dir = new File(parent2,"/static/"+suffix);
+        return dir;
+    }
+    /**
+     * Add all the css or js files in the given directory to the header
+     * @param h the header to add them to
+     * @param suffix the file type suffix (minus the dot)
+     * @param exceptions files not to add
+     */
+    void addFilesInDir( Head h, String suffix, HashSet<String> exceptions )
+    {
+        File cssDir = staticDir( suffix );
         if ( cssDir.exists() )
         {
             File[] css = cssDir.listFiles();
@@ -78,23 +120,54 @@ public class TiltEditor extends TiltGetHandler
             System.out.println("No "+suffix+" dir found");
     }
     /**
-     * Build the document header
+     * Build the document header and split the page around its body
+     * @param now the time now
+     * @return the new page
      */
-    final void composeHeader()
+    final Page composeHeader( long now )
     {
+        // read the times first so a change during the build is seen later
+        long cssModified = staticDir("css").lastModified();
+        long jsModified = staticDir("js").lastModified();
+        HTML doc = new HTML();
         Head h = doc.getHead();
         h.addEncoding("text/html; charset=UTF-8");
         h.addJQuery( "1.11.1", "/tilt/static/js", true );
-        addFilesInDir( "css", cssExceptions );
-        addFilesInDir( "js", jsExceptions );
+        addFilesInDir( h, "css", cssExceptions );
+        addFilesInDir( h, "js", jsExceptions );
+        doc.addText( MARKER );
+        String html = doc.toString();
+        int pos = html.indexOf( MARKER );
+        return new Page( html.substring(0,pos), 
+            html.substring(pos+MARKER.length()), cssModified, jsModified, 
+            now );
+    }
+    /**
+     * Get the current page, rebuilding it if the static files have changed
+     * @return the page
+     */
+    Page getPage()
+    {
+        Page p = page;
+        long now = System.currentTimeMillis();
+        if ( now-p.checked >= RECHECK )
+        {
+            if ( staticDir("css").lastModified() != p.cssModified
+                || staticDir("js").lastModified() != p.jsModified )
+                p = composeHeader( now );
+            else
+                p = new Page( p.prefix, p.suffix, p.cssModified, 
+                    p.jsModified, now );
+            page = p;
+        }
+        return p;
     }
     /**
      * Tilt editor is a basic HTML document with an embedded script
     */
     public TiltEditor()
     {
-        doc = new HTML();
-        composeHeader();
+        page = composeHeader( System.currentTimeMillis() );
     }
     /**
      * The request should have docid and pageid parameters set
@@ -119,9 +192,12 @@ public class TiltEditor extends TiltGetHandler
             Element div = new Element("div");
             div.addAttribute("id","content");
             div.addElement( script );
-            doc.addElement( div );
+            Page p = getPage();
             response.setContentType("text/html;charset=UTF-8");
-            response.getWriter().write( doc.toString() );
+            Writer w = response.getWriter();
+            w.write( p.prefix );
+            w.write( div.toString() );
+            w.write( p.suffix );
         }
         catch ( Exception e )
         {
@@ -32,6 +32,7 @@ import org.json.simple.JSONArray;
 import org.json.simple.JSONValue;
 import tilt.Utils;
 import tilt.image.PictureRegistry;
+import tilt.metrics.Metrics;
 
 /**
  * Get the GeoJson for an pageid, plus pageid
@@ -90,8 +91,10 @@ public class TiltGeoJsonHandler extends TiltGetHandler
             {
                 // first see if it is in the database
                 Connection conn = Connector.getConnection();
+                Metrics.Timer t = Metrics.start( Metrics.DB, "get" );
                 String doc = conn.getFromDb(Database.TILT, 
                     Utils.ensureSlash(docid+"/"+pageid));
+                t.stop();
                 if ( doc != null )
                 {
                     geoJson = (JSONObject)JSONValue.parse(doc);
@@ -102,12 +105,22 @@ public class TiltGeoJsonHandler extends TiltGetHandler
                 {
                     // create url to retrieve Picture object
                     String url =  Utils.getUrl( serverName, docid, pageid );
-                    Picture p = PictureRegistry.get(url);
+                    Picture p = PictureRegistry.acquire(url);
                     if ( p != null )
                     {
-                        String geoJsonStr = p.getGeoJson();
+                        String geoJsonStr;
+                        try
+                        {
+                            geoJsonStr = p.getGeoJson();
+                        }
+                        finally
+                        {
+                            PictureRegistry.release( p );
+                        }
+                        t = Metrics.start( Metrics.DB, "put" );
                         conn.putToDb(tilt.constants.Database.TILT,
                             Utils.ensureSlash(docid+"/"+pageid),geoJsonStr);
+                        t.stop();
                         geoJson = (JSONObject)JSONValue.parse( geoJsonStr );
                     }
                     else    // send an empty geojson text
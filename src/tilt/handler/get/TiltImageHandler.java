@@ -20,9 +20,7 @@ package tilt.handler.get;
 
 import calliope.core.database.Connector;
 import calliope.core.database.Connection;
-import java.io.ByteArrayInputStream;
 import java.net.InetAddress;
-import java.net.URLConnection;
 import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -31,10 +29,12 @@ import tilt.constants.Params;
 import tilt.constants.Database;
 import tilt.exception.TiltException;
 import tilt.exception.ImageException;
+import tilt.image.ImageData;
 import tilt.image.Picture;
 import tilt.image.PictureRegistry;
 import tilt.handler.TiltGetHandler;
 import tilt.Utils;
+import tilt.PageClient;
 import tilt.handler.post.Options;
 import tilt.handler.post.TextIndex;
 import org.json.simple.JSONObject;
@@ -62,69 +62,33 @@ public class TiltImageHandler extends TiltGetHandler
             {
                 if ( url == null || url.length()==0 )
                     url = Utils.getUrl(request.getServerName(),docid,pageid);
-                Picture p = PictureRegistry.get(url);
+                Picture p = PictureRegistry.acquire(url);
                 if ( p == null )
                 {
                     TextIndex text=null;
+                    // overlap the round-trips for everything the page needs
+                    PageClient.prefetch( request.getServerName(), docid, 
+                        pageid );
                     PictureRegistry.prune();
                     Double[][] coords = getCropRect( request.getServerName(),
                         docid, pageid );
                     Options opts = Options.get(request.getServerName(),docid);
                     String imageUrl = Utils.getUrl(request.getServerName(),
                         docid,pageid);
-                    String url = composeTextUrl(request,docid,pageid);
-                    String textParam = Utils.getFromUrl(url);
+                    String textParam = PageClient.getText( 
+                        request.getServerName(), docid, pageid );
                     if ( textParam != null )
                         text = new TextIndex( textParam, "en_GB" );
                     InetAddress poster = getIPAddress(request);
                     p = new Picture( opts, imageUrl, text, coords, poster );
                 }
-                byte[] pic = null;
-                switch (imageType) 
+                try
                 {
-                    case load:
-                        p.load();
-                    case original: 
-                        pic = p.getOrigData();
-                        break;
-                    case preflight: 
-                        pic = p.getPreflightData();
-                        break;
-                    case greyscale:
-                        pic = p.getGreyscaleData();
-                        break;
-                    case twotone:
-                        pic = p.getTwoToneData();
-                        break;
-                    case cleaned:
-                        pic = p.getCleanedData();
-                        break;
-                    case reconstructed:
-                        pic = p.getReconstructedData();
-                        break;
-                    case baselines:
-                        pic = p.getBaselinesData();
-                        break;
-                    case words:
-                        pic = p.getWordsData();
-                        break;
-                    case link:
-                        pic = p.getGreyscaleData();
-                        break;
-                }  
-                if ( pic != null )
-                {
-                    ByteArrayInputStream bis = new ByteArrayInputStream(pic);
-                    String mimeType = URLConnection.guessContentTypeFromStream(bis);
-                    response.setContentType(mimeType);
-                    ServletOutputStream sos = response.getOutputStream();
-                    sos.write( pic );
-                    sos.close();
+                    send( request, response, p );
                 }
-                else
+                finally
                 {
-                    response.getOutputStream().println("<p>image "+
-                        docid+" not found</p>");
+                    PictureRegistry.release( p );
                 }
             }
             else
@@ -136,4 +100,90 @@ public class TiltImageHandler extends TiltGetHandler
             throw new ImageException(e);
         }
     }
+    /**
+     * Which image of the picture is wanted?
+     * @return the stage to send, or original for the loaded image
+     */
+    private ImageType getWanted()
+    {
+        switch (imageType) 
+        {
+            case load:
+                return ImageType.original;
+            case link:
+                return ImageType.greyscale;
+            default:
+                return imageType;
+        }
+    }
+    /**
+     * Does the client already have this version of the image?
+     * @param request the http request
+     * @param etag the tag of the version that would be sent
+     * @return true if a 304 should be sent
+     */
+    private boolean notModified( HttpServletRequest request, String etag )
+    {
+        String inm = request.getHeader("If-None-Match");
+        return inm != null && inm.contains(etag);
+    }
+    /**
+     * Send the requested image of a picture. The ETag of the original and
+     * of the keyed stages is known without making the image, so a client
+     * that has it already gets its 304 straight away.
+     * @param request the http request
+     * @param response the http response
+     * @param p the picture, pinned by the caller
+     * @throws Exception 
+     */
+    private void send( HttpServletRequest request, 
+        HttpServletResponse response, Picture p ) throws Exception
+    {
+        if ( imageType == ImageType.load )
+            p.load();
+        ImageType wanted = getWanted();
+        String tag = p.getTag( wanted );
+        if ( tag != null )
+        {
+            // the tag changes whenever the image would
+            String etag = "\""+tag+"\"";
+            response.setHeader("ETag", etag );
+            response.setHeader("Cache-Control", "no-cache");
+            if ( notModified(request,etag) )
+            {
+                response.setStatus( HttpServletResponse.SC_NOT_MODIFIED );
+                return;
+            }
+        }
+        try ( ImageData pic = p.getImageData(wanted) )
+        {
+            if ( pic != null )
+            {
+                if ( tag == null )
+                {
+                    // only a hash of the image itself will do
+                    String etag = "\""+pic.getHash()+"\"";
+                    response.setHeader("ETag", etag );
+                    response.setHeader("Cache-Control", "no-cache");
+                    if ( notModified(request,etag) )
+                    {
+                        response.setStatus( 
+                            HttpServletResponse.SC_NOT_MODIFIED );
+                        return;
+                    }
+                }
+                response.setContentType( pic.getContentType() );
+                response.setHeader("Content-Length", 
+                    Long.toString(pic.getLength()) );
+                ServletOutputStream sos = response.getOutputStream();
+                pic.writeTo( sos );
+                sos.close();
+            }
+            else
+            {
+                response.getOutputStream().println("<p>image "+
+                    docid+" not found</p>");
+            }
+        }
+    }
 }
@@ -0,0 +1,73 @@
+/*
+ * This file is part of TILT.
+ *
+ *  TILT is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  TILT is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with TILT.  If not, see <http://www.gnu.org/licenses/>.
+ *  (c) copyright Desmond Schmidt 2015
+ */
+
+package tilt.handler.get;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.continuation.Continuation;
+import org.eclipse.jetty.continuation.ContinuationSupport;
+import tilt.constants.Params;
+import tilt.exception.TiltException;
+import tilt.handler.TiltGetHandler;
+import tilt.handler.post.RecogniseJob;
+import tilt.handler.post.RecogniseQueue;
+
+/**
+ * Get the status of a recognition job. If a version and wait time are
+ * given the reply is held back until the job moves past that version,
+ * it finishes or the time runs out (long polling). The request is 
+ * suspended meanwhile, so it doesn't hold a server thread, and the job 
+ * resumes it when its status changes.
+ * @author desmond
+ */
+public class TiltJobHandler extends TiltGetHandler
+{
+    /** longest time a poll may be held, in milliseconds */
+    static long MAX_WAIT = 20000;
+    public void handle(HttpServletRequest request,
+        HttpServletResponse response, String urn) throws TiltException
+    {
+        try
+        {
+            String id = request.getParameter(Params.JOBID);
+            if ( id == null )
+                throw new Exception("Missing job id");
+            RecogniseJob job = RecogniseQueue.get( id );
+            if ( job == null )
+                throw new Exception("Unknown job "+id);
+            String version = request.getParameter(Params.VERSION);
+            String wait = request.getParameter(Params.WAIT);
+            Continuation c = ContinuationSupport.getContinuation( request );
+            if ( version != null && wait != null && c.isInitial() )
+            {
+                long millis = Math.min(Long.parseLong(wait),MAX_WAIT);
+                if ( job.await(Integer.parseInt(version),c,millis) )
+                    return;
+            }
+            response.setContentType("application/json");
+            response.setCharacterEncoding("UTF-8");
+            response.setHeader("Cache-Control","no-cache");
+            response.getWriter().print( job.getStatus().toJSONString() );
+        }
+        catch ( Exception e )
+        {
+            throw new TiltException(e);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * This file is part of TILT.
+ *
+ *  TILT is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  TILT is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with TILT.  If not, see <http://www.gnu.org/licenses/>.
+ *  (c) copyright Desmond Schmidt 2015
+ */
+
+package tilt.handler.get;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.json.simple.JSONObject;
+import tilt.constants.Params;
+import tilt.exception.TiltException;
+import tilt.handler.TiltGetHandler;
+import tilt.image.PictureRegistry;
+import tilt.metrics.Metrics;
+
+/**
+ * Report the timings, allocation and counts gathered by Metrics, along
+ * with the state of the picture registry. The reply is JSON unless the
+ * format parameter is "prometheus" or the client only accepts plain text,
+ * when it is in the Prometheus text exposition format.
+ * @author desmond
+ */
+public class TiltMetricsHandler extends TiltGetHandler
+{
+    public void handle(HttpServletRequest request,
+        HttpServletResponse response, String urn) throws TiltException
+    {
+        try
+        {
+            String format = request.getParameter(Params.FORMAT);
+            String accept = request.getHeader("Accept");
+            boolean prometheus = "prometheus".equals(format) 
+                || (format == null && accept != null 
+                && accept.startsWith("text/plain"));
+            response.setCharacterEncoding("UTF-8");
+            response.setHeader("Cache-Control","no-cache");
+            JSONObject registry = PictureRegistry.getStats();
+            if ( prometheus )
+            {
+                StringBuilder sb = new StringBuilder();
+                Metrics.toPrometheus( sb );
+                for ( Object key : registry.keySet() )
+                {
+                    Object value = registry.get( key );
+                    if ( value instanceof Number )
+                        sb.append("tilt_registry_").append(key).append(' ')
+                            .append(value).append('\n');
+                }
+                response.setContentType("text/plain; version=0.0.4");
+                response.getWriter().print( sb.toString() );
+            }
+            else
+            {
+                JSONObject jObj = Metrics.toJSON();
+                jObj.put( "registryState", registry );
+                response.setContentType("application/json");
+                response.getWriter().print( jObj.toJSONString() );
+            }
+        }
+        catch ( Exception e )
+        {
+            throw new TiltException(e);
+        }
+    }
+}
@@ -17,7 +17,7 @@
  */     
 
 package tilt.handler.post;
-import tilt.Utils;
+import tilt.PageClient;
 import org.json.simple.*;
 import java.util.HashMap;
 import java.util.Set;
@@ -120,8 +120,7 @@ public class Options extends HashMap<Options.Keys,Object>
     {
         try
         {
-            String url = "http://"+serverName+"/tilt/options?docid="+docid;
-            String jstr = Utils.getFromUrl( url );
+            String jstr = PageClient.getOptions( serverName, docid );
             if ( jstr != null )
             {
                 JSONObject jobj = (JSONObject)JSONValue.parse( jstr );
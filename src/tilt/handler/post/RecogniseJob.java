@@ -0,0 +1,270 @@
+/*
+ * This file is part of TILT.
+ *
+ *  TILT is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  TILT is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with TILT.  If not, see <http://www.gnu.org/licenses/>.
+ *  (c) copyright Desmond Schmidt 2015
+ */
+
+package tilt.handler.post;
+
+import calliope.core.constants.Database;
+import calliope.core.database.Connection;
+import calliope.core.database.Connector;
+import java.util.ArrayList;
+import java.util.UUID;
+import org.eclipse.jetty.continuation.Continuation;
+import org.eclipse.jetty.continuation.ContinuationListener;
+import org.json.simple.JSONObject;
+import tilt.Utils;
+import tilt.constants.ImageType;
+import tilt.exception.ImageException;
+import tilt.image.Picture;
+import tilt.image.PictureRegistry;
+import tilt.metrics.Metrics;
+
+/**
+ * A request to recognise a page, run by a RecogniseQueue worker. Its
+ * progress can be polled, or a suspended poll can be parked on it and
+ * resumed when it changes.
+ * @author desmond
+ */
+public class RecogniseJob implements Runnable
+{
+    /** the states a job can be in */
+    public enum State
+    {
+        queued,
+        running,
+        done,
+        failed;
+    }
+    String id;
+    String url;
+    String docid;
+    String pageid;
+    Picture picture;
+    /** true if the picture still has to be loaded and preflighted */
+    boolean isNew;
+    State state;
+    /** the stage now being worked on */
+    ImageType stage;
+    String error;
+    /** incremented whenever the status changes */
+    int version;
+    long finished;
+    /** suspended polls to resume when the status changes */
+    ArrayList<Continuation> waiting = new ArrayList<>();
+    /**
+     * Create a job
+     * @param url the url of the picture, also its registry key
+     * @param docid the document id
+     * @param pageid the page id
+     * @param picture the picture to recognise, pinned in the registry for
+     * the job to release when it finishes
+     * @param isNew true if it has not yet been loaded
+     */
+    RecogniseJob( String url, String docid, String pageid, Picture picture,
+        boolean isNew )
+    {
+        this.id = UUID.randomUUID().toString();
+        this.url = url;
+        this.docid = docid;
+        this.pageid = pageid;
+        this.picture = picture;
+        this.isNew = isNew;
+        this.state = State.queued;
+        this.stage = (isNew)?ImageType.load:ImageType.preflight;
+    }
+    /**
+     * Get the job's id
+     * @return a unique, unguessable id
+     */
+    public String getId()
+    {
+        return id;
+    }
+    /**
+     * Has the job stopped, successfully or not?
+     * @return true if it has
+     */
+    public synchronized boolean isFinished()
+    {
+        return state == State.done || state == State.failed;
+    }
+    /**
+     * Record a change of state and resume any waiting polls
+     * @param state the new state
+     * @param stage the stage now being worked on
+     */
+    private synchronized void setStatus( State state, ImageType stage )
+    {
+        this.state = state;
+        this.stage = stage;
+        if ( isFinished() )
+            finished = System.currentTimeMillis();
+        version++;
+        for ( Continuation c : waiting )
+            c.resume();
+        waiting.clear();
+    }
+    /**
+     * Park a suspended poll until the status changes from a version the 
+     * caller has seen. Nothing is parked if it has already changed.
+     * @param since the last version seen by the caller
+     * @param c the poll's continuation, not yet suspended
+     * @param millis the longest time to wait
+     * @return true if the poll was suspended, false if it should reply now
+     */
+    public synchronized boolean await( int since, final Continuation c, 
+        long millis )
+    {
+        if ( version != since || isFinished() || millis <= 0 )
+            return false;
+        c.setTimeout( millis );
+        c.addContinuationListener( new ContinuationListener() {
+            public void onComplete( Continuation cont )
+            {
+            }
+            public void onTimeout( Continuation cont )
+            {
+                synchronized ( RecogniseJob.this )
+                {
+                    waiting.remove( cont );
+                }
+            }
+        });
+        c.suspend();
+        waiting.add( c );
+        return true;
+    }
+    /**
+     * Describe the job's progress
+     * @return a JSON object with its id, state, percentage and message
+     */
+    public synchronized JSONObject getStatus()
+    {
+        JSONObject status = new JSONObject();
+        status.put( "id", id );
+        status.put( "state", state.toString() );
+        status.put( "version", version );
+        int progress;
+        String message;
+        if ( state == State.done )
+        {
+            progress = 100;
+            message = ImageType.link.getMessage();
+        }
+        else
+        {
+            float nValues = (ImageType.values().length-1);
+            progress = Math.round(stage.ordinal()*100.0f/nValues);
+            message = stage.getMessage();
+        }
+        status.put( "progress", progress );
+        status.put( "message", message );
+        if ( error != null )
+            status.put( "error", error );
+        return status;
+    }
+    /**
+     * Run through the recognition phases, recording progress
+     * @param src the start imagetype
+     * @param dest the end-image type
+     * @throws ImageException
+     */
+    void doRecogniseProgress( ImageType src, ImageType dest )
+        throws ImageException
+    {
+        ImageType picType = src;
+        Picture p = picture;
+        do
+        {
+            setStatus( State.running, picType );
+            switch ( picType )
+            {
+                case load:
+                    p.load();
+                    picType = ImageType.preflight;
+                    break;
+                case preflight:
+                    p.convertToPreflight();
+                    picType = ImageType.greyscale;
+                    break;
+                case greyscale:
+                    p.convertToTwoTone();
+                    picType = ImageType.twotone;
+                    break;
+                case twotone:
+                    p.convertToCleaned();
+                    picType = ImageType.cleaned;
+                    break;
+                case cleaned:
+                    p.convertToReconstructed();
+                    picType = ImageType.baselines;
+                    break;
+                case reconstructed:
+                    p.convertToBaselines();
+                    picType = ImageType.baselines;
+                    break;
+                case baselines:
+                    p.convertToWords();
+                    picType = ImageType.words;
+                    break;
+                case words:
+                    p.convertToLinks();
+                    picType = ImageType.link;
+                    break;
+            }
+        } while ( picType != dest );
+    }
+    /**
+     * Recognise the page and save its GeoJSON to the database
+     */
+    public void run()
+    {
+        try
+        {
+            if ( isNew )
+            {
+                doRecogniseProgress( ImageType.load, ImageType.preflight );
+                PictureRegistry.update( url, picture );
+                // it will be identified later by its url during GET
+            }
+            doRecogniseProgress( ImageType.preflight, ImageType.link );
+            Connection conn = Connector.getConnection();
+            String geoJson = picture.getGeoJson();
+            // caller should now GET the geojson result
+            Metrics.Timer t = Metrics.start( Metrics.DB, "put" );
+            conn.putToDb( Database.TILT,
+                Utils.ensureSlash(docid)+pageid, geoJson );
+            t.stop();
+            setStatus( State.done, ImageType.link );
+        }
+        catch ( Exception e )
+        {
+            e.printStackTrace( System.out );
+            synchronized ( this )
+            {
+                error = e.getMessage();
+                if ( error == null )
+                    error = e.getClass().getSimpleName();
+                setStatus( State.failed, stage );
+            }
+        }
+        finally
+        {
+            PictureRegistry.release( picture );
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * This file is part of TILT.
+ *
+ *  TILT is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  TILT is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with TILT.  If not, see <http://www.gnu.org/licenses/>.
+ *  (c) copyright Desmond Schmidt 2015
+ */
+
+package tilt.handler.post;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import tilt.exception.DoSException;
+
+/**
+ * Run recognition jobs on a fixed pool of worker threads, one per core,
+ * so that HTTP request threads are never tied up by recognition. At most
+ * MAX_QUEUED jobs may wait for a worker; beyond that new jobs are refused
+ * until the backlog clears. Finished jobs are forgotten after FORGET_TIME.
+ * @author desmond
+ */
+public class RecogniseQueue
+{
+    static int WORKERS = Integer.getInteger("tilt.jobs.workers",
+        Runtime.getRuntime().availableProcessors());
+    /** maximum jobs waiting for a worker (tilt.jobs.maxQueued) */
+    static int MAX_QUEUED = Integer.getInteger("tilt.jobs.maxQueued",
+        4*WORKERS);
+    static long FORGET_TIME = 300000;
+    static ThreadPoolExecutor workers;
+    /** all jobs not yet forgotten, by id */
+    static HashMap<String,RecogniseJob> jobs;
+    /** unfinished jobs by picture url */
+    static HashMap<String,RecogniseJob> active;
+    static
+    {
+        jobs = new HashMap<>();
+        active = new HashMap<>();
+        workers = new ThreadPoolExecutor( WORKERS, WORKERS, 0L,
+            TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<Runnable>(MAX_QUEUED),
+            new ThreadFactory() {
+                int n = 0;
+                public synchronized Thread newThread( Runnable r )
+                {
+                    Thread t = new Thread( r, "tilt-recognise-"+(++n) );
+                    t.setDaemon( true );
+                    // leave some slack for request threads
+                    t.setPriority( Thread.NORM_PRIORITY-1 );
+                    return t;
+                }
+            });
+    }
+    /**
+     * Drop finished jobs nobody has asked about for a while
+     */
+    private static void prune()
+    {
+        long now = System.currentTimeMillis();
+        Iterator<RecogniseJob> iter = jobs.values().iterator();
+        while ( iter.hasNext() )
+        {
+            RecogniseJob job = iter.next();
+            if ( job.isFinished() )
+            {
+                if ( active.get(job.url) == job )
+                    active.remove( job.url );
+                if ( now-job.finished > FORGET_TIME )
+                    iter.remove();
+            }
+        }
+    }
+    /**
+     * Queue a job unless the same picture is already being recognised
+     * @param job the job to run
+     * @return the job queued or the one already running for that picture
+     * @throws DoSException if too many jobs are already waiting
+     */
+    public static synchronized RecogniseJob submit( RecogniseJob job )
+        throws DoSException
+    {
+        prune();
+        RecogniseJob current = active.get( job.url );
+        if ( current != null && !current.isFinished() )
+            return current;
+        // the picture was dropped from the registry while being recognised
+        if ( job.picture == null )
+            throw new DoSException(
+                "The page is still being recognised: please try later");
+        try
+        {
+            workers.execute( job );
+        }
+        catch ( RejectedExecutionException e )
+        {
+            throw new DoSException(
+                "Too many pages are being recognised: please try later");
+        }
+        jobs.put( job.id, job );
+        active.put( job.url, job );
+        return job;
+    }
+    /**
+     * Look up a job
+     * @param id the job's id
+     * @return the job or null if there is none by that id
+     */
+    public static synchronized RecogniseJob get( String id )
+    {
+        prune();
+        return jobs.get( id );
+    }
+    /**
+     * Is a job for this picture still queued or running?
+     * @param url the picture's url
+     * @return true if it is
+     */
+    public static synchronized boolean isActive( String url )
+    {
+        RecogniseJob job = active.get( url );
+        return job != null && !job.isFinished();
+    }
+}
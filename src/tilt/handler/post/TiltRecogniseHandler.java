@@ -28,14 +28,9 @@ import tilt.exception.TiltException;
 import tilt.image.Picture;
 import tilt.image.PictureRegistry;
 import tilt.Utils;
-import tilt.constants.ImageType;
 import tilt.handler.TiltPostHandler;
-import tilt.exception.ImageException;
+import tilt.exception.DoSException;
 import java.net.InetAddress;
-import calliope.core.database.*;
-import calliope.core.constants.Database;
-import java.io.PrintWriter;
-import java.io.IOException;
 import java.util.List;
 import org.apache.commons.fileupload.servlet.ServletFileUpload;
 import org.apache.commons.fileupload.FileItem;
@@ -43,7 +38,9 @@ import org.apache.commons.fileupload.disk.DiskFileItemFactory;
 import org.apache.commons.fileupload.FileUploadException;
 
 /**
- * Handle an Ajax request for geoJson data about a picture
+ * Handle an Ajax request for geoJson data about a picture. Recognition is
+ * queued as a job and its status returned at once; the caller polls
+ * /tilt/job for progress and then GETs the geojson.
  * @author desmond
  */
 public class TiltRecogniseHandler extends TiltPostHandler
@@ -54,7 +51,6 @@ public class TiltRecogniseHandler extends TiltPostHandler
     String pageid;
     /** the GeoJson we extract from the picture */
     String geoJson;
-    ImageType picType;
     TextIndex text;
     void parseRequest( HttpServletRequest request ) throws FileUploadException, 
         Exception
@@ -90,74 +86,6 @@ public class TiltRecogniseHandler extends TiltPostHandler
             }
         }       
     }
-    /**
-     * Run through the recognition phases and send back progress messages
-     * @param p the picture to recognise
-     * @param response the http response to write progress to
-     * @param src the start imagetype
-     * @param dest the end-image type
-     * @throws ImageException
-     * @throws IOException 
-     */
-    void doRecogniseProgress( Picture p, HttpServletResponse response, 
-        ImageType src, ImageType dest ) 
-        throws ImageException, IOException
-    {
-        picType = src;
-        response.setContentType("text/plain");
-        response.setCharacterEncoding("UTF-8");
-        float nValues = (ImageType.values().length-1);
-        PrintWriter pw = response.getWriter();
-        do
-        {
-            float value = (float) picType.ordinal();
-            float progress = value*100.0f/nValues;
-            pw.print( Math.round(progress) );
-            pw.print( " " );
-            pw.println( picType.getMessage() );
-            pw.flush();
-            switch ( picType )
-            {
-                case load:
-                    p.load();
-                    picType = ImageType.preflight;
-                    break;
-                case preflight:
-                    p.convertToPreflight();
-                    picType = ImageType.greyscale;
-                    break;
-                case greyscale:
-                    p.convertToTwoTone();
-                    picType = ImageType.twotone;
-                    break;
-                case twotone:
-                    p.convertToCleaned();
-                    picType = ImageType.cleaned;
-                    break;
-                case cleaned:
-                    p.convertToReconstructed();
-                    picType = ImageType.baselines;
-                    break;
-                case reconstructed:
-                    p.convertToBaselines();
-                    picType = ImageType.baselines;
-                    break;
-                case baselines:
-                    p.convertToWords();
-                    picType = ImageType.words;
-                    break;
-                case words:
-                    p.convertToLinks();
-                    picType = ImageType.link;
-                    break;
-            }
-        } while ( picType != dest );
-        if ( picType == ImageType.link )
-        {
-            pw.print( "100 " );
-            pw.println( picType.getMessage() );
-        }
-    }
     /**
      * Handle a request for geoJEON text-t-image links from editor
      * @param request the http request
@@ -175,8 +103,9 @@ public class TiltRecogniseHandler extends TiltPostHandler
                     && text != null )
             {
                 String url = Utils.getUrl(request.getServerName(),docid,pageid);
-                Picture p = PictureRegistry.get(url);
-                if ( p == null )
+                Picture p = PictureRegistry.acquire(url);
+                boolean isNew = false;
+                if ( p == null && !RecogniseQueue.isActive(url) )
                 {
                     Object obj = JSONValue.parse(geoJson);
                     if ( obj instanceof JSONObject )
@@ -190,10 +119,7 @@ public class TiltRecogniseHandler extends TiltPostHandler
                             InetAddress poster = getIPAddress(request);
                             JSONArray cc = (JSONArray)geometry.get("coordinates");
                             p = new Picture( opts, url, text, coordsToArray(cc), poster);
-                            doRecogniseProgress( p, response,
-                                ImageType.load,ImageType.preflight );
-                            PictureRegistry.update( url, p );
-                            // it will be identified later by its url during GET
+                            isNew = true;
                         }
                         else
                             throw new Exception("Invalid geoJSON");
@@ -201,13 +127,31 @@ public class TiltRecogniseHandler extends TiltPostHandler
                     else
                         throw new Exception("Invalid geoJSON");
                 }
-                doRecogniseProgress( p, response,ImageType.preflight, 
-                    ImageType.link );
-                Connection conn = Connector.getConnection();
-                geoJson = p.getGeoJson();
-                // caller should now GET the geojson result
-                conn.putToDb( Database.TILT, 
-                    Utils.ensureSlash(docid)+pageid, geoJson );
+                response.setContentType("application/json");
+                response.setCharacterEncoding("UTF-8");
+                try
+                {
+                    RecogniseJob mine = new RecogniseJob(url,docid,pageid,p,
+                        isNew);
+                    RecogniseJob job = RecogniseQueue.submit( mine );
+                    // the job releases p unless it was already running
+                    if ( job != mine )
+                        PictureRegistry.release( p );
+                    // caller should now poll the job, then GET the geojson
+                    response.setStatus( HttpServletResponse.SC_ACCEPTED );
+                    response.getWriter().print( 
+                        job.getStatus().toJSONString() );
+                }
+                catch ( DoSException e )
+                {
+                    PictureRegistry.release( p );
+                    response.setStatus( 
+                        HttpServletResponse.SC_SERVICE_UNAVAILABLE );
+                    response.setHeader( "Retry-After", "10" );
+                    JSONObject err = new JSONObject();
+                    err.put( "error", e.getMessage() );
+                    response.getWriter().print( err.toJSONString() );
+                }
             }
             else
                 throw new Exception("Need a docid param: an image url!");
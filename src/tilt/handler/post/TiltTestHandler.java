@@ -21,6 +21,7 @@ import java.util.List;
 import tilt.exception.*;
 import tilt.image.*;
 import tilt.Utils;
+import tilt.PageClient;
 import tilt.constants.Params;
 import tilt.constants.ImageType;
 import tilt.handler.TiltPostHandler;
@@ -176,8 +177,8 @@ public class TiltTestHandler extends TiltPostHandler
             }
             if ( docid != null && pageid != null )
             {
-                String url = composeTextUrl(request,docid,pageid);
-                String textParam = Utils.getFromUrl(url);
+                String textParam = PageClient.getText( 
+                    request.getServerName(), docid, pageid );
                 Picture p;
                 if ( textParam != null )
                 {
@@ -192,6 +193,8 @@ public class TiltTestHandler extends TiltPostHandler
                     String imageUrl = Utils.getUrl(request.getServerName(),
                         docid,pageid);
                     p = new Picture( opts, imageUrl, text, coords, poster);
+                    // only registered here, for later GETs to use
+                    PictureRegistry.release( p );
                 }
                 String resp = composeResponse( request, docid, pageid, picType );
                 response.setContentType("text/plain;charset=UTF-8");
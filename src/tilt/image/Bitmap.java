@@ -0,0 +1,155 @@
+/*
+ * This file is part of TILT.
+ *
+ *  TILT is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  TILT is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with TILT.  If not, see <http://www.gnu.org/licenses/>.
+ *  (c) copyright Desmond Schmidt 2015
+ */
+
+package tilt.image;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+
+/**
+ * A one-bit-per-pixel image, used for masks and for the sets of pixels
+ * already visited by a fill. Each row starts on a fresh long, so runs
+ * of a row can be set, cleared or searched 64 pixels at a time. It takes
+ * an eighth of the memory of a greyscale copy of the image. Set bits are
+ * "on"; a new bitmap is all off.
+ * @author desmond
+ */
+public class Bitmap
+{
+    public final int width;
+    public final int height;
+    /** number of longs in each row */
+    final int wordsPerRow;
+    /** the bits, row by row, pixel x of a row in bit x%64 of word x/64 */
+    final long[] words;
+    /**
+     * Create an empty bitmap
+     * @param width its width in pixels
+     * @param height its height in pixels
+     */
+    public Bitmap( int width, int height )
+    {
+        this.width = width;
+        this.height = height;
+        this.wordsPerRow = (width+63)>>>6;
+        this.words = new long[wordsPerRow*height];
+    }
+    /**
+     * Is a pixel on?
+     * @param x the x-coordinate
+     * @param y the y-coordinate
+     * @return true if it is set
+     */
+    public final boolean get( int x, int y )
+    {
+        return (words[y*wordsPerRow+(x>>>6)] & (1L<<x)) != 0;
+    }
+    /**
+     * Turn a pixel on
+     * @param x the x-coordinate
+     * @param y the y-coordinate
+     */
+    public final void set( int x, int y )
+    {
+        words[y*wordsPerRow+(x>>>6)] |= 1L<<x;
+    }
+    /**
+     * Turn a pixel off
+     * @param x the x-coordinate
+     * @param y the y-coordinate
+     */
+    public final void clear( int x, int y )
+    {
+        words[y*wordsPerRow+(x>>>6)] &= ~(1L<<x);
+    }
+    /**
+     * Set or clear a run of pixels on one row
+     * @param y the row
+     * @param from the first x-value of the run
+     * @param to one past its last x-value
+     * @param on true to set the pixels, false to clear them
+     */
+    private void fillRun( int y, int from, int to, boolean on )
+    {
+        if ( from >= to )
+            return;
+        int first = y*wordsPerRow+(from>>>6);
+        int last = y*wordsPerRow+((to-1)>>>6);
+        long firstMask = -1L<<from;
+        long lastMask = -1L>>>-to;
+        if ( first == last )
+        {
+            long mask = firstMask & lastMask;
+            words[first] = on?(words[first]|mask):(words[first]&~mask);
+        }
+        else
+        {
+            words[first] = on?(words[first]|firstMask)
+                :(words[first]&~firstMask);
+            Arrays.fill( words, first+1, last, on?-1L:0L );
+            words[last] = on?(words[last]|lastMask):(words[last]&~lastMask);
+        }
+    }
+    /**
+     * Turn on a run of pixels on one row
+     * @param y the row
+     * @param from the first x-value of the run
+     * @param to one past its last x-value
+     */
+    public void set( int y, int from, int to )
+    {
+        fillRun( y, from, to, true );
+    }
+    /**
+     * Turn off all the pixels in a rectangle
+     * @param r the rectangle, clipped to the bitmap
+     */
+    public void clear( Rectangle r )
+    {
+        int left = Math.max( r.x, 0 );
+        int right = Math.min( r.x+r.width, width );
+        int bottom = Math.min( r.y+r.height, height );
+        for ( int y=Math.max(r.y,0);y<bottom;y++ )
+            fillRun( y, left, right, false );
+    }
+    /**
+     * Find the next pixel that is on in a row
+     * @param y the row
+     * @param from the x-value to start looking at
+     * @return the x-value of the first set pixel at or after from, or -1
+     */
+    public int nextSetBit( int y, int from )
+    {
+        if ( from >= width )
+            return -1;
+        int rowStart = y*wordsPerRow;
+        int i = from>>>6;
+        long word = words[rowStart+i] & (-1L<<from);
+        while ( true )
+        {
+            if ( word != 0 )
+            {
+                int x = (i<<6)+Long.numberOfTrailingZeros(word);
+                return (x<width)?x:-1;
+            }
+            if ( ++i == wordsPerRow )
+                return -1;
+            word = words[rowStart+i];
+        }
+    }
+}
@@ -22,14 +22,13 @@ import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.awt.image.WritableRaster;
 import java.net.InetAddress;
-import javax.imageio.ImageIO;
-import java.util.Stack;
-import java.util.ArrayList;
+import java.util.Arrays;
 import tilt.handler.post.TextIndex;
-import tilt.image.convexhull.*;
+import tilt.image.convexhull.MonotoneChain;
 import org.json.simple.*;
 import tilt.image.geometry.Polygon;
 import tilt.handler.post.Options;
+import tilt.constants.ImageType;
 
 
 /**
@@ -43,33 +42,38 @@ public class Blob
     /** number of white pixels in area */
     int numWhitePixels;
     /** accumulate black pixels here */
-    WritableRaster dirt; 
+    Bitmap dirt; 
     /** unless they are already in here */
-    WritableRaster parent;
+    Bitmap parent;
     /** localised grey average */
     WritableRaster blackLevelImage;
     /** limits of pixel area */
     int minX,maxX,minY,maxY;
     /** First black pixel*/
     Point firstBlackPixel;
-    Stack<Point> stack;
-    ArrayList<Point> hull;
+    /** leftmost and rightmost white pixels touching the blob on each row */
+    int[] hullLeft;
+    int[] hullRight;
+    /** the row of hullLeft[0] and the number of rows */
+    int hullTop;
+    int hullRows;
+    /** number of times a white neighbour was touched */
+    int hullCount;
     Options opts;
-    public Blob( WritableRaster parent, Options opts, WritableRaster bli )
+    public Blob( Bitmap parent, Options opts, WritableRaster bli )
     {
         this.parent = parent;
         this.minY = this.minX = Integer.MAX_VALUE;
-        this.stack = new Stack();
         this.opts = opts;
         this.blackLevelImage = bli;
     }
     /**
-     * Actually commit the blob to the dirty raster
-     * @param dirt the raster to store the pixels to be removed
+     * Actually commit the blob to the dirty bitmap
+     * @param dirt the bitmap to store the pixels to be removed
      * @param wr the original image raster
      * @param loc the start-position of the blob
      */
-    public void save( WritableRaster dirt, WritableRaster wr, Point loc )
+    public void save( Bitmap dirt, WritableRaster wr, Point loc )
     {
         this.dirt = dirt;
         // recompute the blob - a bit inefficient but storing it is far worse
@@ -113,21 +117,15 @@ public class Blob
     }
     public static float setToWhite( WritableRaster wr, Rectangle bounds )
     {
-        int blackPixels = 0;
+        RasterView rv = new RasterView( wr );
+        int blackPixels = rv.countBlack( bounds.x, bounds.y, bounds.width,
+            bounds.height );
         int yEnd = bounds.height+bounds.y;
-        int xEnd = bounds.width+bounds.x;
         // set all to white
-        int[] iArray = new int[bounds.width];
-        int[] dirty = new int[bounds.width];
-        for ( int x=0;x<bounds.width;x++ )
-            iArray[x] = 255;
         for ( int y=bounds.y;y<yEnd;y++ )
         {
-            wr.getPixels(bounds.x,y,bounds.width,1,dirty);
-            for ( int i=0;i<dirty.length;i++ )
-                if ( dirty[i]==0 )
-                    blackPixels++;
-            wr.setPixels(bounds.x,y,bounds.width,1,iArray);
+            int start = rv.index(bounds.x,y);
+            Arrays.fill( rv.data, start, start+bounds.width, (byte)255 );
         }
         return (float)blackPixels/(float)(wr.getWidth()*wr.getHeight());
     }
@@ -141,28 +139,6 @@ public class Blob
         int[] iArray = new int[1];
         wr.setPixel(loc.x,loc.y,iArray);
     }
-    /**
-     * Set a black pixel in the dirt array, keep track of minima etc
-     * @param x the x-coordinate of the black pixel
-     * @param y the y-coordinate of the black pixel
-     * @param iArray an array of 1 black pixel
-     */
-    private void setBlackPixel( int x, int y,int[] iArray )
-    {
-        if ( dirt != null )
-            dirt.setPixel(x,y,iArray);
-        else    // accumulate
-            parent.setPixel( x, y, iArray );
-        numBlackPixels++;
-        if ( x < minX )
-            minX = x;
-        if ( x > maxX )
-            maxX = x;
-        if ( y < minY )
-            minY = y;
-        if ( y > maxY )
-            maxY = y;
-    }
     /**
      * Is this pixel already in the dirty set?
      * @param loc the point to test
@@ -170,9 +146,7 @@ public class Blob
      */
     boolean contains( Point loc )
     {
-        int[] iArray=new int[1];
-        dirt.getPixel(loc.x,loc.y,iArray);
-        return iArray[0]==0;
+        return dirt.get( loc.x, loc.y );
     }
     int getBlackLevel(Point p)
     {
@@ -194,60 +168,34 @@ public class Blob
         return numBlackPixels;
     }
     /**
-     * Check if there is one dirty dot not already seen.
+     * Flood-fill the dark pixels connected to start not already seen.
      * @param wr the raster to search
      * @param start the first blackdot
-     * @param iArray the array containing the dirty dot
      */
-    void checkDirtyDot( WritableRaster wr, Point start, int[] iArray )
+    void checkDirtyDot( WritableRaster wr, Point start )
     {
-        hull = new ArrayList<>();
-        // do it without recursion
-        stack.push( start );
-        while ( !stack.empty() )
+        RasterView level = (blackLevelImage==null)?null
+            :new RasterView(blackLevelImage);
+        Bitmap mark = (dirt!=null)?dirt:parent;
+        ScanlineFill sf = new ScanlineFill( new RasterView(wr), level, mark );
+        sf.fill( start.x, start.y );
+        numBlackPixels += sf.numFilled;
+        if ( sf.numFilled > 0 )
         {
-            Point p = stack.pop();
-            wr.getPixel( p.x, p.y, iArray );
-            if ( iArray[0] <= getBlackLevel(p) )
-            {
-                if ( dirt != null )
-                    dirt.getPixel( p.x, p.y, iArray );
-                else
-                    parent.getPixel( p.x, p.y, iArray );
-                if ( iArray[0] != 0 )
-                {
-                    iArray[0] = 0;
-                    // set one pixel known to be black 
-                    setBlackPixel( p.x, p.y, iArray );
-                    // top
-                    if ( p.y > 0 )
-                        stack.push( new Point(p.x,p.y-1) );
-                    // bottom
-                    if ( p.y < wr.getHeight()-1 )
-                        stack.push( new Point(p.x, p.y+1) );
-                    // left
-                    if ( p.x > 0 )
-                        stack.push( new Point(p.x-1, p.y) );
-                    // right
-                    if ( p.x < wr.getWidth()-1 )
-                        stack.push( new Point(p.x+1, p.y) );
-                    // bot-left
-                    if ( p.y < wr.getHeight()-1 && p.x > 0 )
-                        stack.push( new Point(p.x-1, p.y+1) );
-                    // bot-right
-                    if ( p.y < wr.getHeight()-1 && p.x < wr.getWidth()-1 )
-                        stack.push( new Point(p.x+1, p.y+1) );
-                    // top-left
-                    if ( p.y > 0 && p.x > 0 )
-                        stack.push( new Point(p.x-1, p.y-1) );
-                    // top-right
-                    if ( p.y > 0 && p.x < wr.getWidth()-1 )
-                        stack.push( new Point(p.x+1, p.y-1) );
-                }
-            }
-            else
-                hull.add( p );
+            if ( sf.minX < minX )
+                minX = sf.minX;
+            if ( sf.maxX > maxX )
+                maxX = sf.maxX;
+            if ( sf.minY < minY )
+                minY = sf.minY;
+            if ( sf.maxY > maxY )
+                maxY = sf.maxY;
         }
+        hullLeft = sf.hullLeft;
+        hullRight = sf.hullRight;
+        hullTop = sf.hullTop;
+        hullRows = sf.hullRows;
+        hullCount = sf.hullCount;
     }
     /**
      * Expand a dark pixel down and to left and right
@@ -256,10 +204,8 @@ public class Blob
      */
     public void expandArea( WritableRaster wr, Point start )
     {
-        int[] iArray = new int[1];
         numBlackPixels = 0;
-        stack.clear();
-        checkDirtyDot(wr,start,iArray);
+        checkDirtyDot(wr,start);
         firstBlackPixel = start;
     }
     /**
@@ -332,20 +278,19 @@ public class Blob
         else
             outer.height = wr.getHeight()-outer.y;
         // 3. test for black pixels in that area
-        int[] iArray = new int[1];
+        RasterView rv = new RasterView( wr );
         int maxY = outer.y+outer.height;
         int maxX = outer.x+outer.width;
         int nBlacks = 0;
         int maxRogues = opts.getInt(Options.Keys.maxRoguePixels);
         for ( int y=outer.y;y<maxY;y++ )
         {
+            int row = rv.row(y);
             for ( int x=outer.x;x<maxX;x++ )
             {
-                Point loc = new Point(x,y);
-                if ( !inner.contains(loc) )
+                if ( !inner.contains(x,y) )
                 {
-                    wr.getPixel(x,y,iArray);
-                    if ( iArray[0] == 0 )
+                    if ( rv.data[row+x] == 0 )
                     {
                         if ( nBlacks == maxRogues )
                         {
@@ -373,13 +318,12 @@ public class Blob
             Picture p = new Picture( opts, url, new TextIndex("",""), 
                 cc, InetAddress.getByName("127.0.0.1") );
             p.convertToTwoTone();
-            BufferedImage bandw = ImageIO.read(p.twotone);
+            BufferedImage bandw = p.stages.getCopy(ImageType.twotone);
             WritableRaster wr = bandw.getRaster();
             Blob largest = null;
             int max = 0;
             int[] iArray = new int[1];
-            WritableRaster darkRegions = bandw.copyData(null);
-            Blob.setToWhite( darkRegions );
+            Bitmap darkRegions = new Bitmap( wr.getWidth(), wr.getHeight() );
             for ( int y=0;y<wr.getHeight();y++ )
             {
                 for ( int x=0;x<wr.getWidth();x++ )
@@ -401,8 +345,7 @@ public class Blob
             }
             if ( largest != null )
             {
-                WritableRaster dirt = bandw.copyData(null);
-                Blob.setToWhite( dirt );
+                Bitmap dirt = new Bitmap( wr.getWidth(), wr.getHeight() );
                 largest.save(dirt,wr,largest.firstBlackPixel);
                 System.out.println(largest.toString());
             }
@@ -419,13 +362,11 @@ public class Blob
     public String toString()
     {
         StringBuilder sb = new StringBuilder();
-        int[] iArray = new int[1];
-        for ( int y=0;y<dirt.getHeight();y++ )
+        for ( int y=0;y<dirt.height;y++ )
         {
-            for ( int x=0;x<dirt.getWidth();x++ )
+            for ( int x=0;x<dirt.width;x++ )
             {
-                dirt.getPixel(x,y,iArray);
-                if ( iArray[0]==0 )
+                if ( dirt.get(x,y) )
                     sb.append("*");
                 else
                     sb.append(" ");
@@ -440,22 +381,10 @@ public class Blob
      */
     Polygon toPolygon()
     {
-        if ( dirt != null && firstBlackPixel != null )
-        {
-            if ( hull == null )
-                expandArea( dirt, firstBlackPixel );
-            Point2D[] points = new Point2D[hull.size()];
-            for ( int i=0;i<hull.size();i++ )
-            {
-                Point p = hull.get(i);
-                points[i] = new Point2D( p.x, p.y );
-            }
-            if ( points.length > 1 )
-            {
-                GrahamScan gs = new GrahamScan( points );
-                return gs.toPolygon();
-            }
-        }
+        // save has filled the blob and found its hull
+        if ( dirt != null && hullLeft != null && hullCount > 1 )
+            return MonotoneChain.toPolygon( hullTop, hullLeft, hullRight,
+                hullRows );
         return null;
     }
     /**
@@ -464,6 +393,6 @@ public class Blob
      */
     public boolean hasHull()
     {
-        return this.hull != null && this.hull.size()>1;
+        return this.hullLeft != null && this.hullCount>1;
     }
 }
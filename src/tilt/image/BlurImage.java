@@ -19,26 +19,41 @@
 package tilt.image;
 
 import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
 import java.awt.image.WritableRaster;
+import java.util.Arrays;
 import tilt.image.filter.GaussianFilter;
+import tilt.image.filter.PixelUtils;
 
 
 /**
- * Blur a two-tone image so that lines can be recognised more reliably
+ * Blur a two-tone image so that lines can be recognised more reliably.
+ * Single-band 8-bit images are blurred directly on one plane of levels,
+ * in parallel bands of rows. The levels are first mapped through the
+ * image's colour model to sRGB and back again afterwards, just as
+ * getRGB/setRGB would, so the result is the same as GaussianFilter's.
+ * Above LARGE_RADIUS three box blurs approximate the Gaussian, so the
+ * cost per pixel no longer grows with the radius.
  * @author desmond
  */
-public class BlurImage 
+public class BlurImage
 {
+    /** radius above which box blurs replace the Gaussian kernel */
+    static final int LARGE_RADIUS = 32;
     int blur;
     BufferedImage src;
+    int width;
+    int height;
     /**
-     * Create a new Blur object 
+     * Create a new Blur object
      * @param src the source B&W image
      */
     public BlurImage( BufferedImage src, int blur )
     {
         this.src = src;
         this.blur = blur;
+        this.width = src.getWidth();
+        this.height = src.getHeight();
     }
     /**
      * Deploy a Gaussian blur
@@ -50,12 +65,246 @@ public class BlurImage
         BufferedImage dst;
         if ( blur > 0 )
         {
-            GaussianFilter gf = new GaussianFilter(blur);
             dst = new BufferedImage(src.getColorModel(), wr, false,null);
-            gf.filter( src, dst );
+            if ( !blurGrey(dst) )
+            {
+                GaussianFilter gf = new GaussianFilter(blur);
+                gf.filter( src, dst );
+            }
         }
         else
             dst = src;
         return dst;
     }
+    /**
+     * Blur a copy of a greyscale image in place
+     * @param dst the copy of src to blur
+     * @return false if the image is not greyscale and was left alone
+     */
+    private boolean blurGrey( BufferedImage dst )
+    {
+        WritableRaster wr = dst.getRaster();
+        if ( !RasterView.isSupported(wr) )
+            return false;
+        ColorModel cm = dst.getColorModel();
+        int[] toLevel = new int[256];
+        byte[] fromLevel = new byte[256];
+        byte[] pixel = new byte[1];
+        for ( int v=0;v<256;v++ )
+        {
+            pixel[0] = (byte)v;
+            int rgb = cm.getRGB( pixel );
+            int b = rgb&0xff;
+            if ( ((rgb>>16)&0xff) != b || ((rgb>>8)&0xff) != b )
+                return false;
+            toLevel[v] = b;
+            Object elem = cm.getDataElements( 0xff000000|(v<<16)|(v<<8)|v,
+                null );
+            if ( !(elem instanceof byte[]) )
+                return false;
+            fromLevel[v] = ((byte[])elem)[0];
+        }
+        RasterView rv = new RasterView( wr );
+        int[] levels = new int[width*height];
+        for ( int y=0,i=0;y<height;y++ )
+            for ( int x=0;x<width;x++,i++ )
+                levels[i] = toLevel[rv.get(x,y)];
+        int[] temp = new int[width*height];
+        if ( blur > LARGE_RADIUS )
+            boxBlur( levels, temp );
+        else
+            gaussianBlur( levels, temp );
+        for ( int y=0,i=0;y<height;y++ )
+            for ( int x=0;x<width;x++,i++ )
+                rv.set( x, y, fromLevel[levels[i]]&0xff );
+        return true;
+    }
+    /**
+     * Convolve with GaussianFilter's kernel, first along the rows then
+     * down the columns, adding in the same order so the result is the same
+     * @param levels the levels to blur, overwritten with the result
+     * @param temp a scratch plane of the same size
+     */
+    private void gaussianBlur( final int[] levels, final int[] temp )
+    {
+        final float[] matrix = GaussianFilter.makeKernel(blur).getKernelData(
+            null );
+        RowBands.run( height, new RowBands.Body() {
+            public void rows( int yStart, int yEnd )
+            {
+                convolveRows( matrix, levels, temp, yStart, yEnd );
+            }
+        });
+        RowBands.run( height, new RowBands.Body() {
+            public void rows( int yStart, int yEnd )
+            {
+                convolveColumns( matrix, temp, levels, yStart, yEnd );
+            }
+        });
+    }
+    /**
+     * Convolve some rows horizontally, clamping at the edges
+     * @param matrix the kernel
+     * @param in the input levels
+     * @param out the output levels
+     * @param yStart the first row
+     * @param yEnd one beyond the last row
+     */
+    private void convolveRows( float[] matrix, int[] in, int[] out,
+        int yStart, int yEnd )
+    {
+        int r = matrix.length/2;
+        for ( int y=yStart;y<yEnd;y++ )
+        {
+            int row = y*width;
+            for ( int x=0;x<width;x++ )
+            {
+                float sum = 0;
+                for ( int col=-r;col<=r;col++ )
+                {
+                    float f = matrix[r+col];
+                    if ( f != 0 )
+                    {
+                        int ix = Math.min(Math.max(x+col,0),width-1);
+                        sum += f*in[row+ix];
+                    }
+                }
+                out[row+x] = PixelUtils.clamp((int)(sum+0.5));
+            }
+        }
+    }
+    /**
+     * Convolve some rows vertically, clamping at the edges. The kernel is
+     * applied a whole row at a time so memory is read in order.
+     * @param matrix the kernel
+     * @param in the input levels
+     * @param out the output levels
+     * @param yStart the first row
+     * @param yEnd one beyond the last row
+     */
+    private void convolveColumns( float[] matrix, int[] in, int[] out,
+        int yStart, int yEnd )
+    {
+        int r = matrix.length/2;
+        float[] sums = new float[width];
+        for ( int y=yStart;y<yEnd;y++ )
+        {
+            Arrays.fill( sums, 0.0f );
+            for ( int col=-r;col<=r;col++ )
+            {
+                float f = matrix[r+col];
+                if ( f != 0 )
+                {
+                    int row = Math.min(Math.max(y+col,0),height-1)*width;
+                    for ( int x=0;x<width;x++ )
+                        sums[x] += f*in[row+x];
+                }
+            }
+            int row = y*width;
+            for ( int x=0;x<width;x++ )
+                out[row+x] = PixelUtils.clamp((int)(sums[x]+0.5));
+        }
+    }
+    /**
+     * Work out the widths of three box blurs whose combination has the
+     * same standard deviation as GaussianFilter's kernel (radius/3)
+     * @return the three box radii
+     */
+    private int[] boxRadii()
+    {
+        double sigma = blur/3.0;
+        int n = 3;
+        int wl = (int)Math.floor(Math.sqrt(12*sigma*sigma/n+1));
+        if ( wl%2 == 0 )
+            wl--;
+        int wu = wl+2;
+        long m = Math.round((12*sigma*sigma-n*wl*wl-4*n*wl-3*n)
+            /(-4.0*wl-4));
+        int[] radii = new int[n];
+        for ( int i=0;i<n;i++ )
+            radii[i] = ((i<m)?wl:wu)/2;
+        return radii;
+    }
+    /**
+     * Approximate a Gaussian blur by three box blurs in each direction,
+     * each costing the same whatever the radius
+     * @param levels the levels to blur, overwritten with the result
+     * @param temp a scratch plane of the same size
+     */
+    private void boxBlur( final int[] levels, final int[] temp )
+    {
+        int[] radii = boxRadii();
+        for ( int i=0;i<radii.length;i++ )
+        {
+            final int r = radii[i];
+            RowBands.run( height, new RowBands.Body() {
+                public void rows( int yStart, int yEnd )
+                {
+                    boxRows( r, levels, temp, yStart, yEnd );
+                }
+            });
+            RowBands.run( height, new RowBands.Body() {
+                public void rows( int yStart, int yEnd )
+                {
+                    boxColumns( r, temp, levels, yStart, yEnd );
+                }
+            });
+        }
+    }
+    /**
+     * Average some rows over a sliding horizontal window
+     * @param r the radius of the window
+     * @param in the input levels
+     * @param out the output levels
+     * @param yStart the first row
+     * @param yEnd one beyond the last row
+     */
+    private void boxRows( int r, int[] in, int[] out, int yStart, int yEnd )
+    {
+        int size = 2*r+1;
+        for ( int y=yStart;y<yEnd;y++ )
+        {
+            int row = y*width;
+            int sum = 0;
+            for ( int k=-r;k<=r;k++ )
+                sum += in[row+Math.min(Math.max(k,0),width-1)];
+            for ( int x=0;x<width;x++ )
+            {
+                out[row+x] = (sum+size/2)/size;
+                sum += in[row+Math.min(x+r+1,width-1)]
+                    - in[row+Math.max(x-r,0)];
+            }
+        }
+    }
+    /**
+     * Average some rows over a sliding vertical window
+     * @param r the radius of the window
+     * @param in the input levels
+     * @param out the output levels
+     * @param yStart the first row
+     * @param yEnd one beyond the last row
+     */
+    private void boxColumns( int r, int[] in, int[] out, int yStart,
+        int yEnd )
+    {
+        int size = 2*r+1;
+        int[] sums = new int[width];
+        for ( int k=-r;k<=r;k++ )
+        {
+            int row = Math.min(Math.max(yStart+k,0),height-1)*width;
+            for ( int x=0;x<width;x++ )
+                sums[x] += in[row+x];
+        }
+        for ( int y=yStart;y<yEnd;y++ )
+        {
+            int row = y*width;
+            int add = Math.min(y+r+1,height-1)*width;
+            int sub = Math.max(y-r,0)*width;
+            for ( int x=0;x<width;x++ )
+            {
+                out[row+x] = (sums[x]+size/2)/size;
+                sums[x] += in[add+x]-in[sub+x];
+            }
+        }
+    }
 }
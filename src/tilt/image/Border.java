@@ -40,6 +40,8 @@ public class Border
     int hUnit,vUnit;
     /** the parent image's raster */
     WritableRaster wr;
+    /** direct access to wr's pixels */
+    RasterView rv;
     /** the border width in pixels (same all around) */
     int border;
     /**
@@ -51,6 +53,7 @@ public class Border
     public Border( WritableRaster wr, float average, Rectangle cropRect )
     {
         this.wr = wr;
+        this.rv = new RasterView( wr );
         hUnit = Math.round(cropRect.width*RATIO);
         vUnit = Math.round(cropRect.height*RATIO);
         int height = cropRect.height/vUnit;
@@ -159,16 +162,8 @@ public class Border
             int vLimit = y+vUnit;
             if ( vLimit > wr.getHeight() )
                 vLimit = wr.getHeight();
-            int[] iArray = new int[1];
-            for ( int v=y;v<vLimit;v++ )
-            {
-                for ( int h=x;h<hLimit;h++ )
-                {
-                    wr.getPixel(h,v,iArray);
-                    if ( iArray[0]==0 )
-                        count++;
-                }
-            }
+            if ( hLimit > x && vLimit > y )
+                count = rv.countBlack( x, y, hLimit-x, vLimit-y );
         }
         Rectangle makeRectangle()
         {
@@ -0,0 +1,247 @@
+/*
+ * This file is part of TILT.
+ *
+ *  TILT is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  TILT is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with TILT.  If not, see <http://www.gnu.org/licenses/>.
+ *  (c) copyright Desmond Schmidt 2015
+ */
+
+package tilt.image;
+
+import java.awt.Point;
+import tilt.handler.post.Options;
+
+/**
+ * Label the 8-connected dark regions of an image in two passes with
+ * union-find. The first pass assigns provisional labels and records which
+ * are joined; the second resolves them to labels 1..count and gathers the
+ * statistics of each component. Label 0 means "not dark".
+ * @author desmond
+ */
+public class ConnectedComponents
+{
+    /** the label of each pixel, row by row */
+    int[] labels;
+    int width;
+    int height;
+    /** number of components: labels run from 1 to count */
+    int count;
+    /** component statistics indexed by label */
+    int[] minX,maxX,minY,maxY;
+    int[] numBlack;
+    int[] firstX,firstY;
+    /** provisional label equivalences */
+    int[] parent;
+    /**
+     * Label an image
+     * @param src the image to label
+     * @param level the local black level or null if it is 0 everywhere
+     */
+    public ConnectedComponents( RasterView src, RasterView level )
+    {
+        this.width = src.width;
+        this.height = src.height;
+        this.labels = new int[width*height];
+        this.parent = new int[256];
+        int next = firstPass( src, level );
+        secondPass( next );
+        this.parent = null;
+    }
+    /**
+     * Find the root of a provisional label, compressing the path
+     * @param l the label
+     * @return its root
+     */
+    private int find( int l )
+    {
+        int root = l;
+        while ( parent[root] != root )
+            root = parent[root];
+        while ( parent[l] != root )
+        {
+            int up = parent[l];
+            parent[l] = root;
+            l = up;
+        }
+        return root;
+    }
+    /**
+     * Join two provisional labels, keeping the smaller as the root
+     * @param a the first label
+     * @param b the second label
+     * @return the root of the joined set
+     */
+    private int union( int a, int b )
+    {
+        int ra = find( a );
+        int rb = find( b );
+        if ( ra < rb )
+        {
+            parent[rb] = ra;
+            return ra;
+        }
+        else
+        {
+            parent[ra] = rb;
+            return rb;
+        }
+    }
+    /**
+     * Assign provisional labels from the already seen neighbours
+     * @param src the image to label
+     * @param level the black level or null
+     * @return one more than the last provisional label used
+     */
+    private int firstPass( RasterView src, RasterView level )
+    {
+        int next = 1;
+        for ( int y=0;y<height;y++ )
+        {
+            int row = y*width;
+            for ( int x=0;x<width;x++ )
+            {
+                int black = (level==null)?0:level.get(x,y);
+                if ( src.get(x,y) <= black )
+                {
+                    int l = 0;
+                    if ( x > 0 && labels[row+x-1] != 0 )
+                        l = labels[row+x-1];
+                    if ( y > 0 )
+                    {
+                        int above = row-width+x;
+                        if ( x > 0 && labels[above-1] != 0 )
+                            l = (l==0)?labels[above-1]:union(l,labels[above-1]);
+                        if ( labels[above] != 0 )
+                            l = (l==0)?labels[above]:union(l,labels[above]);
+                        if ( x < width-1 && labels[above+1] != 0 )
+                            l = (l==0)?labels[above+1]:union(l,labels[above+1]);
+                    }
+                    if ( l == 0 )
+                    {
+                        if ( next == parent.length )
+                        {
+                            int[] bigger = new int[parent.length*2];
+                            System.arraycopy( parent, 0, bigger, 0, next );
+                            parent = bigger;
+                        }
+                        parent[next] = next;
+                        l = next++;
+                    }
+                    labels[row+x] = l;
+                }
+            }
+        }
+        return next;
+    }
+    /**
+     * Resolve provisional labels to final ones and compute statistics
+     * @param next one more than the last provisional label
+     */
+    private void secondPass( int next )
+    {
+        int[] remap = new int[next];
+        for ( int l=1;l<next;l++ )
+        {
+            int root = find( l );
+            if ( root == l )
+                remap[l] = ++count;
+        }
+        minX = new int[count+1];
+        maxX = new int[count+1];
+        minY = new int[count+1];
+        maxY = new int[count+1];
+        numBlack = new int[count+1];
+        firstX = new int[count+1];
+        firstY = new int[count+1];
+        for ( int y=0,i=0;y<height;y++ )
+        {
+            for ( int x=0;x<width;x++,i++ )
+            {
+                if ( labels[i] != 0 )
+                {
+                    int l = remap[find(labels[i])];
+                    labels[i] = l;
+                    if ( numBlack[l] == 0 )
+                    {
+                        firstX[l] = minX[l] = maxX[l] = x;
+                        firstY[l] = minY[l] = maxY[l] = y;
+                    }
+                    else
+                    {
+                        if ( x < minX[l] )
+                            minX[l] = x;
+                        if ( x > maxX[l] )
+                            maxX[l] = x;
+                        maxY[l] = y;
+                    }
+                    numBlack[l]++;
+                }
+            }
+        }
+    }
+    /**
+     * Get the label of a pixel
+     * @param x the x-coordinate
+     * @param y the y-coordinate
+     * @return its component label or 0 if it was not dark
+     */
+    public int labelAt( int x, int y )
+    {
+        return labels[y*width+x];
+    }
+    /**
+     * How many components were found?
+     * @return the number of labels (not counting 0)
+     */
+    public int getCount()
+    {
+        return count;
+    }
+    /**
+     * Get the number of pixels in a component's bounds not belonging to it
+     * @param l the component label
+     * @return the number of other pixels inside its bounding box
+     */
+    public int getNumWhite( int l )
+    {
+        return (maxX[l]-minX[l]+1)*(maxY[l]-minY[l]+1)-numBlack[l];
+    }
+    /**
+     * Get the total number of dark pixels in all components
+     * @return the number of labelled pixels
+     */
+    public long getTotalBlack()
+    {
+        long total = 0;
+        for ( int l=1;l<=count;l++ )
+            total += numBlack[l];
+        return total;
+    }
+    /**
+     * Describe a component as a Blob for the classification tests
+     * @param l the component label
+     * @param opts the options
+     * @return a Blob with the component's bounds and size
+     */
+    Blob toBlob( int l, Options opts )
+    {
+        Blob b = new Blob( null, opts, null );
+        b.minX = minX[l];
+        b.maxX = maxX[l];
+        b.minY = minY[l];
+        b.maxY = maxY[l];
+        b.numBlackPixels = numBlack[l];
+        b.firstBlackPixel = new Point( firstX[l], firstY[l] );
+        return b;
+    }
+}
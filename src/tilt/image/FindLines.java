@@ -27,7 +27,7 @@ import tilt.handler.post.Options;
 import tilt.image.geometry.Point;
 import tilt.image.page.Line;
 import tilt.image.geometry.Polygon;
-import tilt.image.page.QuadTree;
+import tilt.image.page.ShapeIndex;
 import tilt.image.page.diff.Diff;
 import tilt.image.page.diff.Matrix;
 
@@ -97,17 +97,14 @@ public class FindLines
      */
     private void lightenImage( WritableRaster wr )
     {
-        int[] iArray = new int[1];
-        for ( int y=0;y<wr.getHeight();y++ )
+        RasterView rv = new RasterView( wr );
+        for ( int y=0;y<rv.height;y++ )
         {
-            for ( int x=0;x<wr.getWidth();x++ )
+            int end = rv.row(y)+rv.width;
+            for ( int i=rv.row(y);i<end;i++ )
             {
-                wr.getPixel( x, y, iArray );
-                if ( iArray[0] < LIGHT_SHADE )
-                {
-                    iArray[0] = LIGHT_SHADE;
-                    wr.setPixel( x, y, iArray );
-                }
+                if ( (rv.data[i]&0xFF) < LIGHT_SHADE )
+                    rv.data[i] = (byte)LIGHT_SHADE;
             }
         }
     }
@@ -118,15 +115,15 @@ public class FindLines
     private float computeAverage( WritableRaster wr )
     {
         float total = 0.0f;
-        int w = wr.getWidth();
-        int h = wr.getHeight();
-        int[] iArray = new int[w];
+        RasterView rv = new RasterView( wr );
+        int w = rv.width;
+        int h = rv.height;
         for ( int y=0;y<h;y++ )
         {
-            wr.getPixels(0,y,w,1,iArray);
-            for ( int x=0;x<w;x++ )
+            int end = rv.row(y)+w;
+            for ( int i=rv.row(y);i<end;i++ )
             {
-                total += iArray[x];
+                total += rv.data[i]&0xFF;
             }
         }
         return (float)total/(float)(h*w);
@@ -143,13 +140,13 @@ public class FindLines
             -(strip*hScale);
         int xStart = strip*hScale;
         float[] totals = new float[wr.getHeight()];
-        int[] iArray = new int[stripWidth];
-        for ( int y=0;y<wr.getHeight();y++ )
+        RasterView rv = new RasterView( wr );
+        for ( int y=0;y<rv.height;y++ )
         {
-            wr.getPixels(xStart,y,stripWidth,1,iArray);
-            for ( int x=0;x<stripWidth;x++ )
+            int start = rv.index(xStart,y);
+            for ( int i=start;i<start+stripWidth;i++ )
             {
-                totals[y] += iArray[x];
+                totals[y] += rv.data[i]&0xFF;
             }
             totals[y] /= stripWidth;
         }
@@ -199,11 +196,10 @@ public class FindLines
      */
     public void prune( Rectangle r )
     {
-        QuadTree qt = new QuadTree(r.x, r.y, r.width, r.height );
-        WritableRaster dirty = src.copyData(null);
+        ShapeIndex shapes = new ShapeIndex( r );
+        Bitmap dirty = new Bitmap( src.getWidth(), src.getHeight() );
         ArrayList<Line> lines = page.getLines();
         int[] dArray = new int[1];
-        Blob.setToWhite(dirty);
         for ( int i=0;i<lines.size();i++ )
         {
             Line line = lines.get(i);
@@ -223,7 +219,7 @@ public class FindLines
                     if ( dArray[0]==0 && !lastWasBlack )
                     {
                         Point q = new Point(x,y);
-                        Polygon shape = qt.pointInPolygon( q );
+                        Polygon shape = shapes.pointInPolygon( q );
                         if ( shape != null )
                         {
                             if ( !line.hasShapeByID(shape.ID) )
@@ -231,13 +227,13 @@ public class FindLines
                         }
                         else
                         {
-                            Blob b = new Blob(wrOrig,opts,null);
+                            Blob b = new Blob(null,opts,null);
                             b.save(dirty, wrOrig, q.toAwt());
                             if ( b.hasHull() )
                             {
                                 shape = b.toPolygon();
                                 shape.toPoints();
-                                qt.addPolygon( shape );
+                                shapes.add( shape );
                                 line.add( shape );
                                 shape.setID( newShapeID() );
                             }
@@ -249,7 +245,7 @@ public class FindLines
                 }
             }
         }
-        // now we have all the identifiable shapes on the page in qt and they 
+        // now we have all the identifiable shapes on the page in shapes and they
         // are assigned to lines, maybe more than one line to each shape. Now 
         // we have to identify RUNS of shapes in each line that are also on 
         // the next line - and decide to which line they should belong
@@ -24,6 +24,7 @@ import tilt.image.page.LineRegion;
 import java.util.ArrayList;
 import tilt.image.geometry.Point;
 import tilt.image.geometry.Polygon;
+import tilt.image.geometry.SpanMask;
 import java.awt.Rectangle;
 import tilt.handler.post.Options;
 import tilt.handler.post.TextIndex;
@@ -37,7 +38,8 @@ public class FindWords
     BufferedImage src;
     Page page;
     WritableRaster wr;
-    WritableRaster dirty;
+    /** pixels already assigned to a shape */
+    Bitmap dirty;
     Options opts;
     int shapeID = 1;
     int shapeNo;
@@ -51,8 +53,7 @@ public class FindWords
     public FindWords( BufferedImage src, Page page, Options opts ) 
     {
         wr = src.getRaster();
-        dirty = src.copyData(null);
-        Blob.setToWhite(dirty);
+        dirty = new Bitmap( wr.getWidth(), wr.getHeight() );
         this.page = page;
         this.src = src;
         this.opts = opts;
@@ -122,13 +123,14 @@ public class FindWords
     {
         // compute polygon in which to look for blobs
         Polygon core = lr.getLineBase( p0, p1 );
+        SpanMask coreMask = new SpanMask( core );
         // look only inside the core bounds for black pixels
-        Rectangle r = core.getBounds();
+        RasterView wv = new RasterView( wr );
+        Rectangle r = core.getBounds().intersection(
+            new Rectangle(0,0,wv.width,wv.height) );
         Polygon poly = lr.getPoly();
         Rectangle lrBounds = poly.getBounds();
         int endY = r.y+r.height;
-        int[] iArray = new int[r.width];
-        int[] dArray = new int[1];
         // if the last pixel was black it must be part of the same blob/polygon
         boolean lastPixelWasBlack = false;
         // per pixel row within r
@@ -136,29 +138,28 @@ public class FindWords
         for ( int y=r.y;y<endY;y++ )
         {
             q.y = y;
-            wr.getPixels( r.x, y, r.width, 1, iArray );
+            int row = wv.row(y);
             // for each pixel in each row...
             for ( int i=0;i<r.width;i++ )
             {
                 int x = i+r.x;
                 q.x = x;
-                if ( iArray[i] == 0 )
+                if ( wv.data[row+x] == 0 )
                 {
                     // ignore black pixels not in polgonal core of line
-                    if ( core.contains(q) )
+                    if ( coreMask.contains(x,y) )
                     {
                         if ( !lastPixelWasBlack )
                         {
                             lastPixelWasBlack = true;
                             // have we already scanned this pixel?
-                            dirty.getPixel(x, y, dArray);
-                            if ( dArray[0] != 0 )
+                            if ( !dirty.get(x,y) )
                             {
                                 Polygon shape = page.shapeForPoint(q);
                                 if ( shape == null )
                                 {
                                     // shape not already defined
-                                    Blob b = new Blob(wr,opts,null);
+                                    Blob b = new Blob(null,opts,null);
                                     b.save(dirty, wr, q.toAwt());
                                     if ( b.hasHull() )
                                     {
@@ -208,7 +209,7 @@ public class FindWords
             // reset at line-end
             lastPixelWasBlack = false;
         }
-        Blob.setToWhite( dirty, lrBounds );
+        dirty.clear( lrBounds );
     }
     /**
      * Find lines containing only shapes that really belong to other lines
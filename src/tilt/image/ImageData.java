@@ -0,0 +1,161 @@
+/*
+ * This file is part of TILT.
+ *
+ *  TILT is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  TILT is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with TILT.  If not, see <http://www.gnu.org/licenses/>.
+ *  (c) copyright Desmond Schmidt 2015
+ */
+
+package tilt.image;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.security.MessageDigest;
+
+/**
+ * The encoded form of an image ready to be sent: either a stage's PNG
+ * encoding, shared by everyone who asks for that stage, or the original
+ * image's file, in whatever format it came in. The file is opened when
+ * this is made and its length taken from the open file, so the length
+ * sent is that of the bytes that will follow even if the file is deleted
+ * meanwhile. Either way it carries a hash of its contents, so responses 
+ * can be streamed and validated without copying the image for each 
+ * request. Close it when done, to close the file.
+ * @author desmond
+ */
+public class ImageData implements Closeable
+{
+    /** the type of the stage encodings */
+    static final String PNG_TYPE = "image/png";
+    /** the encoded image, or null if it is in file */
+    final byte[] bytes;
+    /** the file holding the image, or null if it is in bytes */
+    final File file;
+    /** the open file, or null if the image is in bytes */
+    final FileChannel channel;
+    final long length;
+    final String hash;
+    final String contentType;
+    /**
+     * Wrap an encoded image held in memory
+     * @param bytes the encoding, which must not be changed afterwards
+     */
+    ImageData( byte[] bytes )
+    {
+        this.bytes = bytes;
+        this.file = null;
+        this.channel = null;
+        this.length = bytes.length;
+        this.hash = hash( bytes );
+        this.contentType = PNG_TYPE;
+    }
+    /**
+     * Open an image file
+     * @param file the file
+     * @param hash the SHA-1 of its contents
+     * @param contentType its mime type
+     * @throws IOException if it could not be opened
+     */
+    ImageData( File file, String hash, String contentType ) 
+        throws IOException
+    {
+        this.bytes = null;
+        this.file = file;
+        this.channel = FileChannel.open( file.toPath() );
+        this.length = channel.size();
+        this.hash = hash;
+        this.contentType = contentType;
+    }
+    /**
+     * Compute the SHA-1 of some bytes
+     * @param data the bytes
+     * @return the hash in hexadecimal
+     */
+    private static String hash( byte[] data )
+    {
+        try
+        {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            md.update( data );
+            return StageCache.toHex( md );
+        }
+        catch ( Exception e )
+        {
+            // SHA-1 is always present
+            throw new RuntimeException( e );
+        }
+    }
+    /**
+     * Get the length of the encoded image
+     * @return the number of bytes that writeTo will write
+     */
+    public long getLength()
+    {
+        return length;
+    }
+    /**
+     * Get the format of the encoded image
+     * @return its mime type
+     */
+    public String getContentType()
+    {
+        return contentType;
+    }
+    /**
+     * Get a hash of the image's contents, for use as an ETag
+     * @return the SHA-1 in hexadecimal
+     */
+    public String getHash()
+    {
+        return hash;
+    }
+    /**
+     * Write the image. Files are sent from the open file with 
+     * FileChannel.transferTo, and encodings held in memory are written as
+     * they are.
+     * @param out the stream to write to
+     * @throws IOException
+     */
+    public void writeTo( OutputStream out ) throws IOException
+    {
+        if ( bytes != null )
+            out.write( bytes );
+        else
+        {
+            WritableByteChannel ch = Channels.newChannel( out );
+            long done = 0;
+            while ( done < length )
+            {
+                long n = channel.transferTo( done, length-done, ch );
+                if ( n <= 0 )
+                    throw new EOFException( file.getPath() );
+                done += n;
+            }
+        }
+    }
+    /**
+     * Close the file, if the image is in one
+     * @throws IOException
+     */
+    public void close() throws IOException
+    {
+        if ( channel != null )
+            channel.close();
+    }
+}
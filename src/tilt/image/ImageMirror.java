@@ -0,0 +1,448 @@
+/*
+ * This file is part of TILT.
+ *
+ *  TILT is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  TILT is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with TILT.  If not, see <http://www.gnu.org/licenses/>.
+ *  (c) copyright Desmond Schmidt 2015
+ */
+
+package tilt.image;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Properties;
+import tilt.metrics.Metrics;
+
+/**
+ * Fetch original images, keeping a copy of each on disk named by the hash
+ * of its contents. Every url fetched over HTTP has a small record of the
+ * content hash and the ETag and Last-Modified headers the server sent, so
+ * the next fetch is a conditional GET and a 304 reply is served from the
+ * mirror without downloading the image again. The mirrored file is hard
+ * linked to, not copied, where the file system allows. Fetches have
+ * connect and read timeouts, are retried a few times and are refused
+ * once they grow past a size limit. Connections are read to the end and
+ * closed, so the JDK's keep-alive cache reuses them for further requests
+ * to the same host. Besides http: and https: urls, file: urls and classpath:/path
+ * resources are read directly, so batch runs and tests need no network.
+ * @author desmond
+ */
+public class ImageMirror
+{
+    static final String SUFFIX = ".img";
+    static final String RECORD = ".url";
+    static final String CLASSPATH = "classpath:";
+    /** set tilt.mirror=false to fetch every time */
+    static boolean ENABLED = Boolean.parseBoolean(
+        System.getProperty("tilt.mirror","true"));
+    /** where the images are kept (tilt.mirror.dir) */
+    static File DIR = new File( System.getProperty("tilt.mirror.dir",
+        System.getProperty("java.io.tmpdir")+File.separator+"tilt-mirror") );
+    /** maximum size of the mirror on disk (tilt.mirror.maxBytes) */
+    static long MAX_BYTES = Long.getLong("tilt.mirror.maxBytes",
+        2048L*1024*1024);
+    /** largest image that will be fetched (tilt.fetch.maxBytes) */
+    static long MAX_IMAGE_BYTES = Long.getLong("tilt.fetch.maxBytes",
+        64L*1024*1024);
+    /** milliseconds to wait for a connection (tilt.fetch.connectTimeout) */
+    static int CONNECT_TIMEOUT = Integer.getInteger(
+        "tilt.fetch.connectTimeout",10000);
+    /** milliseconds to wait for each read (tilt.fetch.readTimeout) */
+    static int READ_TIMEOUT = Integer.getInteger("tilt.fetch.readTimeout",
+        30000);
+    /** extra attempts after a failed fetch (tilt.fetch.retries) */
+    static int RETRIES = Integer.getInteger("tilt.fetch.retries",2);
+    /**
+     * A fetch that would fail again if retried: the image is too big or
+     * the server said it was not there or not ours to have
+     */
+    static class RefusedException extends IOException
+    {
+        static final long serialVersionUID = 1L;
+        RefusedException( String message )
+        {
+            super( message );
+        }
+    }
+    /**
+     * Make the error for an image that is too big
+     * @param source where it came from
+     * @return the exception to throw
+     */
+    private static RefusedException tooBig( String source )
+    {
+        return new RefusedException( source+" is larger than "
+            +MAX_IMAGE_BYTES+" bytes" );
+    }
+    /**
+     * Convert a digest to hex
+     * @param md the digest to finish
+     * @return its value as a hex string
+     */
+    private static String toHex( MessageDigest md )
+    {
+        byte[] hash = md.digest();
+        StringBuilder sb = new StringBuilder();
+        for ( int i=0;i<hash.length;i++ )
+            sb.append( String.format("%02x",hash[i]&0xFF) );
+        return sb.toString();
+    }
+    private static MessageDigest sha1()
+    {
+        try
+        {
+            return MessageDigest.getInstance("SHA-1");
+        }
+        catch ( java.security.NoSuchAlgorithmException e )
+        {
+            // SHA-1 is always present
+            throw new RuntimeException( e );
+        }
+    }
+    /**
+     * Copy a stream to a file, hashing it and enforcing the size limit
+     * @param in the stream, which is not closed
+     * @param dest the file to write
+     * @param source the source, for error messages
+     * @return the hex SHA-1 of the bytes copied
+     * @throws IOException if reading fails or the stream is too long
+     */
+    private static String copy( InputStream in, File dest, String source )
+        throws IOException
+    {
+        MessageDigest md = sha1();
+        byte[] buf = new byte[65536];
+        long total = 0;
+        try ( OutputStream out = new FileOutputStream(dest) )
+        {
+            int n;
+            while ( (n=in.read(buf)) > 0 )
+            {
+                total += n;
+                if ( total > MAX_IMAGE_BYTES )
+                    throw tooBig( source );
+                md.update( buf, 0, n );
+                out.write( buf, 0, n );
+            }
+        }
+        Metrics.count( "fetched_bytes", total );
+        return toHex( md );
+    }
+    /**
+     * Give a file the contents of another by hard linking it, so nothing
+     * is copied, or by copying it if links aren't supported there
+     * @param from the file to link to
+     * @param to the file to replace
+     * @throws IOException
+     */
+    private static void linkOrCopy( File from, File to ) throws IOException
+    {
+        Files.deleteIfExists( to.toPath() );
+        try
+        {
+            Files.createLink( to.toPath(), from.toPath() );
+        }
+        catch ( IOException | UnsupportedOperationException e )
+        {
+            Files.copy( from.toPath(), to.toPath(),
+                StandardCopyOption.REPLACE_EXISTING );
+        }
+    }
+    /**
+     * Fetch an image into a file
+     * @param source an http:, https: or file: url or classpath:/path
+     * @param dest the file to write the image to
+     * @return the hex SHA-1 of the image
+     * @throws IOException if it could not be fetched
+     */
+    public static String fetch( String source, File dest ) throws IOException
+    {
+        if ( source.startsWith(CLASSPATH) )
+        {
+            String path = source.substring(CLASSPATH.length());
+            if ( path.startsWith("/") )
+                path = path.substring(1);
+            try ( InputStream in = ImageMirror.class.getClassLoader()
+                .getResourceAsStream(path) )
+            {
+                if ( in == null )
+                    throw new IOException("No resource "+source);
+                return copy( in, dest, source );
+            }
+        }
+        URL url = new URL( source );
+        String protocol = url.getProtocol();
+        if ( !protocol.equals("http") && !protocol.equals("https") )
+        {
+            URLConnection conn = url.openConnection();
+            try ( InputStream in = conn.getInputStream() )
+            {
+                return copy( in, dest, source );
+            }
+        }
+        for ( int attempt=0;;attempt++ )
+        {
+            try
+            {
+                return fetchHttp( url, dest );
+            }
+            catch ( RefusedException e )
+            {
+                throw e;
+            }
+            catch ( IOException e )
+            {
+                if ( attempt >= RETRIES )
+                    throw e;
+                Metrics.count( "fetch_retries", 1 );
+                try
+                {
+                    Thread.sleep( 500L*(attempt+1) );
+                }
+                catch ( InterruptedException ie )
+                {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+    /**
+     * Fetch over HTTP, revalidating any copy already in the mirror
+     * @param url the url of the image
+     * @param dest the file to write it to
+     * @return the hex SHA-1 of the image
+     * @throws IOException
+     */
+    private static String fetchHttp( URL url, File dest ) throws IOException
+    {
+        String source = url.toString();
+        File recordFile = recordFor( source );
+        Properties record = ENABLED?readRecord(recordFile):null;
+        File mirrored = null;
+        if ( record != null )
+        {
+            mirrored = imageFor( record.getProperty("hash") );
+            if ( !mirrored.exists() )
+            {
+                record = null;
+                mirrored = null;
+            }
+        }
+        HttpURLConnection conn = (HttpURLConnection)url.openConnection();
+        conn.setConnectTimeout( CONNECT_TIMEOUT );
+        conn.setReadTimeout( READ_TIMEOUT );
+        conn.setUseCaches( false );
+        if ( record != null )
+        {
+            String etag = record.getProperty("etag");
+            if ( etag != null )
+                conn.setRequestProperty( "If-None-Match", etag );
+            String modified = record.getProperty("lastModified");
+            if ( modified != null )
+                conn.setIfModifiedSince( Long.parseLong(modified) );
+        }
+        int code = conn.getResponseCode();
+        if ( code == HttpURLConnection.HTTP_NOT_MODIFIED && mirrored != null )
+        {
+            drain( conn.getErrorStream() );
+            mirrored.setLastModified( System.currentTimeMillis() );
+            linkOrCopy( mirrored, dest );
+            Metrics.count( "mirror_hits", 1 );
+            return record.getProperty("hash");
+        }
+        if ( code != HttpURLConnection.HTTP_OK )
+        {
+            drain( conn.getErrorStream() );
+            String message = "HTTP "+code+" fetching "+source;
+            if ( code >= 400 && code < 500 )
+                throw new RefusedException( message );
+            throw new IOException( message );
+        }
+        if ( conn.getContentLengthLong() > MAX_IMAGE_BYTES )
+        {
+            conn.disconnect();
+            throw tooBig( source );
+        }
+        String hash;
+        try ( InputStream in = conn.getInputStream() )
+        {
+            hash = copy( in, dest, source );
+        }
+        Metrics.count( "mirror_misses", 1 );
+        if ( ENABLED )
+            store( dest, hash, source, recordFile, conn );
+        return hash;
+    }
+    /**
+     * Read and discard the rest of a reply so the connection can be reused
+     * @param in the reply body, may be null
+     */
+    private static void drain( InputStream in )
+    {
+        if ( in == null )
+            return;
+        try
+        {
+            byte[] buf = new byte[4096];
+            while ( in.read(buf) > 0 );
+            in.close();
+        }
+        catch ( IOException e )
+        {
+            // the connection just won't be reused
+        }
+    }
+    private static File imageFor( String hash )
+    {
+        return new File( DIR, hash+SUFFIX );
+    }
+    private static File recordFor( String source )
+    {
+        MessageDigest md = sha1();
+        try
+        {
+            md.update( source.getBytes("UTF-8") );
+        }
+        catch ( java.io.UnsupportedEncodingException e )
+        {
+            throw new RuntimeException( e );
+        }
+        return new File( DIR, toHex(md)+RECORD );
+    }
+    /**
+     * Read the record of a url
+     * @param recordFile its file
+     * @return the record or null if there is none or it is damaged
+     */
+    private static Properties readRecord( File recordFile )
+    {
+        if ( !recordFile.exists() )
+            return null;
+        try ( InputStream in = new FileInputStream(recordFile) )
+        {
+            Properties record = new Properties();
+            record.load( in );
+            return ( record.getProperty("hash") != null )?record:null;
+        }
+        catch ( IOException e )
+        {
+            recordFile.delete();
+            return null;
+        }
+    }
+    /**
+     * Put a freshly fetched image into the mirror and record its url
+     * @param fetched the fetched image
+     * @param hash the hash of its contents
+     * @param source its url
+     * @param recordFile the file to record the url in
+     * @param conn the connection it came from, for its validators
+     */
+    private static void store( File fetched, String hash, String source,
+        File recordFile, HttpURLConnection conn )
+    {
+        try
+        {
+            DIR.mkdirs();
+            File image = imageFor( hash );
+            if ( !image.exists() )
+            {
+                File tmp = File.createTempFile( hash, ".tmp", DIR );
+                try
+                {
+                    linkOrCopy( fetched, tmp );
+                    Files.move( tmp.toPath(), image.toPath(),
+                        StandardCopyOption.ATOMIC_MOVE );
+                }
+                finally
+                {
+                    tmp.delete();
+                }
+            }
+            else
+                image.setLastModified( System.currentTimeMillis() );
+            Properties record = new Properties();
+            record.setProperty( "url", source );
+            record.setProperty( "hash", hash );
+            String etag = conn.getHeaderField("ETag");
+            if ( etag != null )
+                record.setProperty( "etag", etag );
+            long modified = conn.getLastModified();
+            if ( modified > 0 )
+                record.setProperty( "lastModified", Long.toString(modified) );
+            File tmp = File.createTempFile( hash, ".tmp", DIR );
+            try
+            {
+                try ( OutputStream out = new FileOutputStream(tmp) )
+                {
+                    record.store( out, null );
+                }
+                Files.move( tmp.toPath(), recordFile.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE );
+            }
+            finally
+            {
+                tmp.delete();
+            }
+            trim();
+        }
+        catch ( IOException e )
+        {
+            // the image was fetched; it just won't be mirrored
+            e.printStackTrace( System.out );
+        }
+    }
+    /**
+     * Delete the least recently used images until the mirror fits. Their
+     * records are left behind and ignored once the image has gone.
+     */
+    private static synchronized void trim()
+    {
+        File[] files = DIR.listFiles();
+        if ( files == null )
+            return;
+        long total = 0;
+        for ( int i=0;i<files.length;i++ )
+            total += files[i].length();
+        if ( total <= MAX_BYTES )
+            return;
+        Arrays.sort( files, new Comparator<File>() {
+            public int compare( File a, File b )
+            {
+                return Long.compare( a.lastModified(), b.lastModified() );
+            }
+        });
+        for ( int i=0;i<files.length&&total>MAX_BYTES;i++ )
+        {
+            if ( files[i].getName().endsWith(SUFFIX) )
+            {
+                total -= files[i].length();
+                files[i].delete();
+            }
+        }
+    }
+}
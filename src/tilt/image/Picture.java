@@ -17,16 +17,11 @@
  */
 
 package tilt.image;
-import java.net.URL;
 import java.net.InetAddress;
 import tilt.exception.ImageException;
-import java.io.FileOutputStream;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.File;
 import tilt.exception.TiltException;
-import java.nio.channels.ReadableByteChannel;
-import java.nio.channels.Channels;
 import java.awt.Graphics;
 import java.awt.Rectangle;
 import java.awt.Graphics2D;
@@ -38,41 +33,41 @@ import javax.imageio.ImageReader;
 import javax.imageio.stream.ImageInputStream;
 
 import java.awt.image.BufferedImage;
-import java.awt.image.WritableRaster;
 import tilt.image.page.Page;
 import tilt.handler.post.TextIndex;
 import tilt.align.Matchup;
 import tilt.image.page.Word;
 import tilt.image.page.Line;
 import tilt.handler.post.Options;
+import tilt.constants.ImageType;
+import tilt.metrics.Metrics;
 
 /**
  * Handle everything related to the abstract image in all its forms
  * @author desmond
  */
 public class Picture {
-    private final static String PNG_TYPE = "PNG";
     String id;
     InetAddress poster;
     float ppAverage;
     Page page;
     File orig;
-    File preflighted;
-    File greyscale;
-    File twotone;
-    File cleaned;
-    File baselines;
-    File blurred;
-    File reconstructed;
-    File words;
+    /** the intermediate images, kept in memory */
+    StageStore stages;
     int blur;
     Double[][] coords;
     TextIndex text;
     boolean linked;
     Options options;
     Rectangle cropRect;
+    /** SHA-1 of the original image, the root of the stage cache keys */
+    String contentHash;
+    /** how many users have it pinned in the registry, under its lock */
+    int pins;
     /**
      * Create a picture. Pictures stores links to the various image files.
+     * It is registered and pinned, so the caller must give it back with
+     * PictureRegistry.release when done with it.
      * @param options options from the geoJSON file
      * @param url the url of the image
      * @param text the text to align with
@@ -89,10 +84,11 @@ public class Picture {
             id = url;
             this.text = text;
             this.poster = poster;
-            // try to register the picture
-            PictureRegistry.register( this, url );
             this.options = options;
             this.coords = coords;
+            this.stages = new StageStore();
+            // try to register the picture
+            PictureRegistry.register( this, url );
         }
         catch ( Exception e )
         {
@@ -109,18 +105,7 @@ public class Picture {
         {
             if ( orig != null )
                 orig.delete();
-            if ( greyscale != null )
-                greyscale.delete();
-            if ( twotone != null )
-                twotone.delete();
-            if ( baselines != null )
-                baselines.delete();
-            if ( reconstructed != null )
-                reconstructed.delete();
-            if ( words != null )
-                words.delete();
-            if ( preflighted != null )
-                preflighted.delete();
+            stages.clear();
             // dispose of other temporary files here
         }
         catch ( Exception e )
@@ -129,24 +114,38 @@ public class Picture {
         }
     }
     /**
-     * Fetch the image from a url and convert to png. Can take time.
+     * How much heap do the stored stage images occupy?
+     * @return the number of bytes held in memory
+     */
+    long getMemoryBytes()
+    {
+        return stages.getBytes();
+    }
+    /**
+     * How much temporary disk space does this picture occupy?
+     * @return the number of bytes held on disk
+     */
+    long getDiskBytes()
+    {
+        return ( orig != null )?orig.length():0;
+    }
+    /**
+     * Fetch the image from a url. It is kept in its own format: preflight
+     * decodes it at close to the reduced size, so it is never decoded in 
+     * full. Can take time, unless the image is already in the ImageMirror 
+     * and hasn't changed.
      * @throws ImageException 
      */
     public void load() throws ImageException
     {
         try
         {
-            URL netUrl = new URL( this.id );
-            // fetch picture from url
-            ReadableByteChannel rbc = Channels.newChannel(netUrl.openStream());
+            Metrics.Timer t = Metrics.start( Metrics.FETCH, "image" );
+            // fetch picture from url, or revalidate our copy of it
             orig = File.createTempFile(PictureRegistry.PREFIX,
                 PictureRegistry.SUFFIX);
-            FileOutputStream fos = new FileOutputStream(orig);
-            fos.getChannel().transferFrom(rbc, 0, Long.MAX_VALUE);
-            fos.close();
-            String mimeType = getFormatName();
-            if ( !mimeType.equals(PNG_TYPE) )
-                convertToPng();
+            contentHash = ImageMirror.fetch( this.id, orig );
+            t.stop();
         }
         catch ( Exception e )
         {
@@ -188,7 +187,7 @@ public class Picture {
     Rectangle getCropRect() throws IOException
     {
         int x,y,width,height;
-        BufferedImage bi = ImageIO.read(preflighted);
+        BufferedImage bi = stages.get(ImageType.preflight);
         if ( !isWholePicture() )
         {
             x = (int)Math.round(bi.getWidth()*coords[0][0].doubleValue()/100.0);
@@ -208,23 +207,31 @@ public class Picture {
         return new Rectangle( x, y, width, height );
     }
     /**
-     * Get the format of the picture
-     * @return a mime type
-     * @throws ImageException 
+     * Get the content type of the original image
+     * @return a mime type such as image/jpeg
+     * @throws ImageException if no reader knows the format
      */
-    final String getFormatName() throws ImageException
+    final String getContentType() throws ImageException
     {
         try
         {
             ImageInputStream iis = ImageIO.createImageInputStream(orig);
-            Iterator<ImageReader> iter = ImageIO.getImageReaders(iis);
-            if (!iter.hasNext()) 
+            if ( iis == null )
+                throw new IOException("Can't open "+orig);
+            try
+            {
+                Iterator<ImageReader> iter = ImageIO.getImageReaders(iis);
+                if (!iter.hasNext()) 
+                    throw new IOException("No readers found for "+id);
+                String[] types = iter.next().getOriginatingProvider()
+                    .getMIMETypes();
+                return (types!=null&&types.length>0)?types[0]
+                    :"application/octet-stream";
+            }
+            finally
             {
-                throw new RuntimeException("No readers found for "+id);
+                iis.close();
             }
-            ImageReader reader = iter.next();
-            iis.close();
-            return reader.getFormatName();
         }
         catch ( Exception e )
         {
@@ -232,23 +239,99 @@ public class Picture {
         }
     }
     /**
-     * Convert the input file from anything to png
+     * Get the stage cache key of a stage
+     * @param type a cacheable stage
+     * @return its key
+     */
+    String stageKey( ImageType type )
+    {
+        switch ( type )
+        {
+            case preflight:
+                return StageCache.keyFor( contentHash, type, options, null );
+            case greyscale:
+                return StageCache.keyFor( stageKey(ImageType.preflight), 
+                    type, options, coords );
+            case twotone:
+                return StageCache.keyFor( stageKey(ImageType.greyscale), 
+                    type, options, null );
+            case cleaned:
+                return StageCache.keyFor( stageKey(ImageType.twotone), 
+                    type, options, null );
+            case reconstructed: default:
+                return StageCache.keyFor( stageKey(ImageType.cleaned), 
+                    type, options, null );
+        }
+    }
+    /**
+     * Get a tag for an image that changes whenever the image would, 
+     * without making the image
+     * @param type the stage, or original for the loaded image
+     * @return the original's content hash or the stage's cache key, or 
+     * null if the stage's image must be made to tell
+     * @throws ImageException 
+     */
+    public String getTag( ImageType type ) throws ImageException
+    {
+        if ( type != ImageType.original && type != ImageType.load
+            && !StageCache.isKeyed(type) )
+            return null;
+        if ( orig == null || contentHash == null )
+            load();
+        return ( type == ImageType.original || type == ImageType.load )
+            ?contentHash:stageKey(type);
+    }
+    /**
+     * Try to fetch a stage from the stage cache, loading the original first
+     * @param type the stage wanted
+     * @return true if it was found and is now stored in stages
      * @throws ImageException 
      */
-    final void convertToPng() throws ImageException
+    boolean restoreStage( ImageType type ) throws ImageException
+    {
+        if ( !StageCache.isCacheable(type) )
+            return false;
+        if ( orig == null || !orig.exists() )
+            load();
+        BufferedImage bi = StageCache.get( stageKey(type) );
+        if ( bi != null )
+        {
+            stages.put( type, bi );
+            return true;
+        }
+        return false;
+    }
+    /**
+     * Store a stage just computed and save it in the stage cache
+     * @param type the stage
+     * @param image its image, not to be changed afterwards
+     */
+    void putStage( ImageType type, BufferedImage image )
+    {
+        stages.put( type, image );
+        if ( StageCache.isCacheable(type) && contentHash != null )
+            StageCache.put( stageKey(type), image );
+    }
+    /**
+     * Get the crop rectangle, working it out from preflight if needed
+     * @return the area of the page to be recognised
+     * @throws ImageException 
+     */
+    Rectangle getCropRectangle() throws ImageException
     {
         try
         {
-            BufferedImage bufferedImage = ImageIO.read(orig);
-            File newFile = File.createTempFile(PictureRegistry.PREFIX,
-                PictureRegistry.SUFFIX);
-            ImageIO.write( bufferedImage, "png", newFile );
-            orig.delete();
-            orig = newFile;
+            if ( cropRect == null )
+            {
+                if ( !stages.has(ImageType.preflight) )
+                    convertToPreflight();
+                cropRect = getCropRect();
+            }
+            return cropRect;
         }
-        catch ( Exception e )
+        catch ( IOException e )
         {
-            throw new ImageException(e);
+            throw new ImageException( e );
         }
     }
     int getPropVal( Double prop, int value )
@@ -263,14 +346,21 @@ public class Picture {
     {
         try
         {
+            if ( restoreStage(ImageType.preflight) )
+                return;
             if ( orig == null || !orig.exists() )
                 load();
-            BufferedImage src = ImageIO.read(orig);
-            Preflight pf = new Preflight( src, options );
+            Metrics.Timer t = Metrics.start( Metrics.STAGE, 
+                ImageType.preflight.toString() );
+            // decoded at close to the reduced size, not in full
+            Preflight pf = new Preflight( orig, options );
             BufferedImage bi = pf.reduce();
-            preflighted = File.createTempFile(PictureRegistry.PREFIX,
-                PictureRegistry.SUFFIX);
-            ImageIO.write( bi, "png", preflighted );
+            putStage( ImageType.preflight, bi );
+            t.stop();
+            Metrics.count( "images", 1 );
+            Metrics.count( "image_pixels", 
+                (long)pf.getSourceWidth()*pf.getSourceHeight() );
+            Metrics.count( "preflight_pixels", (long)bi.getWidth()*bi.getHeight() );
         }
         catch ( Exception e )
         {
@@ -285,9 +375,13 @@ public class Picture {
     {
         try
         {
-            if ( preflighted == null || !preflighted.exists() )
+            if ( restoreStage(ImageType.greyscale) )
+                return;
+            if ( !stages.has(ImageType.preflight) )
                 convertToPreflight();
-            BufferedImage png = ImageIO.read(preflighted);
+            Metrics.Timer t = Metrics.start( Metrics.STAGE, 
+                ImageType.greyscale.toString() );
+            BufferedImage png = stages.get(ImageType.preflight);
             BufferedImage grey = new BufferedImage(png.getWidth(), 
                 png.getHeight(), BufferedImage.TYPE_BYTE_GRAY); 
             Graphics g = grey.getGraphics();  
@@ -321,9 +415,8 @@ public class Picture {
                 }
                 g2d.dispose();
             }
-            greyscale = File.createTempFile(PictureRegistry.PREFIX,
-                PictureRegistry.SUFFIX);
-            ImageIO.write( grey, "png", greyscale );
+            putStage( ImageType.greyscale, grey );
+            t.stop();
         }
         catch ( Exception e )
         {
@@ -331,142 +424,25 @@ public class Picture {
         }
     }
     /**
-     * Convert from greyscale to twotone (black and white)
-     * Adapted from OCRopus C++ to Java by desmond
-     * Copyright 2006-2008 Deutsches Forschungszentrum fuer Kuenstliche 
-     * Intelligenz or its licensors, as applicable.
-     * http://ocropus.googlecode.com/svn/trunk/ocr-binarize/ocr-binarize-sauvola.cc
+     * Convert from greyscale to twotone (black and white) using Sauvola's
+     * method (see SauvolaBinariser)
      * @throws Exception 
      */
     public void convertToTwoTone() throws ImageException 
     {
         try
         {
-            int MAXVAL = 256;
+            if ( restoreStage(ImageType.twotone) )
+                return;
             double k = options.getFloat(Options.Keys.binariseThreshold);
-            if ( greyscale == null || !greyscale.exists() )
+            if ( !stages.has(ImageType.greyscale) )
                 convertToGreyscale();
-            BufferedImage grey = ImageIO.read(greyscale);
-            WritableRaster grey_image = grey.getRaster();
-            WritableRaster bin_image = grey.copyData(null);
-            int square = (int)Math.floor(grey_image.getWidth()*0.025);
-            if ( square == 0 )
-                square = Math.min(20,grey_image.getWidth());
-            if ( square > grey_image.getHeight() )
-                square = grey_image.getHeight();
-            int whalf = square>>1;
-            if ( whalf == 0 )
-                throw new Exception("whalf==0!");
-            int image_width  = grey_image.getWidth();
-            int image_height = grey_image.getHeight();
-            // Calculate the integral image, and integral of the squared image
-            // original algorithm ate up too much memory, use floats for longs
-            float[][] integral_image = new float[image_width][image_height];
-            float[][] rowsum_image = new float[image_width][image_height];
-            float[][] integral_sqimg = new float[image_width][image_height];
-            float[][] rowsum_sqimg = new float[image_width][image_height];
-            int xmin,ymin,xmax,ymax;
-            double diagsum,idiagsum,diff,sqdiagsum,sqidiagsum,sqdiff,area;
-            double mean,std,threshold;
-            // for get/setPixel
-            int[] iArray = new int[1];
-            int[] oArray = new int[1];
-            for ( int j=0;j<image_height;j++ )
-            {
-                grey_image.getPixel(0,j,iArray);
-                rowsum_image[0][j] = iArray[0];
-                rowsum_sqimg[0][j] = iArray[0]*iArray[0];
-            }
-            for ( int i=1;i<image_width;i++ )
-            {
-                for ( int j=0;j<image_height;j++)
-                {
-                    grey_image.getPixel(i,j,iArray);
-                    rowsum_image[i][j] = rowsum_image[i-1][j] 
-                        + iArray[0];
-                    rowsum_sqimg[i][j] = rowsum_sqimg[i-1][j] 
-                        + iArray[0]*iArray[0];
-                }
-            }
-            for ( int i=0;i<image_width;i++ )
-            {
-                integral_image[i][0] = rowsum_image[i][0];
-                integral_sqimg[i][0] = rowsum_sqimg[i][0];
-            }
-            for (int i=0; i<image_width; i++)
-            {
-                for ( int j=1; j<image_height; j++ )
-                {
-                    integral_image[i][j] = integral_image[i][j-1] 
-                        + rowsum_image[i][j];
-                    integral_sqimg[i][j] = integral_sqimg[i][j-1] 
-                        + rowsum_sqimg[i][j];
-                }
-            }
-            // compute mean and std.dev. using the integral image
-            for ( int i=0; i<image_width; i++ )
-            {
-                for ( int j=0;j<image_height;j++ )
-                {
-                    xmin = Math.max(0,i-whalf);
-                    ymin = Math.max(0,j-whalf);
-                    xmax = Math.min(image_width-1,i+whalf);
-                    ymax = Math.min(image_height-1,j+whalf);
-                    area = (xmax-xmin+1)*(ymax-ymin+1);
-                    grey_image.getPixel(i,j,iArray);
-                    // area can't be 0 here
-                    if ( area == 0 )
-                        throw new Exception("area can't be 0 here!");
-                    if ( xmin==0 && ymin==0 )
-                    { 
-                        // Point at origin
-                        diff   = integral_image[xmax][ymax];
-                        sqdiff = integral_sqimg[xmax][ymax];
-                    }
-                    else if ( xmin==0 && ymin !=0 )
-                    { 
-                        // first column
-                        diff   = integral_image[xmax][ymax] 
-                            - integral_image[xmax][ymin-1];
-                        sqdiff = integral_sqimg[xmax][ymax] 
-                            - integral_sqimg[xmax][ymin-1];
-                    }
-                    else if ( xmin!=0 && ymin==0 )
-                    { 
-                        // first row
-                        diff   = integral_image[xmax][ymax] 
-                            - integral_image[xmin-1][ymax];
-                        sqdiff = integral_sqimg[xmax][ymax] 
-                            - integral_sqimg[xmin-1][ymax];
-                    }
-                    else
-                    { 
-                        // rest of the image
-                        diagsum    = integral_image[xmax][ymax] 
-                            + integral_image[xmin-1][ymin-1];
-                        idiagsum   = integral_image[xmax][ymin-1] 
-                            + integral_image[xmin-1][ymax];
-                        diff       = diagsum - idiagsum;
-                        sqdiagsum  = integral_sqimg[xmax][ymax] 
-                            + integral_sqimg[xmin-1][ymin-1];
-                        sqidiagsum = integral_sqimg[xmax][ymin-1] 
-                            + integral_sqimg[xmin-1][ymax];
-                        sqdiff     = sqdiagsum - sqidiagsum;
-                    }
-                    mean = diff/area;
-                    std  = Math.sqrt((sqdiff - diff*diff/area)/(area-1));
-                    threshold = mean*(1+k*((std/128)-1));
-                    if (iArray[0] < threshold) 
-                        oArray[0] = 0;
-                    else
-                        oArray[0] = MAXVAL-1;
-                    bin_image.setPixel(i,j,oArray);
-                }
-            }
-            twotone = File.createTempFile(PictureRegistry.PREFIX,
-                PictureRegistry.SUFFIX);
-            grey.setData( bin_image );
-            ImageIO.write( grey, "png", twotone );
+            Metrics.Timer t = Metrics.start( Metrics.STAGE, 
+                ImageType.twotone.toString() );
+            BufferedImage grey = stages.get(ImageType.greyscale);
+            SauvolaBinariser sb = new SauvolaBinariser( grey, k );
+            putStage( ImageType.twotone, sb.binarise() );
+            t.stop();
         }
         catch ( Exception e )
         {
@@ -481,15 +457,21 @@ public class Picture {
     {
         try
         {
-            if ( twotone == null || !twotone.exists() )
+            if ( restoreStage(ImageType.cleaned) )
+                return;
+            if ( !stages.has(ImageType.twotone) )
                 convertToTwoTone();
-            BufferedImage tt = ImageIO.read(twotone);
-            cropRect = getCropRect();
-            RemoveNoise rn = new RemoveNoise( tt, options, cropRect );
+            Rectangle crop = getCropRectangle();
+            Metrics.Timer t = Metrics.start( Metrics.STAGE, 
+                ImageType.cleaned.toString() );
+            // RemoveNoise cleans in place so give it its own copy
+            BufferedImage tt = stages.getCopy(ImageType.twotone);
+            RemoveNoise rn = new RemoveNoise( tt, options, crop );
             rn.clean();
-            cleaned = File.createTempFile(PictureRegistry.PREFIX,
-                PictureRegistry.SUFFIX);
-            ImageIO.write( tt, "png", cleaned );
+            putStage( ImageType.cleaned, tt );
+            t.stop();
+            Metrics.count( "blobs", rn.countBlobs() );
+            Metrics.count( "blobs_removed", rn.countRemoved() );
         }
         catch ( Exception e )
         {
@@ -504,17 +486,26 @@ public class Picture {
     {
         try
         {
-            if ( cleaned == null || !cleaned.exists() )
+            if ( restoreStage(ImageType.reconstructed) )
+                return;
+            if ( !stages.has(ImageType.cleaned) )
                 convertToCleaned();
-            BufferedImage ci = ImageIO.read(cleaned);
-            BufferedImage tt = ImageIO.read(twotone);
-            BufferedImage gi = ImageIO.read(greyscale);
-            ReconstructedImage ri = new ReconstructedImage( ci, tt, gi, 
-                cropRect );
+            // cleaned may have come from the cache without its sources
+            if ( !stages.has(ImageType.twotone) )
+                convertToTwoTone();
+            if ( !stages.has(ImageType.greyscale) )
+                convertToGreyscale();
+            Rectangle crop = getCropRectangle();
+            Metrics.Timer t = Metrics.start( Metrics.STAGE, 
+                ImageType.reconstructed.toString() );
+            // the cleaned image is overwritten; twotone and grey are only read
+            BufferedImage ci = stages.getCopy(ImageType.cleaned);
+            BufferedImage tt = stages.get(ImageType.twotone);
+            BufferedImage gi = stages.get(ImageType.greyscale);
+            ReconstructedImage ri = new ReconstructedImage( ci, tt, gi, crop );
             BufferedImage out = ri.reconstruct(this.options);
-            reconstructed = File.createTempFile(PictureRegistry.PREFIX,
-                PictureRegistry.SUFFIX);
-            ImageIO.write( out, "png", reconstructed );
+            putStage( ImageType.reconstructed, out );
+            t.stop();
         }
         catch ( Exception e )
         {
@@ -529,11 +520,15 @@ public class Picture {
     {
         try
         {
-            if ( reconstructed == null || !reconstructed.exists() )
+            if ( !stages.has(ImageType.reconstructed) )
                 convertToReconstructed();
-            BufferedImage withLines = ImageIO.read(reconstructed);
-            FindLines fl = new FindLines( withLines, 
-                cropRect, text.numWords(), options );
+            Rectangle crop = getCropRectangle();
+            Metrics.Timer t = Metrics.start( Metrics.STAGE, 
+                ImageType.baselines.toString() );
+            // lines are drawn over a copy of the reconstructed image
+            BufferedImage withLines = stages.getCopy(ImageType.reconstructed);
+            FindLines fl = new FindLines( withLines, crop, text.numWords(), 
+                options );
             page = fl.getPage();
             int lsize = page.getLines().size();
             for ( int i=0;i<lsize;i++ )
@@ -543,9 +538,9 @@ public class Picture {
                     System.out.println("before line length is 1");
             }
             ppAverage = fl.getPPAverage();
-            baselines = File.createTempFile(PictureRegistry.PREFIX,
-                PictureRegistry.SUFFIX);
-            ImageIO.write( withLines, "png", baselines );
+            stages.put( ImageType.baselines, withLines );
+            t.stop();
+            Metrics.count( "lines", lsize );
         }
         catch ( Exception e )
         {
@@ -560,16 +555,20 @@ public class Picture {
     {
         try
         {
-            if ( baselines == null || !baselines.exists() )
+            if ( !stages.has(ImageType.baselines) )
                 convertToBaselines();
-            BufferedImage bandw = ImageIO.read(reconstructed);
-            BufferedImage originalImage = ImageIO.read(preflighted);
+            if ( !stages.has(ImageType.preflight) )
+                convertToPreflight();
+            Metrics.Timer t = Metrics.start( Metrics.STAGE, 
+                ImageType.words.toString() );
+            BufferedImage bandw = stages.get(ImageType.reconstructed);
+            BufferedImage originalImage = stages.getCopy(ImageType.preflight);
             FindWords fw = new FindWords( bandw, page, options );
             fw.find( this.text );
             page.drawShapes( originalImage );
-            words = File.createTempFile(PictureRegistry.PREFIX,
-                PictureRegistry.SUFFIX);
-            ImageIO.write( originalImage, "png", words );
+            stages.put( ImageType.words, originalImage );
+            t.stop();
+            Metrics.count( "words", page.countShapes() );
         }
         catch ( Exception e )
         {
@@ -585,10 +584,12 @@ public class Picture {
         if ( this.linked )
         {
             page.resetShapes();
-            words = null;
+            stages.remove( ImageType.words );
         }
-        if ( words == null || !words.exists() )
+        if ( !stages.has(ImageType.words) )
             convertToWords();
+        Metrics.Timer t = Metrics.start( Metrics.STAGE, 
+            ImageType.link.toString() );
         float ppc = page.pixelsPerChar( text.numChars() );
         int[] shapeWidths = page.getShapeWidths();
         int[] wordWidths = text.getWordWidths( ppc );
@@ -598,9 +599,10 @@ public class Picture {
             int[][][] alignments = m.align();
             int[] shapeOffsets = page.getShapeLineStarts();
             Word[] wordObjs = text.getWords( ppc );
-            BufferedImage clean = ImageIO.read( reconstructed );
+            BufferedImage clean = stages.get( ImageType.reconstructed );
             page.align( alignments, shapeOffsets, wordObjs, clean.getRaster() );
             this.linked = true;
+            t.stop();
         }
         catch ( Exception e )
         {
@@ -608,104 +610,60 @@ public class Picture {
         }
     }
     /**
-     * Retrieve the data of a picture file
-     * @return a byte array or null if the file not found
+     * Get an image ready to send, computing its stage if need be
+     * @param type the stage wanted, or original for the loaded image
+     * @return the image, shared with other callers, or null if the 
+     * original has gone. The original is opened for the caller, who 
+     * must close it.
      * @throws ImageException 
      */
-    private byte[] getPicData( File src ) throws ImageException
+    public ImageData getImageData( ImageType type ) throws ImageException
     {
-        byte[] data = new byte[(int)src.length()];
-        try
+        if ( type == ImageType.original || type == ImageType.load )
         {
-            if ( src.exists() )
+            if ( orig == null )
+                load();
+            if ( !orig.exists() )
+                return null;
+            try
             {
-                FileInputStream fis = new FileInputStream(src);
-                fis.read( data );
-                return data;
+                return new ImageData( orig, contentHash, getContentType() );
+            }
+            catch ( IOException e )
+            {
+                throw new ImageException( e );
             }
-            else
-                return null;
         }
-        catch ( Exception e )
+        if ( !stages.has(type) )
         {
-            throw new ImageException(e);
+            switch ( type )
+            {
+                case preflight:
+                    convertToPreflight();
+                    break;
+                case greyscale:
+                    convertToGreyscale();
+                    break;
+                case twotone:
+                    convertToTwoTone();
+                    break;
+                case cleaned:
+                    convertToCleaned();
+                    break;
+                case reconstructed:
+                    convertToReconstructed();
+                    break;
+                case baselines:
+                    convertToBaselines();
+                    break;
+                case words:
+                    convertToWords();
+                    break;
+                default:
+                    throw new ImageException("No image for "+type);
+            }
         }
-    }
-    /**
-     * Read the original image 
-     * @return the image as a byte array
-     */
-    public byte[] getOrigData() throws ImageException
-    {
-        if ( orig == null )
-            load();
-        return getPicData( orig );
-    }
-    public byte[] getPreflightData() throws ImageException
-    {
-        if ( preflighted == null )
-            convertToPreflight();
-        return getPicData( preflighted );
-    }
-    public byte[] getReconstructedData() throws ImageException
-    {
-        if ( reconstructed == null )
-            convertToReconstructed();
-        return getPicData( reconstructed );
-    }
-   /**
-     * Read the cleaned image 
-     * @return the image as a byte array
-     */
-    public byte[] getCleanedData() throws ImageException
-    {
-        if ( cleaned == null )
-            convertToCleaned();
-        return getPicData( cleaned );
-    }
-    /**
-     * Get the greyscale version of the data
-     * @return a byte array being the greyscale rendition of it
-     * @throws ImageException 
-     */
-    public byte[] getGreyscaleData() throws ImageException
-    {
-        if ( greyscale == null )
-            convertToGreyscale();
-        return getPicData( greyscale );
-    }
-    /**
-     * Get a twotone representation of the original
-     * @return a byte array (at 256 bpp)
-     * @throws ImageException 
-     */
-    public byte[] getTwoToneData() throws ImageException
-    {
-        if ( twotone == null )
-            convertToTwoTone();
-        return getPicData( twotone );
-    }
-    /**
-     * Get a baselines representation of the original
-     * @return a byte array (at 256 bpp)
-     * @throws ImageException 
-     */
-    public byte[] getBaselinesData() throws ImageException
-    {
-        if ( baselines == null )
-            convertToBaselines();
-        return getPicData( baselines );
-    }
-    /**
-     * Get a baselines representation of the original
-     * @return a byte array (at 256 bpp)
-     * @throws ImageException 
-     */
-    public byte[] getWordsData() throws ImageException
-    {
-        if ( words == null )
-            convertToWords();
-        return getPicData( words );
+        return stages.getImageData( type );
     }
     /**
      * Get the GeoJson shapes data
@@ -718,7 +676,7 @@ public class Picture {
             if ( !this.linked )
                 this.convertToLinks();
             // do this always, because the user will want it redone
-            BufferedImage image = ImageIO.read(words);
+            BufferedImage image = stages.get(ImageType.words);
 //            double hScale = (coords[2][0].doubleValue()-coords[0][0].doubleValue())/100.0;
 //            double vScale = (coords[3][1].doubleValue()-coords[1][1].doubleValue())/100.0;
 //            return page.toGeoJson( (int)Math.round(hScale*image.getWidth()), 
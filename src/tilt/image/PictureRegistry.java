@@ -19,145 +19,412 @@
 package tilt.image;
 import java.io.File;
 import java.net.InetAddress;
-import java.util.TreeMap;
+import java.util.LinkedHashMap;
 import java.util.HashMap;
-import java.util.Set;
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import org.json.simple.JSONObject;
 import tilt.exception.ImageException;
 import tilt.exception.DoSException;
+import tilt.metrics.Metrics;
 
 /**
- * Keep a track of temporary files and delete them after a set time
+ * Keep a track of pictures and their temporary files. Pictures not used
+ * for FORGET_TIME are dropped, and the least recently used are evicted
+ * whenever the memory or disk held by all pictures exceeds its budget.
+ * A picture being worked on is pinned: a new picture is pinned by its
+ * creator when it registers, and acquire pins one already registered.
+ * Pinned pictures are never dropped, evicted or disposed; each pin must
+ * be given back with release, which counts as a use.
+ * All methods are synchronized on the class so concurrent requests are safe.
+ * The public ones are timed, including any wait for the lock, as
+ * registry metrics.
  * @author desmond
  */
-public class PictureRegistry 
+public class PictureRegistry
 {
     static long FORGET_TIME = 30000;
     static String PREFIX = "TMP";
     static String SUFFIX = ".tmp";
-    static TreeMap<Long,Picture> map;
-    static HashMap<String,Long> urls;
-    static HashMap<InetAddress,String> posters;
+    /** maximum heap held by all stage images (tilt.registry.maxMemory) */
+    static long MAX_MEMORY = Long.getLong("tilt.registry.maxMemory",
+        512L*1024*1024);
+    /** maximum temporary disk space held (tilt.registry.maxDisk) */
+    static long MAX_DISK = Long.getLong("tilt.registry.maxDisk",
+        1024L*1024*1024);
+    /** pictures keyed by url in least-recently-used order */
+    static LinkedHashMap<String,Entry> map;
+    /** last url posted by each poster and when */
+    static HashMap<InetAddress,Entry> posters;
+    /** pictures replaced while possibly still in use, disposed later */
+    static ArrayList<Entry> retired;
+    static Timer sweeper;
+    static long hits;
+    static long misses;
+    static long evictions;
+    /**
+     * A registered picture and the time it was last used
+     */
+    static class Entry
+    {
+        String url;
+        Picture pic;
+        long lastUsed;
+        Entry( String url, Picture pic )
+        {
+            this.url = url;
+            this.pic = pic;
+            this.lastUsed = System.currentTimeMillis();
+        }
+    }
     /**
      * We only need one instance of this class
      */
-    static 
+    static
     {
-        map = new TreeMap<>();
-        urls = new HashMap<>();
+        map = new LinkedHashMap<>(16,0.75f,true);
         posters = new HashMap<>();
+        retired = new ArrayList<>();
         // clean out temp directory
         String tmpDir = System.getProperty("java.io.tmpdir");
         File dir = new File( tmpDir );
         File[] contents = dir.listFiles();
-        for ( int i=0;i<contents.length;i++ )
+        for ( int i=0;contents!=null&&i<contents.length;i++ )
         {
             String name = contents[i].getName();
             if ( name.startsWith(PREFIX)&&name.endsWith(SUFFIX) )
                 contents[i].delete();
         }
+        sweeper = new Timer( "PictureRegistry sweeper", true );
+        sweeper.schedule( new TimerTask() {
+            public void run()
+            {
+                try
+                {
+                    prune();
+                }
+                catch ( Exception e )
+                {
+                    e.printStackTrace( System.out );
+                }
+            }
+        }, FORGET_TIME, FORGET_TIME );
     }
     /**
      * Add a picture to the registry (cache)
      * @param pic the picture object
      * @param url its url or id
-     * @throws DoSException 
+     * @throws DoSException
      */
-    public static void register( Picture pic, String url ) throws DoSException
+    public static void register( Picture pic, String url )
+        throws DoSException
     {
-        String url_id = posters.get(pic.poster);
-        // url_id is the last url poasted by poster
-        if ( url_id != null )
+        Metrics.Timer t = Metrics.start( Metrics.REGISTRY, "register" );
+        try
         {
-            if ( url_id.equals(url) )
-            {
-                Long lastTime = urls.get(url_id);
-                if ( System.currentTimeMillis()-lastTime.longValue() < FORGET_TIME )
-                    throw new DoSException(
-                        "Please wait before uploading the same image");
-            }
+            doRegister( pic, url );
+        }
+        finally
+        {
+            t.stop();
         }
-        Long key = new Long(System.currentTimeMillis());
-        map.put( key, pic );
-        urls.put( url, key );
-        posters.put(pic.poster,url);
+    }
+    private static synchronized void doRegister( Picture pic, String url )
+        throws DoSException
+    {
+        Entry last = posters.get(pic.poster);
+        // last is the last url posted by poster
+        if ( last != null && last.url.equals(url) )
+        {
+            if ( System.currentTimeMillis()-last.lastUsed < FORGET_TIME )
+                throw new DoSException(
+                    "Please wait before uploading the same image");
+        }
+        put( url, pic );
+        posters.put( pic.poster, new Entry(url,pic) );
+        pic.pins++;
+        enforceBudget();
     }
     /**
-     * Remove an entry in a map identified by its value not its key
-     * @param map the map to remove it from
-     * @param value the value
-     * @return return the removed KEY or null if not found
+     * Store a picture under its url, retiring any it replaces
+     * @param url the url of the picture
+     * @param pic the picture
      */
-    private static Object removeByValue( HashMap map, Object value )
+    private static void put( String url, Picture pic )
     {
-        Object key=null;
-        Set keys = map.keySet();
-        Iterator iter = keys.iterator();
-        while ( iter.hasNext() )
+        Entry old = map.put( url, new Entry(url,pic) );
+        if ( old != null && old.pic != pic )
+            retired.add( old );
+    }
+    /**
+     * Remove and dispose of an entry. If its picture is pinned it is only
+     * retired, to be disposed once released and unused.
+     * @param e the entry to dispose of
+     * @throws ImageException
+     */
+    private static void drop( Entry e ) throws ImageException
+    {
+        map.remove( e.url );
+        if ( e.pic.pins > 0 )
+            retired.add( e );
+        else
+            e.pic.dispose();
+    }
+    /**
+     * Evict least recently used pictures until the memory and disk held
+     * are within budget. The most recently used picture and pinned ones 
+     * are always kept.
+     */
+    private static void enforceBudget()
+    {
+        long memory = 0;
+        long disk = 0;
+        for ( Entry e : map.values() )
+        {
+            memory += e.pic.getMemoryBytes();
+            disk += e.pic.getDiskBytes();
+        }
+        Iterator<Entry> iter = map.values().iterator();
+        int left = map.size();
+        while ( left > 1 && (memory > MAX_MEMORY || disk > MAX_DISK) )
         {
-            key = iter.next();
-            Object obj = map.get(key);
-            if ( obj.equals(value) )
+            Entry e = iter.next();
+            left--;
+            if ( e.pic.pins > 0 )
+                continue;
+            memory -= e.pic.getMemoryBytes();
+            disk -= e.pic.getDiskBytes();
+            iter.remove();
+            try
             {
-                map.remove(key);
-                break;
+                e.pic.dispose();
             }
+            catch ( ImageException ie )
+            {
+                ie.printStackTrace( System.out );
+            }
+            evictions++;
         }
-        return key;
     }
     /**
-     * Weed out files that haven't been accessed for some time
+     * Weed out pictures that haven't been accessed for some time
      */
     public static void prune() throws ImageException
     {
-        ArrayList<Long> delenda = new ArrayList<>();
-        Set<Long> keys = map.keySet();
-        Iterator<Long> iter = keys.iterator();
+        Metrics.Timer t = Metrics.start( Metrics.REGISTRY, "prune" );
+        try
+        {
+            doPrune();
+        }
+        finally
+        {
+            t.stop();
+        }
+    }
+    private static synchronized void doPrune() throws ImageException
+    {
+        long now = System.currentTimeMillis();
+        ArrayList<Entry> delenda = new ArrayList<>();
+        for ( Entry e : map.values() )
+        {
+            if ( now-e.lastUsed > FORGET_TIME && e.pic.pins == 0 )
+                delenda.add( e );
+        }
+        for ( int i=0;i<delenda.size();i++ )
+            drop( delenda.get(i) );
+        Iterator<Entry> iter = retired.iterator();
         while ( iter.hasNext() )
         {
-            Long key = iter.next();
-            if ( System.currentTimeMillis()-key.longValue() > FORGET_TIME )
+            Entry e = iter.next();
+            if ( now-e.lastUsed > FORGET_TIME && e.pic.pins == 0 )
             {
-                delenda.add( key );
+                e.pic.dispose();
+                iter.remove();
             }
         }
-        for ( int i=0;i<delenda.size();i++ )
+        Iterator<Map.Entry<InetAddress,Entry>> piter =
+            posters.entrySet().iterator();
+        while ( piter.hasNext() )
         {
-            Long key = delenda.get(i);
-            Picture p = map.get(key);
-            p.dispose();
-            Object removed = removeByValue( urls, key );
-            removeByValue( posters, removed );
+            if ( now-piter.next().getValue().lastUsed > FORGET_TIME )
+                piter.remove();
         }
+        enforceBudget();
     }
     /**
      * Get an individual picture object, using its url as an id
      * @param url the url
      * @return the corresponding Picture object
-     * @throws ImageException 
+     * @throws ImageException
      */
     public static Picture get( String url ) throws ImageException
     {
-        Long key = urls.get( url );
-        if ( key != null )
-            return map.get(key);
+        Metrics.Timer t = Metrics.start( Metrics.REGISTRY, "get" );
+        try
+        {
+            return doGet( url );
+        }
+        finally
+        {
+            t.stop();
+        }
+    }
+    private static synchronized Picture doGet( String url )
+    {
+        Entry e = map.get( url );
+        if ( e != null )
+        {
+            hits++;
+            e.lastUsed = System.currentTimeMillis();
+            return e.pic;
+        }
         else
+        {
+            misses++;
             return null;
+        }
+    }
+    /**
+     * Get a picture and pin it so it is kept until released
+     * @param url the url
+     * @return the pinned Picture or null if there is none
+     * @throws ImageException
+     */
+    public static Picture acquire( String url ) throws ImageException
+    {
+        Metrics.Timer t = Metrics.start( Metrics.REGISTRY, "acquire" );
+        try
+        {
+            return doAcquire( url );
+        }
+        finally
+        {
+            t.stop();
+        }
+    }
+    private static synchronized Picture doAcquire( String url )
+    {
+        Picture pic = doGet( url );
+        if ( pic != null )
+            pic.pins++;
+        return pic;
+    }
+    /**
+     * Give back a pin taken by acquire or by creating a picture. This 
+     * counts as a use, so it is kept for FORGET_TIME from now.
+     * @param pic the picture, or null to do nothing
+     */
+    public static void release( Picture pic )
+    {
+        Metrics.Timer t = Metrics.start( Metrics.REGISTRY, "release" );
+        try
+        {
+            doRelease( pic );
+        }
+        finally
+        {
+            t.stop();
+        }
+    }
+    private static synchronized void doRelease( Picture pic )
+    {
+        if ( pic != null && pic.pins > 0 )
+        {
+            pic.pins--;
+            long now = System.currentTimeMillis();
+            Entry e = map.get( pic.id );
+            if ( e != null && e.pic == pic )
+                e.lastUsed = now;
+            for ( Entry r : retired )
+            {
+                if ( r.pic == pic )
+                    r.lastUsed = now;
+            }
+        }
     }
     /**
      * Update an individual picture object, using its url as an id
      * @param url the url
      * @param pic the new version of the Picture object
-     * @throws ImageException 
+     * @throws ImageException
      */
-    public static void update( String url, Picture pic ) throws ImageException
-    {
-        Long key = urls.get( url );
-        map.remove( key );
-        urls.remove( url );
-        key = new Long(System.currentTimeMillis());
-        map.put( key, pic );
-        urls.put( url, key );
+    public static void update( String url, Picture pic )
+        throws ImageException
+    {
+        Metrics.Timer t = Metrics.start( Metrics.REGISTRY, "update" );
+        try
+        {
+            doUpdate( url, pic );
+        }
+        finally
+        {
+            t.stop();
+        }
+    }
+    private static synchronized void doUpdate( String url, Picture pic )
+    {
+        put( url, pic );
+        enforceBudget();
+    }
+    /**
+     * Drop a picture that is no longer needed and free its resources
+     * @param url the url of the picture
+     * @throws ImageException
+     */
+    public static void remove( String url ) throws ImageException
+    {
+        Metrics.Timer t = Metrics.start( Metrics.REGISTRY, "remove" );
+        try
+        {
+            doRemove( url );
+        }
+        finally
+        {
+            t.stop();
+        }
+    }
+    private static synchronized void doRemove( String url )
+        throws ImageException
+    {
+        Entry e = map.get( url );
+        if ( e != null )
+            drop( e );
+    }
+    /**
+     * Get statistics about the registry's use
+     * @return a JSON object with hit rate, entries, bytes and evictions
+     */
+    public static synchronized JSONObject getStats()
+    {
+        long memory = 0;
+        long disk = 0;
+        for ( Entry e : map.values() )
+        {
+            memory += e.pic.getMemoryBytes();
+            disk += e.pic.getDiskBytes();
+        }
+        JSONObject stats = new JSONObject();
+        stats.put( "entries", map.size() );
+        stats.put( "hits", hits );
+        stats.put( "misses", misses );
+        stats.put( "hitRate", (hits+misses==0)?0.0
+            :(double)hits/(double)(hits+misses) );
+        stats.put( "memoryBytes", memory );
+        stats.put( "diskBytes", disk );
+        stats.put( "maxMemoryBytes", MAX_MEMORY );
+        stats.put( "maxDiskBytes", MAX_DISK );
+        stats.put( "evictions", evictions );
+        stats.put( "retired", retired.size() );
+        int pinned = 0;
+        for ( Entry e : map.values() )
+        {
+            if ( e.pic.pins > 0 )
+                pinned++;
+        }
+        stats.put( "pinned", pinned );
+        return stats;
     }
 }
@@ -21,9 +21,19 @@ import java.awt.image.BufferedImage;
 import tilt.handler.post.Options;
 import java.awt.geom.AffineTransform;
 import java.awt.image.AffineTransformOp;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 
 /**
- * Apply options such as colour, size reduction
+ * Apply options such as colour, size reduction. When reading from a file
+ * the image is decoded with source subsampling, so only every nth pixel of
+ * every nth row of a large scan is ever held in memory, and the rest of
+ * the reduction is done on an image at most twice the size wanted.
  * @author desmond
  */
 public class Preflight 
@@ -32,12 +42,81 @@ public class Preflight
     BufferedImage src;
     Background background;
     int backgroundAverage;
+    /** width and height of the full-resolution image */
+    int srcWidth,srcHeight;
+    /** src holds every step-th pixel of every step-th row of the original */
+    int step;
     public Preflight( BufferedImage ci, Options opts )
     {
         this.opts = opts;
         this.src = ci;
+        this.srcWidth = ci.getWidth();
+        this.srcHeight = ci.getHeight();
+        this.step = 1;
         this.background = new Background();
     }
+    /**
+     * Decode an image file at no more than twice the maximum width. The 
+     * original is kept in the format it came in, and one subsampled read 
+     * is made rather than a read per band: JPEG and PNG readers decode 
+     * from the top again for each region, and the TIFF reader already 
+     * decodes one tile or strip at a time and keeps only the sampled 
+     * pixels, so only the reduced image is ever held in full.
+     * @param file the image file
+     * @param opts the options, giving the maximum width
+     * @throws IOException if the image could not be read
+     */
+    public Preflight( File file, Options opts ) throws IOException
+    {
+        this.opts = opts;
+        this.background = new Background();
+        ImageInputStream iis = ImageIO.createImageInputStream( file );
+        if ( iis == null )
+            throw new IOException("Can't open "+file);
+        try
+        {
+            Iterator<ImageReader> iter = ImageIO.getImageReaders( iis );
+            if ( !iter.hasNext() )
+                throw new IOException("No readers found for "+file);
+            ImageReader reader = iter.next();
+            try
+            {
+                reader.setInput( iis, true, true );
+                srcWidth = reader.getWidth( 0 );
+                srcHeight = reader.getHeight( 0 );
+                int maxWidth = opts.getInt(Options.Keys.maximumWidth);
+                step = Math.max( 1, srcWidth/Math.max(maxWidth,1) );
+                ImageReadParam param = reader.getDefaultReadParam();
+                if ( step > 1 )
+                    param.setSourceSubsampling( step, step, 0, 0 );
+                src = reader.read( 0, param );
+            }
+            finally
+            {
+                reader.dispose();
+            }
+        }
+        finally
+        {
+            iis.close();
+        }
+    }
+    /**
+     * Get the width of the original image
+     * @return its width in pixels before any reduction
+     */
+    public int getSourceWidth()
+    {
+        return srcWidth;
+    }
+    /**
+     * Get the height of the original image
+     * @return its height in pixels before any reduction
+     */
+    public int getSourceHeight()
+    {
+        return srcHeight;
+    }
     /**
      * Apply the optional reductions
      * @return 
@@ -47,14 +126,15 @@ public class Preflight
         BufferedImage after = src;
         boolean blueGreenFilter = opts.getBoolean(Options.Keys.blueGreenFilter);
         int maxWidth = opts.getInt(Options.Keys.maximumWidth);
-        if ( src.getWidth() > maxWidth )
+        if ( srcWidth > maxWidth )
         {
-            float scale = (float)maxWidth/(float)src.getWidth();
-            int w = Math.round(src.getWidth()*scale);
-            int h = Math.round(src.getHeight()*scale);
+            float scale = (float)maxWidth/(float)srcWidth;
+            int w = Math.round(srcWidth*scale);
+            int h = Math.round(srcHeight*scale);
             after = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
             AffineTransform at = new AffineTransform();
-            at.scale(scale, scale);
+            // src is already reduced by step
+            at.scale(scale*step, scale*step);
             AffineTransformOp scaleOp = 
                new AffineTransformOp(at, AffineTransformOp.TYPE_BILINEAR);
             after = scaleOp.filter(src, after);
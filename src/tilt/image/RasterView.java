@@ -0,0 +1,147 @@
+/*
+ * This file is part of TILT.
+ *
+ *  TILT is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  TILT is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with TILT.  If not, see <http://www.gnu.org/licenses/>.
+ *  (c) copyright Desmond Schmidt 2015
+ */
+
+package tilt.image;
+
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+
+/**
+ * Direct access to the bytes of a single-band 8-bit raster. Writes go
+ * straight to the raster's own buffer, so no getPixel/setPixel is needed.
+ * Loops over whole rows should take the row's start from row(y) and step
+ * through data from there, rather than calling get for each pixel.
+ * @author desmond
+ */
+public class RasterView
+{
+    /** the raster's backing array */
+    public final byte[] data;
+    /** index of pixel (0,0) in data */
+    public final int offset;
+    /** distance in data between rows */
+    public final int stride;
+    public final int width;
+    public final int height;
+    /**
+     * Wrap a raster
+     * @param wr a single-band raster backed by a DataBufferByte
+     * @throws IllegalArgumentException if the raster is not 8-bit greyscale
+     */
+    public RasterView( WritableRaster wr )
+    {
+        if ( !isSupported(wr) )
+            throw new IllegalArgumentException(
+                "raster is not single-band 8-bit");
+        DataBuffer db = wr.getDataBuffer();
+        ComponentSampleModel csm = (ComponentSampleModel)wr.getSampleModel();
+        this.data = ((DataBufferByte)db).getData();
+        this.stride = csm.getScanlineStride();
+        this.width = wr.getWidth();
+        this.height = wr.getHeight();
+        this.offset = db.getOffset()+csm.getBandOffsets()[0]
+            -wr.getSampleModelTranslateY()*stride
+            -wr.getSampleModelTranslateX();
+    }
+    /**
+     * Can a raster be wrapped in a RasterView?
+     * @param wr the raster
+     * @return true if it has one 8-bit band backed by a DataBufferByte
+     */
+    public static boolean isSupported( WritableRaster wr )
+    {
+        SampleModel sm = wr.getSampleModel();
+        return sm instanceof ComponentSampleModel && sm.getNumBands() == 1
+            && wr.getDataBuffer() instanceof DataBufferByte
+            && ((ComponentSampleModel)sm).getPixelStride() == 1;
+    }
+    /**
+     * Get the index of a pixel in data
+     * @param x the x-coordinate
+     * @param y the y-coordinate
+     * @return the index of that pixel's byte
+     */
+    public final int index( int x, int y )
+    {
+        return offset+y*stride+x;
+    }
+    /**
+     * Get the index of the first pixel of a row in data. Pixel x of the
+     * row is then at row(y)+x.
+     * @param y the y-coordinate
+     * @return the index of pixel (0,y)
+     */
+    public final int row( int y )
+    {
+        return offset+y*stride;
+    }
+    /**
+     * Does the view cover a pixel?
+     * @param x the x-coordinate
+     * @param y the y-coordinate
+     * @return true if it lies within the raster
+     */
+    public final boolean inside( int x, int y )
+    {
+        return x >= 0 && y >= 0 && x < width && y < height;
+    }
+    /**
+     * Count the black (0) pixels in a rectangle
+     * @param x the left of the rectangle
+     * @param y the top of the rectangle
+     * @param w its width
+     * @param h its height
+     * @return the number of pixels in it that are 0
+     */
+    public final int countBlack( int x, int y, int w, int h )
+    {
+        int count = 0;
+        for ( int v=y;v<y+h;v++ )
+        {
+            int start = offset+v*stride+x;
+            int end = start+w;
+            for ( int i=start;i<end;i++ )
+                if ( data[i] == 0 )
+                    count++;
+        }
+        return count;
+    }
+    /**
+     * Get a pixel value
+     * @param x the x-coordinate
+     * @param y the y-coordinate
+     * @return the value 0..255
+     */
+    public final int get( int x, int y )
+    {
+        return data[offset+y*stride+x]&0xFF;
+    }
+    /**
+     * Set a pixel value
+     * @param x the x-coordinate
+     * @param y the y-coordinate
+     * @param value the value 0..255
+     */
+    public final void set( int x, int y, int value )
+    {
+        data[offset+y*stride+x] = (byte)value;
+    }
+}
@@ -67,49 +67,51 @@ public class ReconstructedImage
         BlurImage bli = new BlurImage( mask, blurRadius );
         BufferedImage blurred = bli.blur();
         WritableRaster wr = ci.getRaster();
-        WritableRaster br = blurred.getRaster();
-        int width = wr.getWidth();
-        int height = wr.getHeight();
-        int[] dArray = new int[width];
-        int[] iArray = new int[width];
-        for ( int y=0;y<height;y++ )
+        RasterView dv = new RasterView( wr );
+        RasterView bv = new RasterView( blurred.getRaster() );
+        for ( int y=0;y<dv.height;y++ )
         {
-            wr.getPixels(0,y, width, 1, dArray);
-            br.getPixels(0,y, width, 1, iArray);
-            for ( int x=0;x<width;x++ )
+            int d = dv.row(y);
+            int b = bv.row(y);
+            for ( int x=0;x<dv.width;x++ )
             {
-                if ( iArray[x] == 255 && dArray[x] == 0 )
-                {
-                    dArray[x] = 255;
-                }
+                if ( bv.data[b+x] == (byte)255 && dv.data[d+x] == 0 )
+                    dv.data[d+x] = (byte)255;
             }
-            wr.setPixels( 0, y, width, 1, dArray );
         }
         ci.setData(wr);
     }
+    /**
+     * Extend each black pixel of the binarised image to the whole region 
+     * of the greyscale that is darker than the local average around it
+     * @param opts the options
+     */
     private void findBlackBlobs( Options opts )
     {
         WritableRaster binarised = ci.getRaster();
         WritableRaster extended = ci.copyData(null);
         Blob.setToWhite(extended);
-        int width = binarised.getWidth();
-        int height = binarised.getHeight();
-        int[] iArray = new int[1];
         this.greyLevel = getAverageGrey();
-        WritableRaster gr = gi.getRaster();
-        for ( int y=0;y<height;y++ )
+        ConnectedComponents cc = new ConnectedComponents( 
+            new RasterView(gi.getRaster()), new RasterView(greyLevel) );
+        boolean[] hit = new boolean[cc.getCount()+1];
+        RasterView bv = new RasterView( binarised );
+        for ( int y=0;y<bv.height;y++ )
+        {
+            for ( int x=0;x<bv.width;x++ )
+            {
+                if ( bv.get(x,y) == 0 )
+                    hit[cc.labelAt(x,y)] = true;
+            }
+        }
+        hit[0] = false;
+        RasterView ev = new RasterView( extended );
+        for ( int y=0;y<ev.height;y++ )
         {
-            for ( int x=0;x<width;x++ )
+            for ( int x=0;x<ev.width;x++ )
             {
-                binarised.getPixel(x,y,iArray);
-                if ( iArray[0] == 0 )
-                {
-                    if ( !isDirty(x,y,extended) )
-                    {
-                        Blob b = new Blob( gr, opts, greyLevel );
-                        b.save( extended, gr, new Point(x,y) );
-                    }
-                }
+                if ( hit[cc.labelAt(x,y)] )
+                    ev.set( x, y, 0 );
             }
         }
         // save the result on top of the original binarised image
@@ -122,19 +124,6 @@ public class ReconstructedImage
         BufferedImage blurred = bi.blur();
         return blurred.getRaster();
     }
-    /**
-     * Is there a matching black pixel at these coordinates in darkRegions?
-     * @param x the point's x-location
-     * @param y the point's y-location
-     * @param darkRegions the raster with dark bits already added
-     * @return true if it is already dark there
-     */
-    private boolean isDirty( int x, int y, WritableRaster darkRegions )
-    {
-        int[] iArray = new int[1];
-        darkRegions.getPixel(x,y,iArray);
-        return iArray[0]==0;
-    }
     /**
      * Remove any blobs introduced by the reconstruction on the borders
      * @param opts the options
@@ -142,9 +131,7 @@ public class ReconstructedImage
     private void cleanBorders( Options opts )
     {
         WritableRaster wr = ci.getRaster();
-        WritableRaster scratch = ci.copyData(null);
-        Blob.setToWhite( scratch );
-        int[] xArray = new int[cropRect.width];
+        Bitmap scratch = new Bitmap( wr.getWidth(), wr.getHeight() );
         // top border
         extendXPixels(wr,scratch,opts,cropRect.y);
         // bottom
@@ -153,17 +140,17 @@ public class ReconstructedImage
         extendYPixels(wr,scratch,opts,cropRect.x);
         // right
         extendYPixels(wr,scratch,opts,cropRect.x+cropRect.width-1);
-        int[] dArray = new int[1];
-        dArray[0] = 255;
+        RasterView dv = new RasterView( wr );
         int yEnd = cropRect.y+cropRect.height;
         int xEnd = cropRect.x+cropRect.width;
         for ( int y=cropRect.y;y<yEnd;y++ )
         {
-            scratch.getPixels(cropRect.x, y, cropRect.width, 1, xArray);
-            for ( int i=0,x=cropRect.x;x<xEnd;x++,i++ )
+            int d = dv.row(y);
+            int x = scratch.nextSetBit( y, cropRect.x );
+            while ( x != -1 && x < xEnd )
             {
-                if ( xArray[i] == 0 )
-                    wr.setPixel(x, y, dArray);
+                dv.data[d+x] = (byte)255;
+                x = scratch.nextSetBit( y, x+1 );
             }
         }
 //        int[] left = new int[cropRect.height];
@@ -179,32 +166,28 @@ public class ReconstructedImage
      * @param opts the program options
      * @param y the y-coordinate of the edge
      */
-    private void extendXPixels( WritableRaster wr, WritableRaster scratch, 
+    private void extendXPixels( WritableRaster wr, Bitmap scratch, 
         Options opts, int y )
     {
-        int[] iArray = new int[cropRect.width];
-        int[] dArray = new int[1];
-        wr.getPixels(cropRect.x,y,cropRect.width,1,iArray);
-        for ( int i=0,j=cropRect.x;i<iArray.length;i++,j++ )
+        RasterView wv = new RasterView( wr );
+        int xEnd = cropRect.x+cropRect.width;
+        for ( int j=cropRect.x;j<xEnd;j++ )
         {
-            scratch.getPixel(j, y, dArray);
-            if ( iArray[i]==0 && dArray[0] != 0 )
+            if ( wv.get(j,y)==0 && !scratch.get(j,y) )
             {
                 Blob b = new Blob(scratch,opts,null);
                 b.expandArea(wr, new Point(j,y));
             }
         }
     }
-    private void extendYPixels( WritableRaster wr, WritableRaster scratch, 
+    private void extendYPixels( WritableRaster wr, Bitmap scratch, 
         Options opts, int x )
     {
-        int[] iArray = new int[cropRect.height-2];
-        int[] dArray = new int[1];
-        wr.getPixels(x,cropRect.y+1,1,iArray.length,iArray);
-        for ( int j=cropRect.y+1,i=0;i<iArray.length;i++,j++ )
+        RasterView wv = new RasterView( wr );
+        int yEnd = cropRect.y+cropRect.height-1;
+        for ( int j=cropRect.y+1;j<yEnd;j++ )
         {
-            scratch.getPixel(x, j, dArray);
-            if ( iArray[i]==0 && dArray[0] != 0 )
+            if ( wv.get(x,j)==0 && !scratch.get(x,j) )
             {
                 Blob b = new Blob(scratch,opts,null);
                 b.expandArea(wr, new Point(x,j));
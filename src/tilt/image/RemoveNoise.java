@@ -24,7 +24,6 @@ import java.awt.Point;
 import java.util.ArrayList;
 import java.awt.geom.Area;
 import javax.imageio.ImageIO;
-import tilt.Utils;
 import tilt.handler.post.Options;
 import java.io.File;
 /**
@@ -35,12 +34,14 @@ public class RemoveNoise
 {
     /** the original image src (B&W) */
     BufferedImage src;
-    /** pixel register of accepted blobs that will be removed*/
-    WritableRaster darkRegions;
-    /** pixel register of rejected blobs */
-    WritableRaster rejectedRegions;
-    /** scratch space needed for Blob */
-    WritableRaster scratch;
+    /** the black blobs of src, labelled once */
+    ConnectedComponents components;
+    /** components accepted as dark regions that will be removed */
+    boolean[] dirty;
+    /** components rejected for removal in the border */
+    boolean[] rejected;
+    /** components whose size has already been tested */
+    boolean[] seen;
     /** the border region, consisting of the outermost thin border, any blobs 
      * found starting there and any long and large blobs in the inner border */
     Border border;
@@ -63,12 +64,14 @@ public class RemoveNoise
         this.speckleStandoff = Math.round(options.getFloat(
             Options.Keys.whiteStandoff)*src.getWidth());
         this.despeckleBody = options.getBoolean(Options.Keys.despeckleBody);
-        darkRegions = src.copyData(null);
-        scratch = src.copyData(null);
-        float average = Blob.setToWhite( darkRegions );
-        Blob.setToWhite( scratch );
+        components = new ConnectedComponents( 
+            new RasterView(src.getRaster()), null );
+        dirty = new boolean[components.getCount()+1];
+        rejected = new boolean[components.getCount()+1];
+        seen = new boolean[components.getCount()+1];
+        float average = (float)components.getTotalBlack()
+            /(float)(src.getWidth()*src.getHeight());
         border = new Border( getBlurred(), average, cropRect );
-        rejectedRegions = Utils.copyRaster( darkRegions, 0, 0 );
         this.rejects = new ArrayList<Blob>();
         speckleSize = Math.round(options.getFloat(Options.Keys.speckleSize)
             *src.getWidth());
@@ -81,6 +84,11 @@ public class RemoveNoise
         try
         {
             dst.createNewFile();
+            WritableRaster darkRegions = src.copyData(null);
+            RasterView dr = new RasterView( darkRegions );
+            for ( int y=0;y<dr.height;y++ )
+                for ( int x=0;x<dr.width;x++ )
+                    dr.set( x, y, dirty[components.labelAt(x,y)]?0:255 );
             BufferedImage bi = new BufferedImage(src.getColorModel(), 
                 darkRegions, false,null);
             ImageIO.write( bi, "png", dst );
@@ -98,17 +106,14 @@ public class RemoveNoise
         BlurImage bi = new BlurImage( src, blurRadius );
         BufferedImage bImage = bi.blur();
         WritableRaster br = bImage.getRaster();
-        int width = br.getWidth();
-        int height = br.getHeight();
-        int[] iArray = new int[width];
+        RasterView rv = new RasterView( br );
         // blackify
-        for ( int y=0;y<height;y++ )
+        for ( int y=0;y<rv.height;y++ )
         {
-            br.getPixels(0,y,width,1,iArray);
-            for ( int x=0;x<width;x++ )
-                if ( iArray[x] != 255 )
-                    iArray[x] = 0;
-            br.setPixels(0,y,width,1,iArray);
+            int end = rv.row(y)+rv.width;
+            for ( int i=rv.row(y);i<end;i++ )
+                if ( rv.data[i] != (byte)255 )
+                    rv.data[i] = 0;
         }
         return br;
     }
@@ -118,52 +123,36 @@ public class RemoveNoise
      */
     private void clearPixels( WritableRaster wr )
     {
-        int[] iArray = new int[1];
-        iArray[0] = 0;
-        for ( int y=0;y<wr.getHeight();y++ )
+        RasterView rv = new RasterView( wr );
+        for ( int y=0;y<rv.height;y++ )
         {
-            for ( int x=0;x<wr.getWidth();x++ )
+            for ( int x=0;x<rv.width;x++ )
             {
-                wr.getPixel(x,y,iArray);
-                if ( iArray[0] == 0 )
-                {
-                    darkRegions.getPixel(x,y,iArray);
-                    if ( iArray[0] == 0 )
-                    {
-                        iArray[0] = 255;
-                        wr.setPixel(x,y,iArray );
-                    }
-                }
+                if ( dirty[components.labelAt(x,y)] )
+                    rv.set( x, y, 255 );
             }
         }
     }
     /**
-     * Is there a matching black pixel at these coordinates in rejectedRegions?
-     * @param loc the point to test
-     * @return true if it is already dark there
-     */
-    private boolean isRejected( Point loc )
-    {
-        int[] iArray =new int[1];
-        rejectedRegions.getPixel(loc.x,loc.y,iArray);
-        return iArray[0]==0;
-    }
-    /**
-     * Is there a matching black pixel at these coordinates in darkRegions?
-     * @param loc the point to test
-     * @return true if it is already dark there
+     * Get the blob for a component the first time it is tested. Later 
+     * tests of the same component see an empty blob.
+     * @param label the component's label
+     * @return a Blob describing it, or an empty one if already seen
      */
-    private boolean isDirty( Point loc )
+    private Blob getBlob( int label )
     {
-        int[] iArray =new int[1];
-        darkRegions.getPixel(loc.x,loc.y,iArray);
-        return iArray[0]==0;
+        if ( seen[label] )
+            return new Blob( null, options, null );
+        else
+        {
+            seen[label] = true;
+            return components.toBlob( label, options );
+        }
     }
     /**
      * Add any formerly rejected blobs that are within the outer border
-     * @param wr the raster of the image
      */
-    private void calcWhiteArea( WritableRaster wr )
+    private void calcWhiteArea()
     {
         Area whiteArea = border.area;
         for ( int i=0;i<rejects.size();i++ )
@@ -172,7 +161,8 @@ public class RemoveNoise
             if ( whiteArea.contains(b.topLeft()) 
                 || whiteArea.contains(b.botRight()) )
             {
-                b.save( darkRegions, wr, b.firstBlackPixel );
+                Point p = b.firstBlackPixel;
+                dirty[components.labelAt(p.x,p.y)] = true;
             }
         }
     }
@@ -282,6 +272,26 @@ public class RemoveNoise
                 return false;
         }
     }
+    /**
+     * How many blobs were found?
+     * @return the number of connected black components
+     */
+    public int countBlobs()
+    {
+        return components.getCount();
+    }
+    /**
+     * How many blobs were removed?
+     * @return the number of components cleared by clean
+     */
+    public int countRemoved()
+    {
+        int removed = 0;
+        for ( int i=1;i<dirty.length;i++ )
+            if ( dirty[i] )
+                removed++;
+        return removed;
+    }
     /**
      * Identify large areas of adjacent black pixels and remove them.
      */
@@ -289,7 +299,6 @@ public class RemoveNoise
     {
         WritableRaster wr = src.getRaster();
         Point loc= new Point(0,0);
-        int[] iArray = new int[1];
         int yEnd = cropRect.height+cropRect.y;
         int xEnd = cropRect.width+cropRect.x;
         for ( int y=cropRect.y;y<yEnd;y++ )
@@ -297,49 +306,39 @@ public class RemoveNoise
             loc.y = y;
             for ( int x=cropRect.x;x<xEnd;x++ )
             {
+                int label = components.labelAt(x,y);
+                if ( label == 0 || dirty[label] )
+                    continue;
                 loc.x = x;
                 if ( border.area.contains(loc) )
                 {
-                    wr.getPixel(x,y,iArray);
-                    if ( iArray[0] == 0 )
+                    if ( !rejected[label] )
                     {
-                        if ( !isDirty(loc) && !isRejected(loc) )
+                        Blob b = getBlob( label );
+                        if ( isInvalidInMargin(b,wr) )
+                            dirty[label] = true;
+                        else
                         {
-                            Blob b = new Blob(scratch,options,null);
-                            b.expandArea( wr, loc );
-                            //System.out.println("blob in margin: b.width="+b.getWidth()+" x="+x+" y="+y);
-                            if ( isInvalidInMargin(b,wr) )
-                            {
-                                b.save(darkRegions,wr,loc);
-                            }
-                            else
-                            {
-                                b.save(rejectedRegions,wr,loc);
-                                rejects.add( b );
-                            }
+                            rejected[label] = true;
+                            if ( b.firstBlackPixel == null )
+                                b.firstBlackPixel = new Point(x,y);
+                            rejects.add( b );
                         }
                     }
                 }
-                else 
+                // an empty blob is never a speckle nor too big
+                else if ( !seen[label] )
                 {
-                    wr.getPixel(x,y,iArray);
-                    if ( iArray[0] == 0 )
-                    {
-                        if ( !isDirty(loc) )
-                        {
-                            Blob b = new Blob(scratch,options,null);
-                            b.expandArea( wr, loc );
-                            if ( (despeckleBody && isSpeckle(b,wr))
-                                || (isTooBig(b)&&b.hasWhiteStandoff(wr,
-                                    speckleStandoff)) )
-                                b.save(darkRegions,wr,loc);
-                        }
-                    }
+                    Blob b = getBlob( label );
+                    if ( (despeckleBody && isSpeckle(b,wr))
+                        || (isTooBig(b)&&b.hasWhiteStandoff(wr,
+                            speckleStandoff)) )
+                        dirty[label] = true;
                 }
             }
         }
         //writeDarkRegions();
-        calcWhiteArea( wr );
+        calcWhiteArea();
         clearPixels( wr );        
     }
 }
@@ -0,0 +1,84 @@
+/*
+ * This file is part of TILT.
+ *
+ *  TILT is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  TILT is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with TILT.  If not, see <http://www.gnu.org/licenses/>.
+ *  (c) copyright Desmond Schmidt 2015
+ */
+
+package tilt.image;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Run a per-row computation over an image in parallel bands of rows on a
+ * shared fork-join pool. The work on each row must be independent.
+ * @author desmond
+ */
+class RowBands
+{
+    /** minimum number of rows processed by one task */
+    static final int BAND_HEIGHT = 64;
+    static ForkJoinPool pool = new ForkJoinPool(
+        Runtime.getRuntime().availableProcessors() );
+    /**
+     * The work to do on a band of rows
+     */
+    interface Body
+    {
+        /**
+         * Process some rows
+         * @param yStart the first row
+         * @param yEnd one beyond the last row
+         */
+        void rows( int yStart, int yEnd );
+    }
+    /**
+     * A band of rows, split in two if it is too big
+     */
+    static class Band extends RecursiveAction
+    {
+        static final long serialVersionUID = 1L;
+        Body body;
+        int yStart;
+        int yEnd;
+        Band( Body body, int yStart, int yEnd )
+        {
+            this.body = body;
+            this.yStart = yStart;
+            this.yEnd = yEnd;
+        }
+        @Override
+        protected void compute()
+        {
+            if ( yEnd-yStart <= BAND_HEIGHT )
+                body.rows( yStart, yEnd );
+            else
+            {
+                int mid = (yStart+yEnd)>>>1;
+                invokeAll( new Band(body,yStart,mid),
+                    new Band(body,mid,yEnd) );
+            }
+        }
+    }
+    /**
+     * Process all the rows of an image and wait till they are done
+     * @param height the number of rows
+     * @param body the work to do on each band
+     */
+    static void run( int height, Body body )
+    {
+        pool.invoke( new Band(body,0,height) );
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * This file is part of TILT.
+ *
+ *  TILT is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  TILT is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with TILT.  If not, see <http://www.gnu.org/licenses/>.
+ *  (c) copyright Desmond Schmidt 2015
+ */
+
+package tilt.image;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import tilt.exception.ImageException;
+
+/**
+ * Binarise a greyscale image using Sauvola's method.
+ * Adapted from OCRopus C++ to Java by desmond
+ * Copyright 2006-2008 Deutsches Forschungszentrum fuer Kuenstliche
+ * Intelligenz or its licensors, as applicable.
+ * http://ocropus.googlecode.com/svn/trunk/ocr-binarize/ocr-binarize-sauvola.cc
+ * <p>The integral image and integral of the squared image are stored row
+ * by row in flat float arrays (8 bytes per pixel). They are accumulated in
+ * exactly the same order as before, so the result does not change. Rows
+ * are then thresholded in parallel bands.</p>
+ * @author desmond
+ */
+public class SauvolaBinariser
+{
+    static final int MAXVAL = 256;
+    BufferedImage grey;
+    double k;
+    int width;
+    int height;
+    int whalf;
+    float[] integral;
+    float[] integralSq;
+    /**
+     * Create a binariser
+     * @param grey the greyscale image (TYPE_BYTE_GRAY)
+     * @param k the binarisation threshold
+     */
+    public SauvolaBinariser( BufferedImage grey, double k )
+    {
+        this.grey = grey;
+        this.k = k;
+        this.width = grey.getWidth();
+        this.height = grey.getHeight();
+    }
+    /**
+     * Build the integral images from the greyscale pixels
+     * @param src the greyscale pixels
+     */
+    private void integrate( RasterView src )
+    {
+        integral = new float[width*height];
+        integralSq = new float[width*height];
+        for ( int y=0;y<height;y++ )
+        {
+            int row = y*width;
+            float rowsum = 0.0f;
+            float rowsumSq = 0.0f;
+            for ( int x=0;x<width;x++ )
+            {
+                int v = src.get(x,y);
+                rowsum = (x==0)?v:rowsum+v;
+                rowsumSq = (x==0)?v*v:rowsumSq+v*v;
+                if ( y == 0 )
+                {
+                    integral[row+x] = rowsum;
+                    integralSq[row+x] = rowsumSq;
+                }
+                else
+                {
+                    integral[row+x] = integral[row-width+x]+rowsum;
+                    integralSq[row+x] = integralSq[row-width+x]+rowsumSq;
+                }
+            }
+        }
+    }
+    /**
+     * Threshold a band of rows
+     * @param src the greyscale pixels
+     * @param dst the binarised pixels
+     * @param yStart the first row
+     * @param yEnd one beyond the last row
+     */
+    void threshold( RasterView src, RasterView dst, int yStart, int yEnd )
+    {
+        int xmin,ymin,xmax,ymax;
+        double diagsum,idiagsum,diff,sqdiagsum,sqidiagsum,sqdiff,area;
+        double mean,std,threshold;
+        float[] ii = integral;
+        float[] is = integralSq;
+        int w = width;
+        for ( int j=yStart;j<yEnd;j++ )
+        {
+            ymin = Math.max(0,j-whalf);
+            ymax = Math.min(height-1,j+whalf);
+            for ( int i=0;i<width;i++ )
+            {
+                xmin = Math.max(0,i-whalf);
+                xmax = Math.min(width-1,i+whalf);
+                area = (xmax-xmin+1)*(ymax-ymin+1);
+                if ( xmin==0 && ymin==0 )
+                {
+                    // Point at origin
+                    diff   = ii[ymax*w+xmax];
+                    sqdiff = is[ymax*w+xmax];
+                }
+                else if ( xmin==0 && ymin !=0 )
+                {
+                    // first column
+                    diff   = ii[ymax*w+xmax] - ii[(ymin-1)*w+xmax];
+                    sqdiff = is[ymax*w+xmax] - is[(ymin-1)*w+xmax];
+                }
+                else if ( xmin!=0 && ymin==0 )
+                {
+                    // first row
+                    diff   = ii[ymax*w+xmax] - ii[ymax*w+xmin-1];
+                    sqdiff = is[ymax*w+xmax] - is[ymax*w+xmin-1];
+                }
+                else
+                {
+                    // rest of the image
+                    diagsum    = ii[ymax*w+xmax] + ii[(ymin-1)*w+xmin-1];
+                    idiagsum   = ii[(ymin-1)*w+xmax] + ii[ymax*w+xmin-1];
+                    diff       = diagsum - idiagsum;
+                    sqdiagsum  = is[ymax*w+xmax] + is[(ymin-1)*w+xmin-1];
+                    sqidiagsum = is[(ymin-1)*w+xmax] + is[ymax*w+xmin-1];
+                    sqdiff     = sqdiagsum - sqidiagsum;
+                }
+                mean = diff/area;
+                std  = Math.sqrt((sqdiff - diff*diff/area)/(area-1));
+                threshold = mean*(1+k*((std/128)-1));
+                if ( src.get(i,j) < threshold )
+                    dst.set( i, j, 0 );
+                else
+                    dst.set( i, j, MAXVAL-1 );
+            }
+        }
+    }
+    /**
+     * Binarise the image
+     * @return a new twotone image with the same colour model as grey
+     * @throws ImageException
+     */
+    public BufferedImage binarise() throws ImageException
+    {
+        WritableRaster greyImage = grey.getRaster();
+        WritableRaster binImage = grey.copyData(null);
+        int square = (int)Math.floor(width*0.025);
+        if ( square == 0 )
+            square = Math.min(20,width);
+        if ( square > height )
+            square = height;
+        whalf = square>>1;
+        if ( whalf == 0 )
+            throw new ImageException("whalf==0!");
+        final RasterView src = new RasterView( greyImage );
+        final RasterView dst = new RasterView( binImage );
+        integrate( src );
+        RowBands.run( height, new RowBands.Body() {
+            public void rows( int yStart, int yEnd )
+            {
+                threshold( src, dst, yStart, yEnd );
+            }
+        });
+        integral = integralSq = null;
+        return new BufferedImage( grey.getColorModel(), binImage, false,
+            null );
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * This file is part of TILT.
+ *
+ *  TILT is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  TILT is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with TILT.  If not, see <http://www.gnu.org/licenses/>.
+ *  (c) copyright Desmond Schmidt 2015
+ */
+
+package tilt.image;
+
+import java.util.Arrays;
+
+/**
+ * Scanline flood fill of 8-connected dark pixels. Whole horizontal spans
+ * are filled at once and only one seed per run in the rows above and
+ * below is pushed, onto a stack of ints. A pixel is dark if it is no
+ * lighter than the black level at that point (0 if there is no level
+ * image), and is filled only if it is not already set in the mark
+ * bitmap. White pixels touching the filled area are hull points, but only
+ * the leftmost and rightmost on each row are kept, since no other can be a
+ * corner of their convex hull. The number of (filled pixel, white pixel)
+ * contacts is also counted.
+ * @author desmond
+ */
+class ScanlineFill
+{
+    RasterView src;
+    RasterView level;
+    Bitmap mark;
+    int width;
+    int height;
+    /** pending seeds as x,y pairs */
+    int[] stack;
+    int top;
+    /** leftmost and rightmost white neighbour on each row from hullTop */
+    int[] hullLeft;
+    int[] hullRight;
+    /** the row of hullLeft[0] and hullRight[0] */
+    int hullTop;
+    /** number of rows from hullTop with white neighbours, or 0 */
+    int hullRows;
+    /** number of (filled pixel, white neighbour) pairs */
+    int hullCount;
+    /** number of pixels filled */
+    int numFilled;
+    int minX,maxX,minY,maxY;
+    /**
+     * Create a fill engine
+     * @param src the image whose dark pixels are to be filled
+     * @param level the local black level or null if 0 everywhere
+     * @param mark the bitmap in which filled pixels are set
+     */
+    ScanlineFill( RasterView src, RasterView level, Bitmap mark )
+    {
+        this.src = src;
+        this.level = level;
+        this.mark = mark;
+        this.width = src.width;
+        this.height = src.height;
+        this.stack = new int[64];
+        this.hullLeft = new int[16];
+        this.hullRight = new int[16];
+    }
+    /**
+     * Is this pixel dark enough to belong to a blob?
+     * @param x the x-coordinate
+     * @param y the y-coordinate
+     * @return true if it is
+     */
+    private boolean isDark( int x, int y )
+    {
+        int black = (level==null)?0:level.get(x,y);
+        return src.get(x,y) <= black;
+    }
+    /**
+     * Can this pixel still be filled?
+     * @param x the x-coordinate
+     * @param y the y-coordinate
+     * @return true if it is dark and not yet marked
+     */
+    private boolean isFillable( int x, int y )
+    {
+        return isDark(x,y) && !mark.get(x,y);
+    }
+    private void push( int x, int y )
+    {
+        if ( top+2 > stack.length )
+        {
+            int[] bigger = new int[stack.length*2];
+            System.arraycopy( stack, 0, bigger, 0, top );
+            stack = bigger;
+        }
+        stack[top++] = x;
+        stack[top++] = y;
+    }
+    /**
+     * Record a white pixel touching the blob
+     * @param x the x-coordinate
+     * @param y the y-coordinate
+     * @param times the number of filled pixels it touches
+     */
+    private void addHull( int x, int y, int times )
+    {
+        if ( hullRows == 0 )
+        {
+            hullTop = y;
+            hullRows = 1;
+            hullLeft[0] = hullRight[0] = x;
+        }
+        else
+        {
+            if ( y < hullTop )
+            {
+                int extra = hullTop-y;
+                ensureRows( hullRows+extra, extra );
+                hullTop = y;
+            }
+            else if ( y >= hullTop+hullRows )
+                ensureRows( y-hullTop+1, 0 );
+            int row = y-hullTop;
+            if ( x < hullLeft[row] )
+                hullLeft[row] = x;
+            if ( x > hullRight[row] )
+                hullRight[row] = x;
+        }
+        hullCount += times;
+    }
+    /**
+     * Make room for more rows of white neighbours. New rows are empty.
+     * @param rows the number of rows needed
+     * @param shift the number of new rows to insert before the old ones
+     */
+    private void ensureRows( int rows, int shift )
+    {
+        int[] left = hullLeft;
+        int[] right = hullRight;
+        if ( rows > left.length )
+        {
+            int len = Math.max( rows, left.length*2 );
+            left = new int[len];
+            right = new int[len];
+        }
+        if ( left != hullLeft || shift > 0 )
+        {
+            System.arraycopy( hullLeft, 0, left, shift, hullRows );
+            System.arraycopy( hullRight, 0, right, shift, hullRows );
+            hullLeft = left;
+            hullRight = right;
+            Arrays.fill( hullLeft, 0, shift, Integer.MAX_VALUE );
+            Arrays.fill( hullRight, 0, shift, -1 );
+        }
+        Arrays.fill( hullLeft, shift+hullRows, rows, Integer.MAX_VALUE );
+        Arrays.fill( hullRight, shift+hullRows, rows, -1 );
+        hullRows = rows;
+    }
+    /**
+     * Look along a row next to a filled span for seeds and hull points
+     * @param lx the leftmost filled pixel of the span
+     * @param rx the rightmost filled pixel of the span
+     * @param y the row to scan (above or below the span)
+     */
+    private void scanRow( int lx, int rx, int y )
+    {
+        int x0 = Math.max(lx-1,0);
+        int x1 = Math.min(rx+1,width-1);
+        boolean inRun = false;
+        for ( int x=x0;x<=x1;x++ )
+        {
+            if ( isDark(x,y) )
+            {
+                if ( !mark.get(x,y) )
+                {
+                    if ( !inRun )
+                    {
+                        push( x, y );
+                        inRun = true;
+                    }
+                }
+                else
+                    inRun = false;
+            }
+            else
+            {
+                inRun = false;
+                addHull( x, y, Math.min(x+1,rx)-Math.max(x-1,lx)+1 );
+            }
+        }
+    }
+    /**
+     * Fill the blob starting at a pixel
+     * @param sx the x-coordinate of the start
+     * @param sy the y-coordinate of the start
+     */
+    void fill( int sx, int sy )
+    {
+        top = 0;
+        hullRows = 0;
+        hullCount = 0;
+        numFilled = 0;
+        minX = minY = Integer.MAX_VALUE;
+        maxX = maxY = -1;
+        if ( !isDark(sx,sy) )
+        {
+            addHull( sx, sy, 1 );
+            return;
+        }
+        push( sx, sy );
+        while ( top > 0 )
+        {
+            int y = stack[--top];
+            int x = stack[--top];
+            if ( !isFillable(x,y) )
+                continue;
+            int lx = x;
+            while ( lx > 0 && isFillable(lx-1,y) )
+                lx--;
+            int rx = x;
+            while ( rx < width-1 && isFillable(rx+1,y) )
+                rx++;
+            mark.set( y, lx, rx+1 );
+            numFilled += rx-lx+1;
+            if ( lx < minX )
+                minX = lx;
+            if ( rx > maxX )
+                maxX = rx;
+            if ( y < minY )
+                minY = y;
+            if ( y > maxY )
+                maxY = y;
+            if ( lx > 0 && !isDark(lx-1,y) )
+                addHull( lx-1, y, 1 );
+            if ( rx < width-1 && !isDark(rx+1,y) )
+                addHull( rx+1, y, 1 );
+            if ( y > 0 )
+                scanRow( lx, rx, y-1 );
+            if ( y < height-1 )
+                scanRow( lx, rx, y+1 );
+        }
+    }
+}
@@ -0,0 +1,365 @@
+/*
+ * This file is part of TILT.
+ *
+ *  TILT is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  TILT is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with TILT.  If not, see <http://www.gnu.org/licenses/>.
+ *  (c) copyright Desmond Schmidt 2015
+ */
+
+package tilt.image;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DataBufferUShort;
+import java.awt.image.WritableRaster;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import tilt.constants.ImageType;
+import tilt.handler.post.Options;
+
+/**
+ * A disk cache of stage images shared by all pictures. Each stage is
+ * keyed by a hash of the key of the stage it was made from, the stage's
+ * name and the values of just those options (and other inputs) it reads.
+ * The chain starts with a hash of the original image's contents, so a
+ * change to a late-stage option leaves the earlier stages' keys alone.
+ * Images are written in the background as gzipped raw rasters and the
+ * least recently used files are deleted when the cache grows too big.
+ * @author desmond
+ */
+public class StageCache
+{
+    static final int MAGIC = 0x54494c54;
+    static final String SUFFIX = ".stage";
+    /** 
+     * the version of the stage algorithms, part of every key: bump it 
+     * whenever a stage's output changes for the same inputs, so images 
+     * made by the old code are no longer found (they age out of the cache)
+     */
+    static final int VERSION = 3;
+    /** set tilt.cache=false to turn the cache off */
+    static boolean ENABLED = Boolean.parseBoolean(
+        System.getProperty("tilt.cache","true"));
+    /** where the images are kept (tilt.cache.dir) */
+    static File DIR = new File( System.getProperty("tilt.cache.dir",
+        System.getProperty("java.io.tmpdir")+File.separator+"tilt-cache") );
+    /** maximum size of the cache on disk (tilt.cache.maxBytes) */
+    static long MAX_BYTES = Long.getLong("tilt.cache.maxBytes",
+        2048L*1024*1024);
+    /** the options each cacheable stage depends on */
+    static EnumMap<ImageType,Options.Keys[]> DEPENDS;
+    static ExecutorService writer;
+    static
+    {
+        DEPENDS = new EnumMap<>(ImageType.class);
+        DEPENDS.put( ImageType.preflight, new Options.Keys[]{
+            Options.Keys.blueGreenFilter, Options.Keys.maximumWidth} );
+        DEPENDS.put( ImageType.greyscale, new Options.Keys[0] );
+        DEPENDS.put( ImageType.twotone, new Options.Keys[]{
+            Options.Keys.binariseThreshold} );
+        DEPENDS.put( ImageType.cleaned, new Options.Keys[]{
+            Options.Keys.whiteStandoff, Options.Keys.despeckleBody,
+            Options.Keys.speckleSize, Options.Keys.minBlackPC,
+            Options.Keys.oddShape, Options.Keys.maxFeatureSize,
+            Options.Keys.maxRoguePixels} );
+        DEPENDS.put( ImageType.reconstructed, new Options.Keys[]{
+            Options.Keys.reconstructBlurRadius} );
+        writer = Executors.newSingleThreadExecutor( new ThreadFactory() {
+            public Thread newThread( Runnable r )
+            {
+                Thread t = new Thread( r, "StageCache writer" );
+                t.setDaemon( true );
+                return t;
+            }
+        });
+    }
+    /**
+     * Convert a digest to hex
+     * @param md the digest to finish
+     * @return its value as a hex string
+     */
+    static String toHex( MessageDigest md )
+    {
+        byte[] hash = md.digest();
+        StringBuilder sb = new StringBuilder();
+        for ( int i=0;i<hash.length;i++ )
+            sb.append( String.format("%02x",hash[i]&0xFF) );
+        return sb.toString();
+    }
+    /**
+     * Does this stage have a key? Its image is then fixed by the key, 
+     * whether or not the cache is on.
+     * @param stage the stage
+     * @return true if keyFor covers everything its output depends on
+     */
+    public static boolean isKeyed( ImageType stage )
+    {
+        return DEPENDS.containsKey(stage);
+    }
+    /**
+     * Can this stage be cached?
+     * @param stage the stage
+     * @return true if its output depends only on the image and options
+     */
+    public static boolean isCacheable( ImageType stage )
+    {
+        return ENABLED && isKeyed(stage);
+    }
+    /**
+     * Work out the key of a stage
+     * @param parentKey the key of the stage it is made from
+     * @param stage the stage
+     * @param opts the picture's options
+     * @param extra any other inputs the stage reads
+     * @return a key that changes whenever anything the stage uses, or the 
+     * code that makes it, changes
+     */
+    public static String keyFor( String parentKey, ImageType stage,
+        Options opts, Object extra )
+    {
+        try
+        {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            StringBuilder sb = new StringBuilder( parentKey );
+            sb.append( '/' );
+            sb.append( VERSION );
+            sb.append( '/' );
+            sb.append( stage.toString() );
+            Options.Keys[] keys = DEPENDS.get( stage );
+            for ( int i=0;keys!=null&&i<keys.length;i++ )
+            {
+                sb.append( ';' );
+                sb.append( keys[i].toString() );
+                sb.append( '=' );
+                sb.append( opts.get(keys[i]) );
+            }
+            if ( extra != null )
+            {
+                sb.append( ';' );
+                sb.append( (extra instanceof Object[])
+                    ?Arrays.deepToString((Object[])extra):extra.toString() );
+            }
+            md.update( sb.toString().getBytes("UTF-8") );
+            return toHex( md );
+        }
+        catch ( Exception e )
+        {
+            // SHA-1 and UTF-8 are always present
+            throw new RuntimeException( e );
+        }
+    }
+    private static File fileFor( String key )
+    {
+        return new File( DIR, key+SUFFIX );
+    }
+    /**
+     * Can we write this image's raster directly?
+     * @param type the BufferedImage type
+     * @return true if new BufferedImage(w,h,type) would recreate it
+     */
+    private static boolean isSupported( int type )
+    {
+        return type != BufferedImage.TYPE_CUSTOM
+            && type != BufferedImage.TYPE_BYTE_BINARY
+            && type != BufferedImage.TYPE_BYTE_INDEXED;
+    }
+    /**
+     * Fetch a stage image from the cache
+     * @param key the stage's key
+     * @return the image or null if it is not cached
+     */
+    public static BufferedImage get( String key )
+    {
+        if ( !ENABLED )
+            return null;
+        File f = fileFor( key );
+        if ( !f.exists() )
+            return null;
+        try ( DataInputStream in = new DataInputStream(new GZIPInputStream(
+            new BufferedInputStream(new FileInputStream(f)),65536)) )
+        {
+            if ( in.readInt() != MAGIC )
+                throw new IOException("not a stage file");
+            int type = in.readInt();
+            int w = in.readInt();
+            int h = in.readInt();
+            BufferedImage bi = new BufferedImage( w, h, type );
+            DataBuffer db = bi.getRaster().getDataBuffer();
+            if ( db instanceof DataBufferByte )
+                in.readFully( ((DataBufferByte)db).getData() );
+            else
+            {
+                int size = db.getSize();
+                int width = (db instanceof DataBufferInt)?4:2;
+                byte[] raw = new byte[size*width];
+                in.readFully( raw );
+                ByteBuffer bb = ByteBuffer.wrap( raw );
+                if ( db instanceof DataBufferInt )
+                    bb.asIntBuffer().get( ((DataBufferInt)db).getData() );
+                else
+                    bb.asShortBuffer().get( ((DataBufferUShort)db).getData() );
+            }
+            f.setLastModified( System.currentTimeMillis() );
+            return bi;
+        }
+        catch ( Exception e )
+        {
+            // damaged or unreadable: just recompute it
+            f.delete();
+            return null;
+        }
+    }
+    /**
+     * Save a stage image in the background. The image must not be changed
+     * afterwards.
+     * @param key the stage's key
+     * @param image the image to save
+     */
+    public static void put( final String key, final BufferedImage image )
+    {
+        if ( !ENABLED || !isSupported(image.getType()) )
+            return;
+        writer.execute( new Runnable() {
+            public void run()
+            {
+                try
+                {
+                    write( key, image );
+                    trim();
+                }
+                catch ( Exception e )
+                {
+                    e.printStackTrace( System.out );
+                }
+            }
+        });
+    }
+    /**
+     * Write a stage image to disk, atomically
+     * @param key the stage's key
+     * @param image the image to save
+     * @throws IOException
+     */
+    private static void write( String key, BufferedImage image )
+        throws IOException
+    {
+        File dest = fileFor( key );
+        if ( dest.exists() )
+            return;
+        DIR.mkdirs();
+        int w = image.getWidth();
+        int h = image.getHeight();
+        int type = image.getType();
+        // make sure the data buffer holds exactly this image
+        BufferedImage compact = new BufferedImage( w, h, type );
+        image.copyData( compact.getRaster() );
+        DataBuffer db = compact.getRaster().getDataBuffer();
+        File tmp = File.createTempFile( key, ".tmp", DIR );
+        try
+        {
+            try ( DataOutputStream out = new DataOutputStream(
+                new CompressingStream(new BufferedOutputStream(
+                new FileOutputStream(tmp),65536))) )
+            {
+                out.writeInt( MAGIC );
+                out.writeInt( type );
+                out.writeInt( w );
+                out.writeInt( h );
+                if ( db instanceof DataBufferByte )
+                    out.write( ((DataBufferByte)db).getData() );
+                else if ( db instanceof DataBufferInt )
+                {
+                    int[] data = ((DataBufferInt)db).getData();
+                    ByteBuffer bb = ByteBuffer.allocate( data.length*4 );
+                    bb.asIntBuffer().put( data );
+                    out.write( bb.array() );
+                }
+                else
+                {
+                    short[] data = ((DataBufferUShort)db).getData();
+                    ByteBuffer bb = ByteBuffer.allocate( data.length*2 );
+                    bb.asShortBuffer().put( data );
+                    out.write( bb.array() );
+                }
+            }
+            Files.move( tmp.toPath(), dest.toPath(),
+                StandardCopyOption.ATOMIC_MOVE );
+        }
+        finally
+        {
+            tmp.delete();
+        }
+    }
+    /**
+     * Delete the least recently used images until the cache fits
+     */
+    private static void trim()
+    {
+        File[] files = DIR.listFiles();
+        if ( files == null )
+            return;
+        long total = 0;
+        for ( int i=0;i<files.length;i++ )
+            total += files[i].length();
+        if ( total <= MAX_BYTES )
+            return;
+        Arrays.sort( files, new Comparator<File>() {
+            public int compare( File a, File b )
+            {
+                return Long.compare( a.lastModified(), b.lastModified() );
+            }
+        });
+        for ( int i=0;i<files.length&&total>MAX_BYTES;i++ )
+        {
+            if ( files[i].getName().endsWith(SUFFIX) )
+            {
+                total -= files[i].length();
+                files[i].delete();
+            }
+        }
+    }
+    /**
+     * Gzip with the fastest setting: the rasters are big and mostly
+     * uniform, so it still shrinks them a lot
+     */
+    static class CompressingStream extends GZIPOutputStream
+    {
+        CompressingStream( OutputStream out ) throws IOException
+        {
+            super( out, 65536 );
+            def.setLevel( Deflater.BEST_SPEED );
+        }
+    }
+}
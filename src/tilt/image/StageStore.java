@@ -0,0 +1,160 @@
+/*
+ * This file is part of TILT.
+ *
+ *  TILT is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  TILT is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with TILT.  If not, see <http://www.gnu.org/licenses/>.
+ *  (c) copyright Desmond Schmidt 2015
+ */
+
+package tilt.image;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.WritableRaster;
+import java.io.ByteArrayOutputStream;
+import java.util.EnumMap;
+import javax.imageio.ImageIO;
+import tilt.constants.ImageType;
+import tilt.exception.ImageException;
+
+/**
+ * Keep the intermediate images of a Picture in memory. Each stage is
+ * stored as a raster and only encoded as PNG when someone asks for it.
+ * @author desmond
+ */
+public class StageStore
+{
+    /** the decoded rasters of each stage */
+    EnumMap<ImageType,BufferedImage> images;
+    /** PNG encodings of stages already requested */
+    EnumMap<ImageType,ImageData> encoded;
+    public StageStore()
+    {
+        this.images = new EnumMap<>(ImageType.class);
+        this.encoded = new EnumMap<>(ImageType.class);
+    }
+    /**
+     * Store the result of a stage, replacing any earlier version
+     * @param type the stage being stored
+     * @param image the image it produced
+     */
+    public synchronized void put( ImageType type, BufferedImage image )
+    {
+        images.put( type, image );
+        encoded.remove( type );
+    }
+    /**
+     * Get the stored image of a stage. Callers must not modify it.
+     * @param type the stage
+     * @return the image or null if not yet computed
+     */
+    public synchronized BufferedImage get( ImageType type )
+    {
+        return images.get( type );
+    }
+    /**
+     * Get a private copy of a stage that the caller may draw on
+     * @param type the stage
+     * @return a copy of the stored image or null if not yet computed
+     */
+    public BufferedImage getCopy( ImageType type )
+    {
+        BufferedImage bi = get( type );
+        return (bi==null)?null:copy(bi);
+    }
+    /**
+     * Has the given stage been computed?
+     * @param type the stage
+     * @return true if it is present
+     */
+    public synchronized boolean has( ImageType type )
+    {
+        return images.containsKey( type );
+    }
+    /**
+     * Forget a stage so that it will be recomputed
+     * @param type the stage to forget
+     */
+    public synchronized void remove( ImageType type )
+    {
+        images.remove( type );
+        encoded.remove( type );
+    }
+    /**
+     * Get the PNG encoding of a stage, encoding it on first request. The
+     * encoding is shared by all callers, who must not change it.
+     * @param type the stage
+     * @return the encoded image or null if the stage is not computed
+     * @throws ImageException
+     */
+    public synchronized ImageData getImageData( ImageType type )
+        throws ImageException
+    {
+        ImageData data = encoded.get( type );
+        if ( data == null )
+        {
+            BufferedImage bi = images.get( type );
+            if ( bi != null )
+            {
+                try
+                {
+                    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                    ImageIO.write( bi, "png", bos );
+                    data = new ImageData( bos.toByteArray() );
+                    encoded.put( type, data );
+                }
+                catch ( Exception e )
+                {
+                    throw new ImageException( e );
+                }
+            }
+        }
+        return data;
+    }
+    /**
+     * Estimate the heap occupied by the stored images and their encodings
+     * @return the number of bytes held
+     */
+    public synchronized long getBytes()
+    {
+        long total = 0;
+        for ( BufferedImage bi : images.values() )
+        {
+            DataBuffer db = bi.getRaster().getDataBuffer();
+            total += (long)db.getSize()*db.getNumBanks()
+                *DataBuffer.getDataTypeSize(db.getDataType())/8;
+        }
+        for ( ImageData data : encoded.values() )
+            total += data.length;
+        return total;
+    }
+    /**
+     * Release all the stored images
+     */
+    public synchronized void clear()
+    {
+        images.clear();
+        encoded.clear();
+    }
+    /**
+     * Make an independent copy of an image with the same colour model
+     * @param bi the image to copy
+     * @return a new image backed by its own raster
+     */
+    public static BufferedImage copy( BufferedImage bi )
+    {
+        WritableRaster wr = bi.copyData( null );
+        return new BufferedImage( bi.getColorModel(), wr,
+            bi.isAlphaPremultiplied(), null );
+    }
+}
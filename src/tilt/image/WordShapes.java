@@ -85,15 +85,16 @@ public class WordShapes
     {
         double total = 0.0;
         int N = 0;
-        for ( ArrayList<Polygon> line : copyOfLines )
+        for ( int k=0;k<copyOfLines.size();k++ )
         {
+            Line l = lines.get( k );
             Polygon last;
             Polygon curr = null;
-            for ( Polygon pg : line )
+            for ( Polygon pg : copyOfLines.get(k) )
             {
                 last = curr;
                 curr = pg;
-                if ( last != null && last.distanceBetween(curr) < bestGap )
+                if ( last != null && l.gapBetween(last,curr) < bestGap )
                     curr = last.merge( curr );
                 else if ( last != null )
                 {
@@ -117,19 +118,20 @@ public class WordShapes
     private HashSet<Integer> getRunts( double minArea )
     {
         HashSet<Integer> runts = new HashSet<>();
-        for ( ArrayList<Polygon> line : copyOfLines )
+        for ( int k=0;k<copyOfLines.size();k++ )
         {
+            Line l = lines.get( k );
             Polygon last;
             Polygon curr = null;
             ArrayList<Polygon> saved = new ArrayList<>();
-            for ( Polygon shape : line )
+            for ( Polygon shape : copyOfLines.get(k) )
             {
                 last = curr;
                 curr = shape;
                 saved.add( curr );
                 if ( last != null )
                 {
-                    double dist = last.distanceBetween(curr);
+                    double dist = l.gapBetween(last,curr);
                     if ( dist < this.bestGap )
                         curr = last.merge(curr);
                     else 
@@ -156,17 +158,18 @@ public class WordShapes
     private double computeGap()
     {
         ArrayList<Double> gaps = new ArrayList<>();
-        for ( ArrayList<Polygon> line : copyOfLines )
+        for ( int k=0;k<copyOfLines.size();k++ )
         {
+            Line l = lines.get( k );
             Polygon last;
             Polygon curr=null;
-            for ( Polygon shape : line )
+            for ( Polygon shape : copyOfLines.get(k) )
             {
                 last = curr;
                 curr = shape;
                 if ( last != null )
                 {
-                    double distance = last.distanceBetween(curr);
+                    double distance = l.gapBetween(last,curr);
                     gaps.add(distance);
                 }
             }
@@ -258,7 +261,7 @@ public class WordShapes
                 curr = shape;
                 if ( last != null )
                 {
-                    double dist = last.distanceBetween(curr);
+                    double dist = l.gapBetween(last,curr);
                     if ( dist < this.bestGap )
                         curr = last.merge(curr);
                     else
@@ -268,6 +271,8 @@ public class WordShapes
             if ( curr != null )
                 replacement.add( curr );
             l.setShapes( replacement );
+            // merged shapes won't be measured again
+            l.clearGaps();
         }
     }
     /**
@@ -0,0 +1,130 @@
+/*
+ * This file is part of TILT.
+ *
+ *  TILT is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  TILT is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with TILT.  If not, see <http://www.gnu.org/licenses/>.
+ *  (c) copyright Desmond Schmidt 2015
+ */
+
+package tilt.image.convexhull;
+
+import tilt.image.geometry.Polygon;
+
+/**
+ * Convex hull of a set of points given as the leftmost and rightmost
+ * x-values on each of a run of rows. Taken row by row the points are
+ * already in (y,x) order, so Andrew's monotone chain builds the hull in
+ * one pass each way without sorting. The result is the same polygon
+ * GrahamScan.toPolygon would make from all the points: no collinear
+ * vertices, ordered by angle about their centroid and closed.
+ * @author desmond
+ */
+public class MonotoneChain
+{
+    /**
+     * Twice the signed area of the triangle a,b,c
+     * @return positive if a-&gt;b-&gt;c turns towards increasing angle
+     */
+    private static long cross( int ax, int ay, int bx, int by, int cx,
+        int cy )
+    {
+        return (long)(bx-ax)*(cy-ay)-(long)(by-ay)*(cx-ax);
+    }
+    /**
+     * Build the convex hull of some row extents
+     * @param top the y-value of the first row
+     * @param left the leftmost x on each row, or Integer.MAX_VALUE if none
+     * @param right the rightmost x on each row, or -1 if none
+     * @param rows the number of rows
+     * @return the hull as a closed polygon (or a single point)
+     */
+    public static Polygon toPolygon( int top, int[] left, int[] right,
+        int rows )
+    {
+        // gather the candidates in (y,x) order
+        int[] xs = new int[rows*2];
+        int[] ys = new int[rows*2];
+        int n = 0;
+        for ( int i=0;i<rows;i++ )
+        {
+            if ( left[i] <= right[i] )
+            {
+                xs[n] = left[i];
+                ys[n++] = top+i;
+                if ( right[i] != left[i] )
+                {
+                    xs[n] = right[i];
+                    ys[n++] = top+i;
+                }
+            }
+        }
+        Polygon pg = new Polygon();
+        if ( n <= 1 )
+        {
+            if ( n == 1 )
+                pg.addPoint( xs[0], ys[0] );
+            return pg;
+        }
+        // one chain down and one back up, dropping collinear points
+        int[] hx = new int[n+1];
+        int[] hy = new int[n+1];
+        int k = 0;
+        for ( int i=0;i<n;i++ )
+        {
+            while ( k >= 2 && cross(hx[k-2],hy[k-2],hx[k-1],hy[k-1],
+                xs[i],ys[i]) <= 0 )
+                k--;
+            hx[k] = xs[i];
+            hy[k++] = ys[i];
+        }
+        for ( int i=n-2,t=k+1;i>=0;i-- )
+        {
+            while ( k >= t && cross(hx[k-2],hy[k-2],hx[k-1],hy[k-1],
+                xs[i],ys[i]) <= 0 )
+                k--;
+            hx[k] = xs[i];
+            hy[k++] = ys[i];
+        }
+        // the last point repeats the first
+        int m = k-1;
+        // start at the vertex with the least angle about the centroid
+        double cx = 0.0;
+        double cy = 0.0;
+        for ( int i=0;i<m;i++ )
+        {
+            cx += hx[i];
+            cy += hy[i];
+        }
+        cx /= m;
+        cy /= m;
+        int first = 0;
+        double least = Double.MAX_VALUE;
+        for ( int i=0;i<m;i++ )
+        {
+            double angle = Math.atan2( hy[i]-cy, hx[i]-cx );
+            if ( angle < least )
+            {
+                least = angle;
+                first = i;
+            }
+        }
+        for ( int i=0;i<m;i++ )
+        {
+            int j = (first+i)%m;
+            pg.addPoint( hx[j], hy[j] );
+        }
+        if ( m > 1 )
+            pg.addPoint( hx[first], hy[first] );
+        return pg;
+    }
+}
@@ -0,0 +1,365 @@
+/*
+ * This file is part of TILT.
+ *
+ *  TILT is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  TILT is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with TILT.  If not, see <http://www.gnu.org/licenses/>.
+ *  (c) copyright Desmond Schmidt 2015
+ */
+
+package tilt.image.geometry;
+
+import com.seisw.util.geom.Clip;
+import com.seisw.util.geom.Poly;
+import com.seisw.util.geom.PolyDefault;
+import com.seisw.util.geom.PolySimple;
+import com.seisw.util.geom.Rectangle2D;
+import org.json.simple.JSONArray;
+
+/**
+ * An immutable polygon kept as two float arrays. Its bounds, area and
+ * convexity are worked out once when it is made, so it can be shared and
+ * measured freely without creating Point objects. The GPC clipper reads
+ * it through a view over the same arrays, and it can be written out as
+ * GeoJSON coordinates.
+ * @author desmond
+ */
+public class Outline
+{
+    final float[] xs;
+    final float[] ys;
+    final float minX,minY,maxX,maxY;
+    final double area;
+    final boolean convex;
+    /**
+     * Create an outline, taking ownership of the arrays
+     * @param xs the x-coordinates of the vertices
+     * @param ys the y-coordinates of the vertices
+     */
+    private Outline( float[] xs, float[] ys )
+    {
+        this.xs = xs;
+        this.ys = ys;
+        float left = Float.MAX_VALUE;
+        float top = Float.MAX_VALUE;
+        float right = -Float.MAX_VALUE;
+        float bottom = -Float.MAX_VALUE;
+        for ( int i=0;i<xs.length;i++ )
+        {
+            left = Math.min( left, xs[i] );
+            top = Math.min( top, ys[i] );
+            right = Math.max( right, xs[i] );
+            bottom = Math.max( bottom, ys[i] );
+        }
+        this.minX = left;
+        this.minY = top;
+        this.maxX = right;
+        this.maxY = bottom;
+        this.area = computeArea();
+        this.convex = computeConvex();
+    }
+    /**
+     * Make an outline of an awt polygon's vertices
+     * @param pg the polygon
+     * @return its outline
+     */
+    public static Outline of( java.awt.Polygon pg )
+    {
+        float[] xs = new float[pg.npoints];
+        float[] ys = new float[pg.npoints];
+        for ( int i=0;i<pg.npoints;i++ )
+        {
+            xs[i] = pg.xpoints[i];
+            ys[i] = pg.ypoints[i];
+        }
+        return new Outline( xs, ys );
+    }
+    /**
+     * Work out the area the same way as Polygon, by summing the
+     * trapezoids under each edge
+     * @return the area, positive if the vertices go counter-clockwise
+     */
+    private double computeArea()
+    {
+        double sum = 0.0;
+        for ( int i=1;i<xs.length;i++ )
+        {
+            float lastX = xs[i-1];
+            float lastY = ys[i-1];
+            if ( lastX < xs[i] )
+                sum -= ((lastY+ys[i])/2) * (xs[i]-lastX);
+            else
+                sum += ((lastY+ys[i])/2) * (lastX-xs[i]);
+        }
+        return sum;
+    }
+    /**
+     * Do all the corners turn the same way?
+     * @return true if they do, ignoring repeated and collinear points
+     */
+    private boolean computeConvex()
+    {
+        int n = xs.length;
+        if ( n > 1 && xs[0] == xs[n-1] && ys[0] == ys[n-1] )
+            n--;
+        int sign = 0;
+        for ( int i=0;i<n;i++ )
+        {
+            int j = (i+1)%n;
+            int k = (i+2)%n;
+            double cross = (double)(xs[j]-xs[i])*(ys[k]-ys[j])
+                -(double)(ys[j]-ys[i])*(xs[k]-xs[j]);
+            if ( cross != 0.0 )
+            {
+                int s = (cross > 0.0)?1:-1;
+                if ( sign == 0 )
+                    sign = s;
+                else if ( s != sign )
+                    return false;
+            }
+        }
+        return true;
+    }
+    /**
+     * How many vertices are there?
+     * @return the number of vertices, including any closing one
+     */
+    public int size()
+    {
+        return xs.length;
+    }
+    /**
+     * Get the x-coordinate of a vertex
+     * @param i the index of the vertex
+     * @return its x-coordinate
+     */
+    public float getX( int i )
+    {
+        return xs[i];
+    }
+    /**
+     * Get the y-coordinate of a vertex
+     * @param i the index of the vertex
+     * @return its y-coordinate
+     */
+    public float getY( int i )
+    {
+        return ys[i];
+    }
+    /**
+     * Get the left edge of the bounding box
+     * @return the smallest x-coordinate
+     */
+    public float getMinX()
+    {
+        return minX;
+    }
+    /**
+     * Get the top edge of the bounding box
+     * @return the smallest y-coordinate
+     */
+    public float getMinY()
+    {
+        return minY;
+    }
+    /**
+     * Get the right edge of the bounding box
+     * @return the largest x-coordinate
+     */
+    public float getMaxX()
+    {
+        return maxX;
+    }
+    /**
+     * Get the bottom edge of the bounding box
+     * @return the largest y-coordinate
+     */
+    public float getMaxY()
+    {
+        return maxY;
+    }
+    /**
+     * Get the area
+     * @return the area as Polygon.area would compute it
+     */
+    public double area()
+    {
+        return area;
+    }
+    /**
+     * Is the outline convex?
+     * @return true if no corner turns against the others
+     */
+    public boolean isConvex()
+    {
+        return convex;
+    }
+    /**
+     * Get a view of the outline for the GPC clipper. The vertices are not
+     * copied; each view only has its own hole and contributing flags,
+     * which are all the clipper changes on its inputs.
+     * @return a single-contour GPC polygon over our arrays
+     */
+    public Poly toPoly()
+    {
+        return new ClipView();
+    }
+    /**
+     * Write the vertices as GeoJSON coordinates
+     * @param width the width to divide x-coordinates by
+     * @param height the height to divide y-coordinates by
+     * @return an array of [x,y] arrays
+     */
+    public JSONArray toGeoJSON( int width, int height )
+    {
+        JSONArray coordinates = new JSONArray();
+        for ( int i=0;i<xs.length;i++ )
+        {
+            JSONArray point = new JSONArray();
+            point.add( xs[i]/(float)width );
+            point.add( ys[i]/(float)height );
+            coordinates.add( point );
+        }
+        return coordinates;
+    }
+    /**
+     * A GPC polygon of one contour that reads the outline's arrays. Like
+     * PolySimple it has no inner polygons. Adding or clearing vertices
+     * first copies them into a PolySimple of its own, so the outline
+     * itself never changes.
+     */
+    class ClipView implements Poly
+    {
+        boolean hole;
+        boolean contributing = true;
+        /** the vertices once they have been changed, else null */
+        PolySimple copy;
+        /**
+         * Stop sharing the outline's vertices
+         * @return the view's own copy of them
+         */
+        private PolySimple own()
+        {
+            if ( copy == null )
+            {
+                copy = new PolySimple();
+                for ( int i=0;i<xs.length;i++ )
+                    copy.add( xs[i], ys[i] );
+            }
+            return copy;
+        }
+        public void clear()
+        {
+            copy = new PolySimple();
+        }
+        public void add( double x, double y )
+        {
+            own().add( x, y );
+        }
+        public void add( com.seisw.util.geom.Point2D p )
+        {
+            own().add( p );
+        }
+        public void add( Poly p )
+        {
+            throw new IllegalStateException(
+                "Cannot add poly to a simple poly.");
+        }
+        public boolean isEmpty()
+        {
+            return getNumPoints() == 0;
+        }
+        public Rectangle2D getBounds()
+        {
+            if ( copy != null )
+                return copy.getBounds();
+            else if ( xs.length == 0 )
+                return new Rectangle2D();
+            else
+                return new Rectangle2D( minX, minY, (double)maxX-minX,
+                    (double)maxY-minY );
+        }
+        public Poly getInnerPoly( int polyIndex )
+        {
+            if ( polyIndex != 0 )
+                throw new IllegalStateException(
+                    "Outline only has one poly");
+            return this;
+        }
+        public int getNumInnerPoly()
+        {
+            return 1;
+        }
+        public int getNumPoints()
+        {
+            return (copy != null)?copy.getNumPoints():xs.length;
+        }
+        public double getX( int index )
+        {
+            return (copy != null)?copy.getX(index):xs[index];
+        }
+        public double getY( int index )
+        {
+            return (copy != null)?copy.getY(index):ys[index];
+        }
+        public boolean isHole()
+        {
+            return hole;
+        }
+        public void setIsHole( boolean isHole )
+        {
+            this.hole = isHole;
+        }
+        public boolean isContributing( int polyIndex )
+        {
+            if ( polyIndex != 0 )
+                throw new IllegalStateException(
+                    "Outline only has one poly");
+            return contributing;
+        }
+        public void setContributing( int polyIndex, boolean contributes )
+        {
+            if ( polyIndex != 0 )
+                throw new IllegalStateException(
+                    "Outline only has one poly");
+            this.contributing = contributes;
+        }
+        public Poly intersection( Poly p )
+        {
+            return Clip.intersection( this, p, PolyDefault.class );
+        }
+        public Poly union( Poly p )
+        {
+            return Clip.union( this, p, PolyDefault.class );
+        }
+        public Poly xor( Poly p )
+        {
+            return Clip.xor( p, this, PolyDefault.class );
+        }
+        public Poly difference( Poly p )
+        {
+            return Clip.difference( this, p, PolyDefault.class );
+        }
+        public double getArea()
+        {
+            if ( copy != null )
+                return copy.getArea();
+            else if ( xs.length < 3 )
+                return 0.0;
+            double sum = 0.0;
+            for ( int i=1;i<xs.length-1;i++ )
+                sum += ((double)xs[i+1]-xs[i])*((double)ys[0]-ys[i])
+                    -((double)xs[0]-xs[i])*((double)ys[i+1]-ys[i]);
+            return 0.5*Math.abs( sum );
+        }
+    }
+}
@@ -23,6 +23,7 @@ import tilt.exception.TiltException;
 import tilt.image.page.Line;
 import tilt.image.convexhull.GrahamScan;
 import tilt.image.convexhull.Point2D;
+import com.seisw.util.geom.Clip;
 import com.seisw.util.geom.PolyDefault;
 import com.seisw.util.geom.Poly;
 
@@ -35,8 +36,12 @@ public class Polygon extends java.awt.Polygon
 {
     static int MOD_ADLER = 65521;
     static float SMALL_NUM = 0.0000000001f;
+    /** allowance for rounding when comparing distances with bounds */
+    static double SLACK = 0.01;
     double computedArea;
     public Point[] points;
+    /** the vertices as float arrays, made when first needed */
+    Outline outline;
     /** line we are attached to */
     Line line;
     Rect bounds;
@@ -305,29 +310,50 @@ public class Polygon extends java.awt.Polygon
     {
         if ( computedArea == -1.0 )
         {
-            ArrayList<Point> points = toPoints();
-            Point curr = null;
-            Point last = null;
-            double area = 0.0;
-            for ( int i=0;i<points.size();i++ )
-            {
-                last = curr;
-                curr = points.get(i);
-                if ( last != null )
-                {
-                    // counterclockwise version
-                    if ( last.x < curr.x )
-                        area -= ((last.y+curr.y)/2) * (curr.x-last.x);
-                    else
-                        area += ((last.y+curr.y)/2) * (last.x-curr.x);
-                }
-            }
-            computedArea = area;
+            computedArea = getOutline().area();
             if ( computedArea < 0 )
-                System.out.println(printList(points));
+                System.out.println(printList(toPoints()));
         }
         return computedArea;
     }
+    /**
+     * Get the vertices as an immutable outline. It is remade after any 
+     * change to the vertices since it was last asked for.
+     * @return the outline
+     */
+    public Outline getOutline()
+    {
+        if ( outline == null )
+            outline = Outline.of( this );
+        return outline;
+    }
+    @Override
+    public void addPoint( int x, int y )
+    {
+        super.addPoint( x, y );
+        outline = null;
+    }
+    @Override
+    public void translate( int deltaX, int deltaY )
+    {
+        super.translate( deltaX, deltaY );
+        outline = null;
+    }
+    @Override
+    public void reset()
+    {
+        super.reset();
+        outline = null;
+    }
+    /**
+     * Must be called after the vertex arrays are changed directly
+     */
+    @Override
+    public void invalidate()
+    {
+        super.invalidate();
+        outline = null;
+    }
     /**
      * test if a polygon is counter-clockwise
      * @return true if it is else false
@@ -352,11 +378,11 @@ public class Polygon extends java.awt.Polygon
      */
     public boolean contains( Polygon pg )
     {
-        ArrayList<Point> pgPoints = pg.toPoints();
+        Point[] pgPoints = pg.vertices();
         boolean pgInside = true;
-        for ( int i=0;i<pgPoints.size();i++ )
+        for ( int i=0;i<pgPoints.length;i++ )
         {
-            if ( !this.contains(pgPoints.get(i)) )
+            if ( !this.contains(pgPoints[i]) )
             {
                 pgInside = false;
                 break;
@@ -569,18 +595,6 @@ public class Polygon extends java.awt.Polygon
         }
         return sb.toString();
     }
-    PolyDefault toPolyDefault()
-    {
-        PolyDefault ps = new PolyDefault();
-        if ( this.points == null )
-            this.toPoints();
-        for ( Point pt : this.points )
-        {
-            ps.add((double)pt.x,(double)pt.y);
-        }
-        return ps;
-    }
-    
     /**
      * Get a new polygon that is the intersection with this one
      * @param pg the polygon that should be intersected with this
@@ -588,9 +602,8 @@ public class Polygon extends java.awt.Polygon
      */
     public Polygon getIntersection( Polygon pg )
     {
-        PolyDefault ps1 = this.toPolyDefault();
-        PolyDefault ps2 = pg.toPolyDefault();
-        Poly res = ps1.intersection(ps2);
+        Poly res = Clip.intersection( pg.getOutline().toPoly(),
+            getOutline().toPoly(), PolyDefault.class );
         Polygon intersection = new Polygon( (PolyDefault)res );
         if ( intersection.npoints > 1 && !intersection.isCounterClockwise() )
         {
@@ -730,25 +743,29 @@ public class Polygon extends java.awt.Polygon
      */
     public boolean intersects( Polygon pg )
     {
-        if ( this.bounds.intersects(pg.bounds) )
+        Outline o1 = getOutline();
+        Outline o2 = pg.getOutline();
+        if ( o1.size() > 0 && o2.size() > 0 && o1.minX <= o2.maxX 
+            && o2.minX <= o1.maxX && o1.minY <= o2.maxY 
+            && o2.minY <= o1.maxY )
         {
-            ArrayList<Point> pts1 = this.toPoints();
+            Point[] pts1 = this.vertices();
             // two polys intersect if at least one point is
             // "inside" the other
-            ArrayList<Point> pts2 = pg.toPoints();
-            for ( int i=0;i<pts1.size();i++ )
-                if ( pg.contains(pts1.get(i)) )
+            Point[] pts2 = pg.vertices();
+            for ( int i=0;i<pts1.length;i++ )
+                if ( pg.contains(pts1[i]) )
                     return true;
-            for ( int i=0;i<pts2.size();i++ )
-                if ( this.contains(pts2.get(i)) )
+            for ( int i=0;i<pts2.length;i++ )
+                if ( this.contains(pts2[i]) )
                     return true;
             // test each edge of this to see if it crosses pg
-            for ( int i=1;i<pts1.size();i++ )
+            for ( int i=1;i<pts1.length;i++ )
             {
-                Segment s1 = new Segment(pts1.get(i-1),pts1.get(i));
-                for ( int j=1;j<pts2.size();j++ )
+                Segment s1 = new Segment(pts1[i-1],pts1[i]);
+                for ( int j=1;j<pts2.length;j++ )
                 {
-                    Segment s2 = new Segment(pts2.get(j-1),pts2.get(j));
+                    Segment s2 = new Segment(pts2[j-1],pts2[j]);
                     if ( s1.intersects(s2) )
                         return true;
                 }
@@ -792,59 +809,157 @@ public class Polygon extends java.awt.Polygon
         return false;
     }
     /**
-     * Get the minimal separation between us and another polygon
+     * Get the minimal separation between us and another polygon. Each
+     * vertex of ours (and the edge ending there) is only measured against
+     * the other polygon if it is nearer to the other's bounding box than 
+     * the smallest distance found so far, and each of its vertices and 
+     * edges likewise, so shapes side by side cost little more than a pass
+     * over their points.
      * @param pg the second polygon
      * @return the smallest distance between segments or vertices of us, Q
      */
     public double distanceBetween( Polygon pg )
     {
-        double minDist = Double.MAX_VALUE;
-        ArrayList<Point> points1 = this.toPoints();
-        ArrayList<Point> points2 = pg.toPoints();
-        Point last1=null,last2=null;
-        for ( int i=0;i<points1.size();i++ )
-        {
-            Point p1 = points1.get(i);
-            for ( int j=0;j<points2.size();j++ )
+        Outline P = this.getOutline();
+        Outline Q = pg.getOutline();
+        if ( P.size() == 0 || Q.size() == 0 )
+            return Double.MAX_VALUE;
+        // start with the vertex of P nearest Q's box to get a low minimum
+        int first = 0;
+        double nearest = Double.MAX_VALUE;
+        for ( int i=0;i<P.size();i++ )
+        {
+            double d = boxDistance( P.xs[i], P.ys[i], P.xs[i], P.ys[i], Q );
+            if ( d < nearest )
             {
-                Point p2 = points2.get(j);
-                double x = Math.abs(p1.x-p2.x);
-                double y = Math.abs(p1.y-p2.y);
-                // distance between vertices
-                float dist = Math.round(Math.hypot(x,y));
-                if ( dist < minDist )
-                    minDist = dist;
-                // distance between p1 and a segment of Q
-                if ( last2 != null )
-                {
-                    Segment seg = new Segment(last2,p2);
-                    double fDist2 = seg.distFromLine( p1 );
-                    if ( fDist2 < minDist )
-                        minDist = fDist2;
-                }
-                // distance between p2 and a segment of P
-                if ( last1 != null )
-                {
-                    Segment seg = new Segment( last1, p1 );
-                    double fDist1 = seg.distFromLine( p2 );
-                    if ( fDist1 < minDist )
-                        minDist = fDist1;
-                }
-                last2 = p2;
+                nearest = d;
+                first = i;
             }
-            last1 = p1;
-        } 
+        }
+        double minDist = distanceFrom( P, Q, first, Double.MAX_VALUE );
+        for ( int i=0;i<P.size();i++ )
+        {
+            if ( i == first )
+                continue;
+            float x1 = P.xs[i];
+            float y1 = P.ys[i];
+            // vertex distances are rounded so may be up to 0.5 smaller
+            double bound = boxDistance( x1, y1, x1, y1, Q )-0.5;
+            if ( i > 0 )
+            {
+                float x0 = P.xs[i-1];
+                float y0 = P.ys[i-1];
+                bound = Math.min( bound, boxDistance(Math.min(x0,x1),
+                    Math.min(y0,y1), Math.max(x0,x1), Math.max(y0,y1), Q) );
+            }
+            if ( bound-SLACK < minDist )
+                minDist = distanceFrom( P, Q, i, minDist );
+        }
         return minDist;
     }
     /**
-     * Remove the duplicate end-points
-     * @param pts an array of polygon points with possible closure
+     * Get the vertices, recomputing them if the polygon has changed
+     * @return the array of points
+     */
+    private Point[] vertices()
+    {
+        if ( this.points == null || this.npoints != this.points.length )
+            toPoints();
+        return this.points;
+    }
+    /**
+     * The distance between two boxes, zero if they overlap
+     * @param x1 left of the first box
+     * @param y1 top of the first box
+     * @param x2 right of the first box
+     * @param y2 bottom of the first box
+     * @param minX left of the second box
+     * @param minY top of the second box
+     * @param maxX right of the second box
+     * @param maxY bottom of the second box
+     * @return the shortest distance between them
      */
-    private void trimPoints( ArrayList<Point> pts )
+    private static double boxDistance( float x1, float y1, float x2, 
+        float y2, float minX, float minY, float maxX, float maxY )
     {
-        if ( pts.size()>1 
-            && pts.get(0).equals(pts.get(pts.size()-1)) )
-            pts.remove(pts.size()-1);
+        double dx = Math.max( 0.0, Math.max(minX-x2,x1-maxX) );
+        double dy = Math.max( 0.0, Math.max(minY-y2,y1-maxY) );
+        return Math.sqrt( dx*dx+dy*dy );
+    }
+    /**
+     * The distance between a box and an outline's bounds
+     * @param x1 left of the box
+     * @param y1 top of the box
+     * @param x2 right of the box
+     * @param y2 bottom of the box
+     * @param o the outline
+     * @return the shortest distance between them
+     */
+    private static double boxDistance( float x1, float y1, float x2, 
+        float y2, Outline o )
+    {
+        return boxDistance( x1, y1, x2, y2, o.minX, o.minY, o.maxX, 
+            o.maxY );
+    }
+    /**
+     * Measure the distances from vertex i of P and the edge ending there to
+     * Q: its rounded distance to Q's vertices, its distance to Q's edges 
+     * and the distance of Q's vertices to that edge of P
+     * @param P the outline of the first polygon
+     * @param Q the outline of the second polygon
+     * @param i the vertex of P
+     * @param minDist the smallest distance found so far
+     * @return the new smallest distance
+     */
+    private static double distanceFrom( Outline P, Outline Q, int i, 
+        double minDist )
+    {
+        float x1 = P.xs[i];
+        float y1 = P.ys[i];
+        boolean hasLast = i > 0;
+        float lastX1 = hasLast?P.xs[i-1]:0.0f;
+        float lastY1 = hasLast?P.ys[i-1]:0.0f;
+        float lastX2 = hasLast?Q.xs[Q.size()-1]:0.0f;
+        float lastY2 = hasLast?Q.ys[Q.size()-1]:0.0f;
+        for ( int j=0;j<Q.size();j++ )
+        {
+            float x2 = Q.xs[j];
+            float y2 = Q.ys[j];
+            double x = Math.abs(x1-x2);
+            double y = Math.abs(y1-y2);
+            // distance between vertices
+            if ( x-0.5-SLACK < minDist && y-0.5-SLACK < minDist )
+            {
+                float dist = Math.round(Math.hypot(x,y));
+                if ( dist < minDist )
+                    minDist = dist;
+            }
+            // distance between p1 and a segment of Q
+            if ( hasLast && boxDistance(x1,y1,x1,y1,
+                Math.min(lastX2,x2),Math.min(lastY2,y2),
+                Math.max(lastX2,x2),Math.max(lastY2,y2))
+                -SLACK < minDist )
+            {
+                double fDist2 = Segment.distFromLine( lastX2, lastY2, 
+                    x2, y2, x1, y1 );
+                if ( fDist2 < minDist )
+                    minDist = fDist2;
+            }
+            // distance between p2 and a segment of P
+            if ( hasLast && boxDistance(x2,y2,x2,y2,
+                Math.min(lastX1,x1),Math.min(lastY1,y1),
+                Math.max(lastX1,x1),Math.max(lastY1,y1))
+                -SLACK < minDist )
+            {
+                double fDist1 = Segment.distFromLine( lastX1, lastY1, 
+                    x1, y1, x2, y2 );
+                if ( fDist1 < minDist )
+                    minDist = fDist1;
+            }
+            lastX2 = x2;
+            lastY2 = y2;
+        }
+        return minDist;
     }
     /**
      * Merge two polygons into a minimal convex single polygon
@@ -853,25 +968,30 @@ public class Polygon extends java.awt.Polygon
      */
     public Polygon merge( Polygon pg2 )
     {
-        ArrayList<Point> points1 = this.toPoints();
-        ArrayList<Point> points2 = pg2.toPoints();
-        trimPoints(points1);
-        trimPoints(points2);
-        Point2D[] points3 = new Point2D[points1.size()+points2.size()];
-        int j = 0;
-        for ( int i=0;i<points1.size();i++ )
-        {
-            Point pt = points1.get(i);
-            points3[j++] = new Point2D(pt.x,pt.y);
-        }
-        for ( int i=0;i<points2.size();i++ )
-        {
-            Point pt = points2.get(i);
-            points3[j++] = new Point2D(pt.x,pt.y);
-        }
+        Outline o1 = this.getOutline();
+        Outline o2 = pg2.getOutline();
+        int n1 = openSize( o1 );
+        int n2 = openSize( o2 );
+        Point2D[] points3 = new Point2D[n1+n2];
+        for ( int i=0;i<n1;i++ )
+            points3[i] = new Point2D( o1.xs[i], o1.ys[i] );
+        for ( int i=0;i<n2;i++ )
+            points3[n1+i] = new Point2D( o2.xs[i], o2.ys[i] );
         GrahamScan gs = new GrahamScan( points3 );
         return gs.toPolygon();
     }
+    /**
+     * Count the vertices of an outline without a duplicate end-point
+     * @param o the outline, which may be closed
+     * @return the number of distinct vertices at its ends
+     */
+    private static int openSize( Outline o )
+    {
+        int n = o.size();
+        if ( n > 1 && o.xs[0] == o.xs[n-1] && o.ys[0] == o.ys[n-1] )
+            n--;
+        return n;
+    }
     public static void main(String[] args)
     {
         //Test.runTests();
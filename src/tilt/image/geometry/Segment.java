@@ -144,36 +144,50 @@ public class Segment
      */
     public double distFromLine( Point c ) 
     {
-        Point a = this.p0;
-        Point b = this.p1;
-        float r_numerator = (c.x-a.x)*(b.x-a.x) + (c.y-a.y)*(b.y-a.y);
-        float r_denomenator = (b.x-a.x)*(b.x-a.x) + (b.y-a.y)*(b.y-a.y);
+        return distFromLine( p0, p1, c );
+    }
+    /**
+     * Compute the distance a point is from a line segment without making
+     * a Segment object
+     * @param a the start of the segment
+     * @param b the end of the segment
+     * @param c the point off the line
+     * @return the distance in fractional pixels
+     */
+    public static double distFromLine( Point a, Point b, Point c ) 
+    {
+        return distFromLine( a.x, a.y, b.x, b.y, c.x, c.y );
+    }
+    /**
+     * Compute the distance a point is from a line segment given only
+     * their coordinates
+     * @param ax the x-coordinate of the start of the segment
+     * @param ay the y-coordinate of the start of the segment
+     * @param bx the x-coordinate of the end of the segment
+     * @param by the y-coordinate of the end of the segment
+     * @param cx the x-coordinate of the point off the line
+     * @param cy the y-coordinate of the point off the line
+     * @return the distance in fractional pixels
+     */
+    public static double distFromLine( float ax, float ay, float bx, 
+        float by, float cx, float cy ) 
+    {
+        float r_numerator = (cx-ax)*(bx-ax) + (cy-ay)*(by-ay);
+        float r_denomenator = (bx-ax)*(bx-ax) + (by-ay)*(by-ay);
         float r = r_numerator / r_denomenator;
-        float px = a.x + r*(b.x-a.x);
-        float py = a.y + r*(b.y-a.y);  
-        float s =  ((a.y-c.y)*(b.x-a.x)-(a.x-c.x)*(b.y-a.y) ) / r_denomenator;
+        float s =  ((ay-cy)*(bx-ax)-(ax-cx)*(by-ay) ) / r_denomenator;
         double distanceLine = Math.abs(s)*Math.sqrt(r_denomenator);
         double distanceSegment;
-        float xx = px;
-        float yy = py;
         if ( (r >= 0) && (r <= 1) )
             distanceSegment = distanceLine;
         else
         {
-            float dist1 = (c.x-a.x)*(c.x-a.x) + (c.y-a.y)*(c.y-a.y);
-            float dist2 = (c.x-b.x)*(c.x-b.x) + (c.y-b.y)*(c.y-b.y);
+            float dist1 = (cx-ax)*(cx-ax) + (cy-ay)*(cy-ay);
+            float dist2 = (cx-bx)*(cx-bx) + (cy-by)*(cy-by);
             if (dist1 < dist2)
-            {
-                xx = a.x;
-                yy = a.y;
                 distanceSegment = Math.sqrt(dist1);
-            }
             else
-            {
-                xx = b.x;
-                yy = b.y;
                 distanceSegment = Math.sqrt(dist2);
-            }
         }
         return distanceSegment;
     }
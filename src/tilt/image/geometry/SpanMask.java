@@ -0,0 +1,151 @@
+/*
+ * This file is part of TILT.
+ *
+ *  TILT is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  TILT is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with TILT.  If not, see <http://www.gnu.org/licenses/>.
+ *  (c) copyright Desmond Schmidt 2015
+ */
+
+package tilt.image.geometry;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+
+/**
+ * The pixels inside a polygon, as runs of x-values on each row. Testing a
+ * pixel is then a lookup instead of a walk around the polygon's edges. The
+ * runs are worked out from the same crossing test java.awt.Polygon uses,
+ * so a pixel is in the mask exactly when contains(x,y) would say so.
+ * @author desmond
+ */
+public class SpanMask
+{
+    /** the polygon's bounding box */
+    Rectangle bounds;
+    /** index into spans of the first span of each row, and one past */
+    int[] rowStarts;
+    /** start (inclusive) and end (exclusive) x of each span */
+    int[] spans;
+    /**
+     * Rasterise a polygon
+     * @param pg the polygon
+     */
+    public SpanMask( java.awt.Polygon pg )
+    {
+        bounds = pg.getBounds();
+        rowStarts = new int[bounds.height+1];
+        spans = new int[Math.max(2,bounds.height*2)];
+        int n = pg.npoints;
+        int[] thresholds = new int[Math.max(n,1)];
+        int nSpans = 0;
+        int left = bounds.x;
+        int right = bounds.x+bounds.width;
+        for ( int row=0;row<bounds.height;row++ )
+        {
+            rowStarts[row] = nSpans;
+            if ( n <= 2 )
+                continue;
+            int y = bounds.y+row;
+            int nt = 0;
+            int lastx = pg.xpoints[n-1];
+            int lasty = pg.ypoints[n-1];
+            for ( int i=0;i<n;i++ )
+            {
+                int curx = pg.xpoints[i];
+                int cury = pg.ypoints[i];
+                if ( cury != lasty )
+                {
+                    int t = threshold( curx, cury, lastx, lasty, y );
+                    if ( t != Integer.MIN_VALUE )
+                        thresholds[nt++] = t;
+                }
+                lastx = curx;
+                lasty = cury;
+            }
+            // x is inside if an odd number of thresholds are above it
+            Arrays.sort( thresholds, 0, nt );
+            for ( int i=1-(nt&1);i<nt;i+=2 )
+            {
+                int start = (i==0)?left:Math.max(left,thresholds[i-1]);
+                int end = Math.min(right,thresholds[i]);
+                if ( start < end )
+                {
+                    if ( nSpans+2 > spans.length )
+                        spans = Arrays.copyOf( spans, spans.length*2 );
+                    spans[nSpans++] = start;
+                    spans[nSpans++] = end;
+                }
+            }
+        }
+        rowStarts[bounds.height] = nSpans;
+    }
+    /**
+     * Find where an edge stops counting as a crossing on a row
+     * @param curx the x of the edge's end
+     * @param cury the y of the edge's end
+     * @param lastx the x of the edge's start
+     * @param lasty the y of the edge's start
+     * @param y the row
+     * @return the edge is crossed by x-values less than this, or
+     * Integer.MIN_VALUE if the row misses the edge
+     */
+    private static int threshold( int curx, int cury, int lastx, int lasty,
+        int y )
+    {
+        int leftx = Math.min( curx, lastx );
+        int maxx = Math.max( curx, lastx );
+        double xa, test2;
+        if ( cury < lasty )
+        {
+            if ( y < cury || y >= lasty )
+                return Integer.MIN_VALUE;
+            xa = curx;
+            test2 = y-cury;
+        }
+        else
+        {
+            if ( y < lasty || y >= cury )
+                return Integer.MIN_VALUE;
+            xa = lastx;
+            test2 = y-lasty;
+        }
+        double k = test2 / (lasty-cury) * (lastx-curx);
+        // first x for which x-xa < k fails, exactly as java.awt.Polygon
+        int t = (int)Math.ceil( xa+k );
+        while ( t-1-xa >= k )
+            t--;
+        while ( t-xa < k )
+            t++;
+        return Math.min( maxx, Math.max(leftx,t) );
+    }
+    /**
+     * Is a pixel inside the polygon?
+     * @param x the x-position
+     * @param y the y-position
+     * @return true if it is
+     */
+    public boolean contains( int x, int y )
+    {
+        int row = y-bounds.y;
+        if ( row < 0 || row >= bounds.height )
+            return false;
+        for ( int i=rowStarts[row];i<rowStarts[row+1];i+=2 )
+        {
+            if ( x < spans[i] )
+                return false;
+            else if ( x < spans[i+1] )
+                return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * This file is part of TILT.
+ *
+ *  TILT is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  TILT is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with TILT.  If not, see <http://www.gnu.org/licenses/>.
+ *  (c) copyright Desmond Schmidt 2015
+ */
+
+package tilt.image.matchup;
+
+import tilt.exception.MatrixException;
+
+/**
+ * Produce the pairs of left and right y-positions in order of increasing
+ * difference, without making all of them first. Because both lists are
+ * sorted, the left-hand positions closest to any one on the right are
+ * found by working outwards from where it would go in the left-hand list.
+ * So each right-hand position has two windows, one moving up and one down,
+ * and only the next pair from each window is queued. A pair is packed into
+ * a long as its difference, then the right and left indices, so ties are
+ * broken by position.
+ * @author desmond
+ */
+class CandidateQueue
+{
+    static final int BITS = 20;
+    static final long MASK = (1L<<BITS)-1;
+    /** left-hand y-positions, sorted */
+    int[] list1;
+    /** right-hand y-positions, sorted */
+    int[] list2;
+    /** binary min-heap of packed pairs */
+    long[] heap;
+    int size;
+    /**
+     * Create a queue of all the pairs of two lists
+     * @param list1 the sorted left-hand list
+     * @param list2 the sorted right-hand list
+     * @throws MatrixException if the lists are too long to pack
+     */
+    CandidateQueue( int[] list1, int[] list2 ) throws MatrixException
+    {
+        if ( list1.length > MASK || list2.length > MASK )
+            throw new MatrixException("too many lines to match up");
+        this.list1 = list1;
+        this.list2 = list2;
+        this.heap = new long[Math.max(2*list2.length,1)];
+        for ( int y=0;y<list2.length;y++ )
+        {
+            int x = lowerBound( list1, list2[y] );
+            if ( x < list1.length )
+                push( x, y );
+            if ( x > 0 )
+                push( x-1, y );
+        }
+    }
+    /**
+     * Find the first element of a sorted list not less than a value
+     * @param list the sorted list
+     * @param value the value to look for
+     * @return the index of the first element >= value or list.length
+     */
+    static int lowerBound( int[] list, int value )
+    {
+        int top = 0;
+        int bot = list.length;
+        while ( top < bot )
+        {
+            int mid = (top+bot)>>>1;
+            if ( list[mid] < value )
+                top = mid+1;
+            else
+                bot = mid;
+        }
+        return top;
+    }
+    /**
+     * Queue a pair
+     * @param x the index into list1
+     * @param y the index into list2
+     */
+    private void push( int x, int y )
+    {
+        long diff = Math.abs(list2[y]-list1[x]);
+        long key = (diff<<(2*BITS))|((long)y<<BITS)|x;
+        int i = size++;
+        while ( i > 0 )
+        {
+            int parent = (i-1)>>>1;
+            if ( heap[parent] <= key )
+                break;
+            heap[i] = heap[parent];
+            i = parent;
+        }
+        heap[i] = key;
+    }
+    /**
+     * Are there any pairs left?
+     * @return true if there are none
+     */
+    boolean isEmpty()
+    {
+        return size == 0;
+    }
+    /**
+     * Take off the pair with the least difference and queue the next pair
+     * in its window
+     * @return the packed pair
+     */
+    long pop()
+    {
+        long min = heap[0];
+        long last = heap[--size];
+        int i = 0;
+        int half = size>>>1;
+        while ( i < half )
+        {
+            int child = 2*i+1;
+            if ( child+1 < size && heap[child+1] < heap[child] )
+                child++;
+            if ( last <= heap[child] )
+                break;
+            heap[i] = heap[child];
+            i = child;
+        }
+        if ( size > 0 )
+            heap[i] = last;
+        int x = x( min );
+        int y = y( min );
+        if ( list1[x] >= list2[y] )
+        {
+            if ( x+1 < list1.length )
+                push( x+1, y );
+        }
+        else if ( x > 0 )
+            push( x-1, y );
+        return min;
+    }
+    /**
+     * Get the left-hand index of a pair
+     * @param key the packed pair
+     * @return its index into list1
+     */
+    static int x( long key )
+    {
+        return (int)(key&MASK);
+    }
+    /**
+     * Get the right-hand index of a pair
+     * @param key the packed pair
+     * @return its index into list2
+     */
+    static int y( long key )
+    {
+        return (int)((key>>>BITS)&MASK);
+    }
+    /**
+     * Get the difference between the y-positions of a pair
+     * @param key the packed pair
+     * @return the absolute difference
+     */
+    static int diff( long key )
+    {
+        return (int)(key>>>(2*BITS));
+    }
+}
@@ -18,16 +18,14 @@
 
 package tilt.image.matchup;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.Arrays;
 import tilt.exception.MatrixException;
-import java.util.Iterator;
 import tilt.handler.post.Options;
 /**
  * A rewrite of the line-joining algorithm.We use a greedy approach. 
- * Differences between all points on the left and right are stored on a 
- * minimum priority queue, and those with the smallest differences are 
- * joined first.
+ * Pairs of points on the left and right are taken in order of increasing
+ * difference from a CandidateQueue, and those with the smallest 
+ * differences are joined first.
  * @author desmond
  */
 public class Matrix 
@@ -40,51 +38,66 @@ public class Matrix
     int M;
     /** length of list1 */
     int N;
-    /** map of unique links between list1 and list2 y-positions */
-    HashSet<QueueItem> uniqueMap;
-    /** list1 line positions */
-    ArrayList<Integer> lhs;
-    /** list2 y-positions */
-    ArrayList<Integer> rhs;
+    /** list1 y-positions of the joins, sorted */
+    int[] lhs;
+    /** list2 y-positions of the joins, sorted (they never cross) */
+    int[] rhs;
+    /** list1 indices of the joins in the same order */
+    int[] joinX;
+    /** list2 indices of the joins in the same order */
+    int[] joinY;
+    /** number of joins made */
+    int nJoins;
     /** running total of line diffs */
     float averageLineDepth;
     Options options;
     /**
-     * Does the proposed join between lhs and rhs cross any other lines?
-     * @param qi the item to test
-     * @return true if it doesn't cross an existing line
+     * Where would a list1 y-position go among the joins?
+     * @param value the y-position
+     * @return the index of the first join with lhs >= value
      */
-    private boolean noCrossover( QueueItem qi )
+    private int joinIndex( int value )
     {
-        Iterator<QueueItem> iter = uniqueMap.iterator();
-        while ( iter.hasNext() )
+        int top = 0;
+        int bot = nJoins;
+        while ( top < bot )
         {
-            QueueItem item = iter.next();
-            int lDiff = list1[qi.x]-list1[item.x];
-            int rDiff = list2[qi.y]-list2[item.y];
-            if ( (lDiff<0&&rDiff>0)||(lDiff>0&&rDiff<0) )
-                return false;
+            int mid = (top+bot)>>>1;
+            if ( lhs[mid] < value )
+                top = mid+1;
+            else
+                bot = mid;
         }
-        return true;
+        return top;
+    }
+    /**
+     * Does the proposed join between lhs and rhs cross any other lines? 
+     * Since the joins don't cross each other only the nearest one above 
+     * and below on the left need be tested.
+     * @param x the index into list1
+     * @param y the index into list2
+     * @return true if it doesn't cross an existing line
+     */
+    private boolean noCrossover( int x, int y )
+    {
+        int i = joinIndex( list1[x] );
+        if ( i > 0 && rhs[i-1] > list2[y] )
+            return false;
+        if ( i < nJoins && lhs[i] == list1[x] )
+            i++;
+        return !(i < nJoins && rhs[i] < list2[y]);
     }
     /**
      * Compute the average lineDepth
      */
     private void computeLineDepth()
     {
-        int totalLDiffs=0;
-        int totalRDiffs = 0;
-        if ( lhs.size()>1 )
+        if ( nJoins>1 )
         {
-            // lhs and rhs should be the same size
-            for ( int i=1;i<lhs.size();i++ )
-            {
-                int lDiff = lhs.get(i).intValue()-lhs.get(i-1).intValue();
-                int rDiff = rhs.get(i).intValue()-rhs.get(i-1).intValue();
-                totalLDiffs += lDiff;
-                totalRDiffs += rDiff;
-            }
-            float nItems = lhs.size();
+            // the diffs between successive joins add up to the full span
+            int totalLDiffs = lhs[nJoins-1]-lhs[0];
+            int totalRDiffs = rhs[nJoins-1]-rhs[0];
+            float nItems = nJoins;
             float lAverage = (float)totalLDiffs / nItems;
             float rAverage = (float)totalRDiffs / nItems;
             averageLineDepth = (lAverage+rAverage)/2.0f;
@@ -92,48 +105,29 @@ public class Matrix
     }
     /**
      * Is the difference no more than some factor times line depth?
-     * @param qi the queue item to test
+     * @param diff the difference between the line ends
      * @return true if the line ends are not too far apart
      */
-    private boolean diffOK( QueueItem qi )
+    private boolean diffOK( int diff )
     {
-        return qi.diff < Math.round(averageLineDepth
+        return diff < Math.round(averageLineDepth
             *options.getFloat(Options.Keys.lineDepthFactor));
     }
-    /**
-     * Insert into a integer list keeping it sorted
-     * @param list the list to insert into
-     * @param item the item to insert
-     */
-    private void insertItem( ArrayList<Integer>list, int item )
-    {
-        int oldSize = list.size();
-        for ( int i=0;i<list.size();i++ )
-        {
-            int value= list.get(i).intValue();
-            if ( value >= item )
-            {
-                list.add( i,new Integer(item) );
-                break;
-            }
-        }
-        if ( oldSize == list.size() )
-            list.add( new Integer(item) );
-    }
     /**
      * Do a binary search
-     * @param the sorted list of Integers to search
+     * @param the sorted list to search
+     * @param len the number of items in use
      * @param item the item to looked for
      * @return true if it was there else false
      */
-    boolean find( ArrayList<Integer> list, int item )
+    boolean find( int[] list, int len, int item )
     {
         int top = 0;
-        int bot = list.size()-1;
+        int bot = len-1;
         while ( top <= bot )
         {
             int mid = (top+bot)/2;
-            int value = list.get(mid).intValue();
+            int value = list[mid];
             if ( item > value )
                 top = mid+1;
             else if ( item < value )
@@ -144,16 +138,36 @@ public class Matrix
         return false;
     }
     /**
-     * Would this queueItem have a unique x and y?
-     * @param qi the queue item
+     * Would this join have a unique x and y?
+     * @param x the index into list1
+     * @param y the index into list2
      * @return true if it is attached to neither lhs nor rhs
      */
-    boolean isUnique( QueueItem qi )
+    boolean isUnique( int x, int y )
     {
-        if ( find(this.lhs, list1[qi.x]) )
+        if ( find(lhs, nJoins, list1[x]) )
             return false;
         else
-            return !find(this.rhs,list2[qi.y]);
+            return !find(rhs, nJoins, list2[y]);
+    }
+    /**
+     * Record a join, keeping the joins sorted
+     * @param x the index into list1
+     * @param y the index into list2
+     */
+    private void join( int x, int y )
+    {
+        int i = joinIndex( list1[x] );
+        int tail = nJoins-i;
+        System.arraycopy( lhs, i, lhs, i+1, tail );
+        System.arraycopy( rhs, i, rhs, i+1, tail );
+        System.arraycopy( joinX, i, joinX, i+1, tail );
+        System.arraycopy( joinY, i, joinY, i+1, tail );
+        lhs[i] = list1[x];
+        rhs[i] = list2[y];
+        joinX[i] = x;
+        joinY[i] = y;
+        nJoins++;
     }
     /**
      * Compute the best alignment of two arrays of ints
@@ -167,52 +181,33 @@ public class Matrix
         this.list1 = list1;
         this.list2 = list2;
         this.options = options;
-        lhs = new ArrayList<>();
-        rhs = new ArrayList<>();
         averageLineDepth = Float.MAX_VALUE;
         // NB; y is first index, x second
         M = list2.length;
         N = list1.length;
-        QueueComparator qc = new QueueComparator();
-        // make queue 10 times the minimum of M,N
-        MinPQ<QueueItem> pq = new MinPQ<>(Math.min(M,N)*10,qc );
-        for ( int y=0;y<M;y++ )
-        {
-            for ( int x=0;x<N;x++ )
-            {
-                int diff = Math.abs(list2[y]-list1[x]);
-                QueueItem qi = new QueueItem(x,y,diff);
-                pq.insert( qi );
-            }
-        }
-        // now pop off the lowest unique min(M,N) joins
-        uniqueMap = new HashSet<>();
         int nAlignments = Math.min(M,N);
-        while ( uniqueMap.size()<nAlignments && !pq.isEmpty() )
+        lhs = new int[nAlignments];
+        rhs = new int[nAlignments];
+        joinX = new int[nAlignments];
+        joinY = new int[nAlignments];
+        CandidateQueue cq = new CandidateQueue( list1, list2 );
+        // now pop off the lowest unique min(M,N) joins
+        while ( nJoins<nAlignments && !cq.isEmpty() )
         {
-            QueueItem qi = pq.delMin();
-            // if already present diff will be smaller
-            if ( !uniqueMap.contains(qi) && noCrossover(qi) )
+            long c = cq.pop();
+            int x = CandidateQueue.x( c );
+            int y = CandidateQueue.y( c );
+            if ( noCrossover(x,y) )
             {
-                if ( diffOK(qi) && isUnique(qi) )
+                if ( diffOK(CandidateQueue.diff(c)) && isUnique(x,y) )
                 {
-                    insertItem(lhs,list1[qi.x]);
-                    insertItem(rhs,list2[qi.y]);
+                    join( x, y );
                     computeLineDepth();
-                    uniqueMap.add( qi );
                 }
                 else
                     break;
             }
         }
-        // dump unique map
-//        System.out.println("dumping map");
-//        Iterator<QueueItem> iter = uniqueMap.iterator();
-//        while ( iter.hasNext() )
-//        {
-//            QueueItem qi = iter.next();
-//            System.out.println(qi);
-//        }
     }
     
     // now we have a map of minimal unique alignments
@@ -225,13 +220,11 @@ public class Matrix
         ArrayList<MoveItem>moves = new ArrayList<>();
         boolean[] list1Marked = new boolean[list1.length];
         boolean[] list2Marked = new boolean[list2.length];
-        Iterator<QueueItem>iter = uniqueMap.iterator();
-        while ( iter.hasNext() )
+        for ( int i=0;i<nJoins;i++ )
         {
-            QueueItem qi = iter.next();
-            list1Marked[qi.x] = true;
-            list2Marked[qi.y] = true;
-            moves.add( new MoveItem(list1[qi.x],list2[qi.y],Move.exch) );
+            list1Marked[joinX[i]] = true;
+            list2Marked[joinY[i]] = true;
+            moves.add( new MoveItem(lhs[i],rhs[i],Move.exch) );
         }
         // add lines that petered out
         for ( int i=0;i<list1Marked.length;i++ )
@@ -31,5 +31,10 @@
  * the current average line-depth it will not join up any more lines.
  * The points left over on the left become "deletions" and the unattached
  * ones on the right become "insertions".</p>
+ * <p>Since both lists of y-positions are sorted the candidate joins are
+ * produced in order of increasing difference by a CandidateQueue, which
+ * only ever holds the next closest pair for each point on the right. The
+ * joins made are kept in sorted arrays, so testing whether a new one
+ * would cross them needs only a binary search.</p>
  */
 package tilt.image.matchup;
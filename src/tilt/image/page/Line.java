@@ -19,9 +19,12 @@
 package tilt.image.page;
 import tilt.image.geometry.Polygon;
 import tilt.image.geometry.Point;
+import tilt.image.geometry.Outline;
 import tilt.image.geometry.Segment;
+import tilt.image.RasterView;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.awt.Graphics;
 import java.awt.Shape;
 import java.awt.Rectangle;
@@ -61,12 +64,28 @@ public class Line implements Comparable<Line>
     public static final int NO_OFFSET = -1;
     /** true if this line is short and between-lines */
     boolean rogue;
+    /** measured gaps, keyed by the shape on the left */
+    IdentityHashMap<Polygon,Gap> gaps;
+    /**
+     * The distance from a shape to the one after it
+     */
+    static class Gap
+    {
+        Polygon right;
+        double distance;
+        Gap( Polygon right, double distance )
+        {
+            this.right = right;
+            this.distance = distance;
+        }
+    }
     public Line()
     {
         points = new ArrayList<>();
         shapes = new ArrayList<>();
         words = new ArrayList<>();
         shared = new HashMap<>();
+        gaps = new IdentityHashMap<>();
         open = true;
     }
     /**
@@ -145,7 +164,7 @@ public class Line implements Comparable<Line>
             Polygon pg = shapes.get(i);
             if ( prev != null )
             {
-                double gap = prev.distanceBetween( pg );
+                double gap = gapBetween( prev, pg );
                 Integer key = new Integer((int)Math.round(gap));
                 int current = 0;
                 if ( map.containsKey(key) )
@@ -219,7 +238,7 @@ public class Line implements Comparable<Line>
     {
         if ( points.size()>0 )
         {
-            int[] iArray = new int[1];
+            RasterView rv = new RasterView( wr );
             java.awt.Point leftMost = points.get(0).toAwt();
             int top = Math.round(leftMost.y);
             int bottom = top+vScale;
@@ -230,8 +249,7 @@ public class Line implements Comparable<Line>
             {
                 for ( int y=top;y<=bottom;y++ )
                 {
-                    wr.getPixel( x,y, iArray );
-                    if ( iArray[0] <= black )
+                    if ( rv.inside(x,y) && rv.get(x,y) <= black )
                     {
                         nPixels++;
                         if ( nPixels >= 2 )
@@ -278,7 +296,7 @@ public class Line implements Comparable<Line>
     public void refineRight( WritableRaster wr, int hScale, int vScale, int black )
     {
         boolean boundary = false;
-        int[] iArray = new int[1];
+        RasterView rv = new RasterView( wr );
         while ( !boundary && points.size()>0 )
         {
             java.awt.Point rightMost= points.get(points.size()-1).toAwt();
@@ -292,8 +310,7 @@ public class Line implements Comparable<Line>
                 int y;
                 for ( y=top;y<=bottom;y++ )
                 {
-                    wr.getPixel( x,y, iArray );
-                    if ( iArray[0] <= black )
+                    if ( rv.inside(x,y) && rv.get(x,y) <= black )
                     {
                         nPixels++;
                         if ( nPixels >= 2 )
@@ -503,7 +520,7 @@ public class Line implements Comparable<Line>
             if ( prev != null )
             {
                 // gaps will change due to merging
-                int current = (int)Math.round(prev.distanceBetween(pg) );
+                int current = (int)Math.round(gapBetween(prev,pg) );
                 if ( current >= minWordGap  )
                     positions.add( new Integer(i) );
             }
@@ -528,6 +545,7 @@ public class Line implements Comparable<Line>
             last = pos;
         }
         this.shapes = newShapes;
+        gaps.clear();
     }
     /**
      * Compute the horizontal overlap between two lines
@@ -676,19 +694,12 @@ public class Line implements Comparable<Line>
         {
             JSONObject feature = new JSONObject();
             feature.put("type","Feature");
-            ArrayList<Point> pts = shapes.get(i).toPoints();
+            Outline outline = shapes.get(i).getOutline();
             JSONObject geometry = new JSONObject();
-            JSONArray coordinates = new JSONArray();
-            for ( int j=0;j<pts.size();j++ )
-            {
+            if ( outline.size() > 0 )
                 geometry.put("type","Polygon");
-                JSONArray point = new JSONArray();
-                Point pt = pts.get(j);
-                point.add( pt.x/(float)pageWidth );
-                point.add( pt.y/(float)pageHeight );
-                coordinates.add( point );
-            }
-            geometry.put( "coordinates", coordinates );
+            geometry.put( "coordinates", outline.toGeoJSON(pageWidth,
+                pageHeight) );
             feature.put( "geometry", geometry );
             // add feature properties like text-offset here
             if ( words.size() >i )
@@ -872,6 +883,32 @@ public class Line implements Comparable<Line>
     public void resetShapes()
     {
         shapes.clear();
+        gaps.clear();
+    }
+    /**
+     * Get the distance between two shapes of this line. The distance is
+     * remembered, so that repeated passes over the same pairs of shapes 
+     * only measure them once. Shapes must not change once measured.
+     * @param left the shape on the left
+     * @param right the next shape on the right
+     * @return their distance apart as in Polygon.distanceBetween
+     */
+    public double gapBetween( Polygon left, Polygon right )
+    {
+        Gap gap = gaps.get( left );
+        if ( gap == null || gap.right != right )
+        {
+            gap = new Gap( right, left.distanceBetween(right) );
+            gaps.put( left, gap );
+        }
+        return gap.distance;
+    }
+    /**
+     * Forget the gaps measured so far
+     */
+    public void clearGaps()
+    {
+        gaps.clear();
     }
     public void setShapes( ArrayList<Polygon> shapes )
     {
@@ -961,11 +998,11 @@ public class Line implements Comparable<Line>
         int N = 0;
         for ( Polygon p : chosen )
         {
-            ArrayList<Point> pts = p.toPoints();
-            for ( Point pt : pts )
+            Outline outline = p.getOutline();
+            for ( int j=0;j<outline.size();j++ )
             {
-                totalX += pt.x;
-                totalY += pt.y;
+                totalX += outline.getX(j);
+                totalY += outline.getY(j);
                 N++;
             }
         }
@@ -43,7 +43,7 @@ import tilt.handler.post.Options;
 public class Page 
 {
     ArrayList<Line> lines;
-    QuadTree qt;
+    ShapeIndex shapes;
     int medianLineDepth;
     public int averageLineWidth;
     public int averageLineDepth;
@@ -65,8 +65,7 @@ public class Page
     {
         this.numWords = numWords;
         this.options = options;
-        this.qt = new QuadTree( cropRect.x, cropRect.y, cropRect.width,
-            cropRect.height);
+        this.shapes = new ShapeIndex( cropRect );
         lines = new ArrayList<>();
         for ( int i=0;i<cols.length-1;i++ )
         {
@@ -203,7 +202,7 @@ public class Page
     {
         if ( pg.getLine() != null )
             pg.getLine().add(pg);
-        this.qt.addPolygon(pg);
+        this.shapes.add(pg);
     }
     /**
      * Print the word shapes over the top of the original image
@@ -488,19 +487,24 @@ public class Page
         }
         return pixelWidth/(float) numChars;
     }
+    /**
+     * Count the shapes on all the lines
+     * @return the number of word-shapes on the page
+     */
+    public int countShapes()
+    {
+        int size = 0;
+        for ( int i=0;i<lines.size();i++ )
+            size += lines.get(i).countShapes();
+        return size;
+    }
     /**
      * Get the widths of all the shapes on the page in pixels
      * @return an array of rounded shape widths as ints
      */
     public int[] getShapeWidths()
     {
-        int size = 0;
-        for ( int i=0;i<lines.size();i++ )
-        {
-            Line l = lines.get(i);
-            size += l.countShapes();
-        }
-        int[] widths = new int[size];
+        int[] widths = new int[countShapes()];
         int start = 0;
         for ( int i=0;i<lines.size();i++ )
         {
@@ -675,7 +679,7 @@ public class Page
     }
     public Polygon shapeForPoint( Point p )
     {
-        return this.qt.pointInPolygon( p );
+        return this.shapes.pointInPolygon( p );
     }
     public void joinLines()
     {
@@ -0,0 +1,236 @@
+/*
+ * This file is part of TILT.
+ *
+ *  TILT is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  TILT is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with TILT.  If not, see <http://www.gnu.org/licenses/>.
+ *  (c) copyright Desmond Schmidt 2015
+ */
+
+package tilt.image.page;
+
+import java.awt.Rectangle;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import tilt.image.geometry.Point;
+import tilt.image.geometry.Polygon;
+
+/**
+ * A spatial index of word shapes. The area is divided into a grid of
+ * square cells and each cell lists, by number, the shapes whose bounding
+ * boxes overlap it. The bounding boxes are kept in flat float arrays so a
+ * point is only tested against the polygons of the one cell it falls in,
+ * and only those whose boxes contain it. Shapes outside the area are
+ * filed in the nearest edge cells.
+ * @author desmond
+ */
+public class ShapeIndex
+{
+    /** width and height of a grid cell in pixels */
+    static final int CELL_SIZE = 32;
+    /** top-left of the grid */
+    int x0,y0;
+    int cols,rows;
+    /** shape numbers in each cell, in the order they were added */
+    int[][] cells;
+    int[] cellSizes;
+    Polygon[] shapes;
+    /** bounding boxes of the shapes, inclusive */
+    float[] minX,minY,maxX,maxY;
+    int size;
+    /** the query each shape was last reported in, to skip duplicates */
+    int[] seen;
+    int query;
+    /**
+     * Create an empty index
+     * @param area the area the shapes will mostly fall within
+     */
+    public ShapeIndex( Rectangle area )
+    {
+        this.x0 = area.x;
+        this.y0 = area.y;
+        this.cols = Math.max(1,(area.width+CELL_SIZE-1)/CELL_SIZE);
+        this.rows = Math.max(1,(area.height+CELL_SIZE-1)/CELL_SIZE);
+        this.cells = new int[cols*rows][];
+        this.cellSizes = new int[cols*rows];
+        int capacity = 64;
+        this.shapes = new Polygon[capacity];
+        this.minX = new float[capacity];
+        this.minY = new float[capacity];
+        this.maxX = new float[capacity];
+        this.maxY = new float[capacity];
+        this.seen = new int[capacity];
+    }
+    /**
+     * Create an index of some shapes all at once
+     * @param area the area the shapes will mostly fall within
+     * @param pgs the shapes
+     */
+    public ShapeIndex( Rectangle area, Collection<Polygon> pgs )
+    {
+        this( area );
+        for ( Polygon pg : pgs )
+            add( pg );
+    }
+    /**
+     * Get the column of the cell containing an x-value
+     * @param x the x-value
+     * @return the column, clamped to the grid
+     */
+    private int column( float x )
+    {
+        int col = (int)Math.floor((x-x0)/CELL_SIZE);
+        return (col<0)?0:(col>=cols)?cols-1:col;
+    }
+    /**
+     * Get the row of the cell containing a y-value
+     * @param y the y-value
+     * @return the row, clamped to the grid
+     */
+    private int row( float y )
+    {
+        int r = (int)Math.floor((y-y0)/CELL_SIZE);
+        return (r<0)?0:(r>=rows)?rows-1:r;
+    }
+    /**
+     * Make room for more shapes
+     */
+    private void grow()
+    {
+        int len = shapes.length*2;
+        shapes = Arrays.copyOf( shapes, len );
+        minX = Arrays.copyOf( minX, len );
+        minY = Arrays.copyOf( minY, len );
+        maxX = Arrays.copyOf( maxX, len );
+        maxY = Arrays.copyOf( maxY, len );
+        seen = Arrays.copyOf( seen, len );
+    }
+    /**
+     * Add a shape to the index. It must not be moved afterwards.
+     * @param pg the shape
+     */
+    public void add( Polygon pg )
+    {
+        if ( pg.points == null )
+            pg.toPoints();
+        if ( pg.points.length == 0 )
+            return;
+        if ( size == shapes.length )
+            grow();
+        float left = Float.MAX_VALUE;
+        float top = Float.MAX_VALUE;
+        float right = -Float.MAX_VALUE;
+        float bottom = -Float.MAX_VALUE;
+        for ( int i=0;i<pg.points.length;i++ )
+        {
+            Point pt = pg.points[i];
+            left = Math.min( left, pt.x );
+            top = Math.min( top, pt.y );
+            right = Math.max( right, pt.x );
+            bottom = Math.max( bottom, pt.y );
+        }
+        int id = size++;
+        shapes[id] = pg;
+        minX[id] = left;
+        minY[id] = top;
+        maxX[id] = right;
+        maxY[id] = bottom;
+        int colEnd = column(right);
+        int rowEnd = row(bottom);
+        for ( int r=row(top);r<=rowEnd;r++ )
+        {
+            for ( int c=column(left);c<=colEnd;c++ )
+            {
+                int cell = r*cols+c;
+                int n = cellSizes[cell];
+                if ( cells[cell] == null )
+                    cells[cell] = new int[4];
+                else if ( n == cells[cell].length )
+                    cells[cell] = Arrays.copyOf( cells[cell], n*2 );
+                cells[cell][n] = id;
+                cellSizes[cell] = n+1;
+            }
+        }
+    }
+    /**
+     * Is the point inside any of the shapes?
+     * @param pt the point to test
+     * @return the first shape added that contains it or null
+     */
+    public Polygon pointInPolygon( Point pt )
+    {
+        int cell = row(pt.y)*cols+column(pt.x);
+        int[] ids = cells[cell];
+        int n = cellSizes[cell];
+        for ( int i=0;i<n;i++ )
+        {
+            int id = ids[i];
+            if ( pt.x >= minX[id] && pt.x <= maxX[id]
+                && pt.y >= minY[id] && pt.y <= maxY[id]
+                && shapes[id].pointInPoly(pt) )
+                return shapes[id];
+        }
+        return null;
+    }
+    /**
+     * Find the shapes whose bounding boxes overlap a rectangle
+     * @param r the rectangle
+     * @return the shapes in the order they were added
+     */
+    public ArrayList<Polygon> intersecting( Rectangle2D r )
+    {
+        float left = (float)r.getMinX();
+        float top = (float)r.getMinY();
+        float right = (float)r.getMaxX();
+        float bottom = (float)r.getMaxY();
+        query++;
+        int[] ids = new int[16];
+        int found = 0;
+        int colEnd = column(right);
+        int rowEnd = row(bottom);
+        for ( int row=row(top);row<=rowEnd;row++ )
+        {
+            for ( int c=column(left);c<=colEnd;c++ )
+            {
+                int cell = row*cols+c;
+                for ( int i=0;i<cellSizes[cell];i++ )
+                {
+                    int id = cells[cell][i];
+                    if ( seen[id] != query && minX[id] <= right
+                        && maxX[id] >= left && minY[id] <= bottom
+                        && maxY[id] >= top )
+                    {
+                        seen[id] = query;
+                        if ( found == ids.length )
+                            ids = Arrays.copyOf( ids, found*2 );
+                        ids[found++] = id;
+                    }
+                }
+            }
+        }
+        Arrays.sort( ids, 0, found );
+        ArrayList<Polygon> list = new ArrayList<>( found );
+        for ( int i=0;i<found;i++ )
+            list.add( shapes[ids[i]] );
+        return list;
+    }
+    /**
+     * How many shapes are indexed?
+     * @return the number of shapes
+     */
+    public int size()
+    {
+        return size;
+    }
+}
@@ -20,6 +20,7 @@ package tilt.image.page;
 import tilt.image.geometry.Polygon;
 import tilt.image.geometry.Point;
 import java.awt.image.WritableRaster;
+import tilt.image.RasterView;
 import java.util.ArrayList;
 import tilt.align.Matchup;
 import tilt.image.convexhull.*;
@@ -118,20 +119,19 @@ public class Split
         int shapeHeight = shape.getBounds().height;
         ArrayList<Integer> shapeWidths = new ArrayList<>();
         ArrayList<Integer> gapWidths = new ArrayList<>();
-        int[] iArray = new int[1];
+        int shapeX = shape.getBounds().x;
+        int shapeY = shape.getBounds().y;
+        RasterView rv = new RasterView( wr );
+        if ( shapeWidth > 0 && shapeHeight > 0 && (!rv.inside(shapeX,shapeY)
+            || !rv.inside(shapeX+shapeWidth-1,shapeY+shapeHeight-1)) )
+            throw new SplitException("shape "+shape.getBounds()
+                +" lies outside the image");
         int shapeLen = 0;
         int gapLen = 0;
         for ( int i=0;i<shapeWidth;i++ )
         {
-            int blackPixels = 0;
-            int x = i+shape.getBounds().x;
-            for ( int j=0;j<shapeHeight;j++ )
-            {
-                int y = j+shape.getBounds().y;
-                wr.getPixel( x, y, iArray );
-                if ( iArray[0] == 0 )
-                    blackPixels++;
-            }
+            int x = i+shapeX;
+            int blackPixels = rv.countBlack( x, shapeY, 1, shapeHeight );
             if ( blackPixels > 0 )
             {
                 if ( shapeLen > 0 && gapLen > 0 )
@@ -0,0 +1,130 @@
+/*
+ * This file is part of TILT.
+ *
+ *  TILT is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  TILT is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with TILT.  If not, see <http://www.gnu.org/licenses/>.
+ *  (c) copyright Desmond Schmidt 2015
+ */
+
+package tilt.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+/**
+ * A latency histogram with fixed buckets, from a millisecond to a minute,
+ * that also adds up the bytes allocated by the timed operations. Recording
+ * is lock-free so it can be shared by all the request threads.
+ * @author desmond
+ */
+public class Histogram
+{
+    /** upper bounds of the buckets in milliseconds; the last is unbounded */
+    static final long[] BOUNDS = {1,2,5,10,25,50,100,250,500,1000,2500,
+        5000,10000,30000,60000};
+    final String family;
+    final String name;
+    /** number of observations in each bucket, not cumulative */
+    final AtomicLongArray buckets;
+    final AtomicLong count;
+    final AtomicLong totalNanos;
+    final AtomicLong maxNanos;
+    final AtomicLong allocated;
+    /**
+     * Create an empty histogram
+     * @param family the kind of operation, e.g. "stage"
+     * @param name the operation itself, e.g. "preflight"
+     */
+    Histogram( String family, String name )
+    {
+        this.family = family;
+        this.name = name;
+        this.buckets = new AtomicLongArray( BOUNDS.length+1 );
+        this.count = new AtomicLong();
+        this.totalNanos = new AtomicLong();
+        this.maxNanos = new AtomicLong();
+        this.allocated = new AtomicLong();
+    }
+    /**
+     * Record one operation
+     * @param nanos how long it took
+     * @param bytes the bytes it allocated, or 0 if not known
+     */
+    void record( long nanos, long bytes )
+    {
+        long millis = nanos/1000000;
+        int i = 0;
+        while ( i < BOUNDS.length && millis >= BOUNDS[i] )
+            i++;
+        buckets.incrementAndGet( i );
+        count.incrementAndGet();
+        totalNanos.addAndGet( nanos );
+        allocated.addAndGet( bytes );
+        long max = maxNanos.get();
+        while ( nanos > max && !maxNanos.compareAndSet(max,nanos) )
+            max = maxNanos.get();
+    }
+    /**
+     * Describe the histogram as JSON
+     * @return an object with count, total, mean and max milliseconds,
+     * allocated bytes and the bucket counts
+     */
+    JSONObject toJSON()
+    {
+        JSONObject jObj = new JSONObject();
+        long n = count.get();
+        jObj.put( "count", n );
+        jObj.put( "totalMs", totalNanos.get()/1000000.0 );
+        jObj.put( "meanMs", (n==0)?0.0:totalNanos.get()/1000000.0/n );
+        jObj.put( "maxMs", maxNanos.get()/1000000.0 );
+        jObj.put( "allocatedBytes", allocated.get() );
+        JSONArray jBuckets = new JSONArray();
+        for ( int i=0;i<buckets.length();i++ )
+        {
+            JSONObject b = new JSONObject();
+            b.put( "le", (i<BOUNDS.length)?Long.toString(BOUNDS[i]):"+Inf" );
+            b.put( "count", buckets.get(i) );
+            jBuckets.add( b );
+        }
+        jObj.put( "bucketsMs", jBuckets );
+        return jObj;
+    }
+    /**
+     * Write the histogram in the Prometheus text format. The TYPE lines
+     * are written once per family by the caller.
+     * @param sb the buffer to write to
+     */
+    void toPrometheus( StringBuilder sb )
+    {
+        String prefix = "tilt_"+family;
+        String label = "name=\""+name+"\"";
+        long cumulative = 0;
+        for ( int i=0;i<buckets.length();i++ )
+        {
+            cumulative += buckets.get(i);
+            String le = (i<BOUNDS.length)?Double.toString(BOUNDS[i]/1000.0)
+                :"+Inf";
+            sb.append(prefix).append("_seconds_bucket{").append(label)
+                .append(",le=\"").append(le).append("\"} ")
+                .append(cumulative).append('\n');
+        }
+        sb.append(prefix).append("_seconds_sum{").append(label).append("} ")
+            .append(totalNanos.get()/1.0e9).append('\n');
+        sb.append(prefix).append("_seconds_count{").append(label)
+            .append("} ").append(count.get()).append('\n');
+        sb.append(prefix).append("_allocated_bytes_total{").append(label)
+            .append("} ").append(allocated.get()).append('\n');
+    }
+}
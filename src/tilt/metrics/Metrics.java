@@ -0,0 +1,243 @@
+/*
+ * This file is part of TILT.
+ *
+ *  TILT is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  TILT is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with TILT.  If not, see <http://www.gnu.org/licenses/>.
+ *  (c) copyright Desmond Schmidt 2015
+ */
+
+package tilt.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.json.simple.JSONObject;
+
+/**
+ * Timings, allocation and counts for everything a recognition does: each
+ * stage of the Picture, the registry, fetches from other servers and
+ * writes to the database. Operations are timed like this:
+ * <pre>
+ * Metrics.Timer t = Metrics.start( Metrics.STAGE, "cleaned" );
+ * try { ... } finally { t.stop(); }
+ * </pre>
+ * and quantities are added up with count. Everything is kept since the
+ * service started and is served as JSON or Prometheus text by
+ * TiltMetricsHandler. Allocation is measured per thread by the JVM's
+ * ThreadMXBean, where it supports that.
+ * @author desmond
+ */
+public class Metrics
+{
+    /** the stages of a Picture */
+    public static final String STAGE = "stage";
+    /** calls on the PictureRegistry */
+    public static final String REGISTRY = "registry";
+    /** fetches from urls: images, texts, options */
+    public static final String FETCH = "fetch";
+    /** reads and writes of the database */
+    public static final String DB = "db";
+    /** histograms keyed by family and name */
+    static final ConcurrentHashMap<String,Histogram> histograms =
+        new ConcurrentHashMap<>();
+    /** running totals keyed by name */
+    static final ConcurrentHashMap<String,AtomicLong> counters =
+        new ConcurrentHashMap<>();
+    /** the per-thread allocation counter, or null if there isn't one */
+    static final com.sun.management.ThreadMXBean allocations =
+        getAllocationBean();
+    static final long started = System.currentTimeMillis();
+    /**
+     * Find a ThreadMXBean that can count allocated bytes and turn it on
+     * @return the bean or null if this JVM has none
+     */
+    private static com.sun.management.ThreadMXBean getAllocationBean()
+    {
+        try
+        {
+            ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            if ( bean instanceof com.sun.management.ThreadMXBean )
+            {
+                com.sun.management.ThreadMXBean sunBean =
+                    (com.sun.management.ThreadMXBean)bean;
+                if ( sunBean.isThreadAllocatedMemorySupported() )
+                {
+                    if ( !sunBean.isThreadAllocatedMemoryEnabled() )
+                        sunBean.setThreadAllocatedMemoryEnabled( true );
+                    return sunBean;
+                }
+            }
+        }
+        catch ( Throwable t )
+        {
+            // not a HotSpot JVM or not allowed: go without
+        }
+        return null;
+    }
+    /**
+     * Get the bytes allocated so far by the current thread
+     * @return the count or 0 if it can't be measured
+     */
+    static long allocatedBytes()
+    {
+        if ( allocations == null )
+            return 0;
+        return allocations.getThreadAllocatedBytes(
+            Thread.currentThread().getId() );
+    }
+    /**
+     * Get a histogram, creating it on first use
+     * @param family the kind of operation
+     * @param name the operation
+     * @return the histogram
+     */
+    static Histogram histogram( String family, String name )
+    {
+        String key = family+"/"+name;
+        Histogram h = histograms.get( key );
+        if ( h == null )
+        {
+            Histogram fresh = new Histogram( family, name );
+            h = histograms.putIfAbsent( key, fresh );
+            if ( h == null )
+                h = fresh;
+        }
+        return h;
+    }
+    /**
+     * Start timing an operation on this thread
+     * @param family one of STAGE, REGISTRY, FETCH or DB
+     * @param name what is being done, e.g. "twotone"
+     * @return a timer to stop when it is done
+     */
+    public static Timer start( String family, String name )
+    {
+        return new Timer( histogram(family,name) );
+    }
+    /**
+     * Add to a running total
+     * @param name the name of the total, e.g. "blobs"
+     * @param amount the amount to add
+     */
+    public static void count( String name, long amount )
+    {
+        AtomicLong c = counters.get( name );
+        if ( c == null )
+        {
+            AtomicLong fresh = new AtomicLong();
+            c = counters.putIfAbsent( name, fresh );
+            if ( c == null )
+                c = fresh;
+        }
+        c.addAndGet( amount );
+    }
+    /**
+     * Get the histograms sorted by family and name
+     * @return a list of them
+     */
+    private static ArrayList<String> sortedKeys()
+    {
+        ArrayList<String> keys = new ArrayList<>( histograms.keySet() );
+        Collections.sort( keys );
+        return keys;
+    }
+    /**
+     * Describe all the metrics as JSON
+     * @return an object with one member per family of histograms and one
+     * for the counters
+     */
+    public static JSONObject toJSON()
+    {
+        JSONObject jObj = new JSONObject();
+        jObj.put( "uptimeMs", System.currentTimeMillis()-started );
+        jObj.put( "allocationMeasured", allocations != null );
+        for ( String key : sortedKeys() )
+        {
+            Histogram h = histograms.get( key );
+            JSONObject family = (JSONObject)jObj.get( h.family );
+            if ( family == null )
+            {
+                family = new JSONObject();
+                jObj.put( h.family, family );
+            }
+            family.put( h.name, h.toJSON() );
+        }
+        JSONObject jCounters = new JSONObject();
+        for ( Map.Entry<String,AtomicLong> e : counters.entrySet() )
+            jCounters.put( e.getKey(), e.getValue().get() );
+        jObj.put( "counters", jCounters );
+        return jObj;
+    }
+    /**
+     * Write all the metrics in the Prometheus text exposition format
+     * @param sb the buffer to write to
+     */
+    public static void toPrometheus( StringBuilder sb )
+    {
+        String lastFamily = null;
+        for ( String key : sortedKeys() )
+        {
+            Histogram h = histograms.get( key );
+            if ( !h.family.equals(lastFamily) )
+            {
+                sb.append("# TYPE tilt_").append(h.family)
+                    .append("_seconds histogram\n");
+                sb.append("# TYPE tilt_").append(h.family)
+                    .append("_allocated_bytes_total counter\n");
+                lastFamily = h.family;
+            }
+            h.toPrometheus( sb );
+        }
+        ArrayList<String> names = new ArrayList<>( counters.keySet() );
+        Collections.sort( names );
+        for ( String name : names )
+        {
+            sb.append("# TYPE tilt_").append(name).append("_total counter\n");
+            sb.append("tilt_").append(name).append("_total ")
+                .append(counters.get(name).get()).append('\n');
+        }
+    }
+    /**
+     * Times one operation on one thread, with the bytes it allocates
+     */
+    public static class Timer
+    {
+        final Histogram h;
+        final long start;
+        final long startBytes;
+        boolean stopped;
+        Timer( Histogram h )
+        {
+            this.h = h;
+            this.startBytes = allocatedBytes();
+            this.start = System.nanoTime();
+        }
+        /**
+         * Record the time and allocation since the timer started. Only the
+         * first call counts, so it is safe in a finally block.
+         */
+        public void stop()
+        {
+            if ( !stopped )
+            {
+                long nanos = System.nanoTime()-start;
+                stopped = true;
+                h.record( nanos, Math.max(0,allocatedBytes()-startBytes) );
+            }
+        }
+    }
+}
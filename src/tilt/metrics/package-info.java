@@ -13,26 +13,15 @@
  *
  *  You should have received a copy of the GNU General Public License
  *  along with TILT.  If not, see <http://www.gnu.org/licenses/>.
- *  (c) copyright Desmond Schmidt 2014
+ *  (c) copyright Desmond Schmidt 2015
  */
 
-package tilt.image.matchup;
-
-import java.util.Comparator;
-
 /**
- * Compare two QueueItems
- * @author desmond
+ * This package measures where the time goes in a recognition. {@link
+ * tilt.metrics.Metrics} keeps a latency {@link tilt.metrics.Histogram} for
+ * each stage of a {@link tilt.image.Picture}, each kind of registry call,
+ * each fetch from another server and each database write, together with
+ * the bytes allocated by them and running totals of the pixels, blobs,
+ * lines and words processed. They are served at /tilt/metrics.
  */
-public class QueueComparator implements Comparator<QueueItem> 
-{
-    public int compare( QueueItem q1, QueueItem q2 )
-    {
-        if ( q1.diff<q2.diff )
-            return-1;
-        else if ( q1.diff > q2.diff )
-            return 1;
-        else
-            return 0;
-    }
-}
+package tilt.metrics;
@@ -553,32 +553,49 @@ function Tilt(docid,pageid) {
     };
     /** 
      * Update the progress bar and its message
-     * @param client the XHttpClient 
-     * @param readSoFar number of chars read so far
-     */
-    this.updateProgress = function( client, readSoFar ) {
-        var len = client.responseText.length-readSoFar;
-        var num = client.responseText.substr(readSoFar,len);
-        if (num.length <= 0 )
-            num = client.responseText;
-        var numbers = num.split("\n");
-        for ( var i=0;i<numbers.length;i++ )
+     * @param job the status of a recognition job
+     */
+    this.updateProgress = function( job ) {
+        $("#progress_message").text(job.message);
+        jQuery("#szliderbar").css("width",job.progress+"%");
+    };
+    /**
+     * Hide the progress bar
+     */
+    this.hideProgress = function() {
+        $("#progress").css("visibility","hidden");
+        $("#progress").css("z-index","-11");
+    };
+    /**
+     * Wait for a recognition job to change, then show its progress, until 
+     * it is done. The server holds each request until there is news.
+     * @param job the job's last known status
+     */
+    this.pollJob = function( job ) {
+        self.updateProgress(job);
+        if ( job.state == "done" )
         {
-            if ( numbers[i].length > 0 )
-            {
-                var parts = numbers[i].split(" ");
-                if ( parts != undefined && parts.length>0 )
-                {
-                    var val = parseInt(parts[0]);
-                    var rest = parts.slice(1);
-                    var text_message = rest.join(" ");
-                    $("#progress_message").text(text_message);
-                    var percent = Math.round((val*100)/100);
-                    jQuery("#szliderbar").css("width",percent+"%");
-                }
-            }
+            setTimeout(function(){
+                self.hideProgress();
+                self.getGeoJson($("#documents").val(),$("#pages").val());
+            }, 1000);
+        }
+        else if ( job.state == "failed" )
+        {
+            console.log("Recognition failed: "+job.error);
+            self.hideProgress();
+        }
+        else
+        {
+            var url = "http://"+window.location.hostname
+                +"/tilt/job?id="+job.id+"&version="+job.version+"&wait=15000";
+            $.get(url,function(data){
+                self.pollJob( (typeof data==="string")?JSON.parse(data):data );
+            }).fail(function(){
+                console.log("Failed to get job status");
+                self.hideProgress();
+            });
         }
-        return client.responseText.length;
     };
     /**
      * Toggle between honouring line-breaks and ignoring them
@@ -682,7 +699,6 @@ function Tilt(docid,pageid) {
         var text = $("#flow").html();
         var obj = {geojson: json, text:text, docid:$("#documents").val(),
             pageid:$("#pages").val()};
-        var readSoFar=0;
         var client = new XMLHttpRequest();
         client.open("POST", "http://"+window.location.hostname+"/tilt/recognise/");
         var boundary = self.createBoundary();
@@ -694,37 +710,16 @@ function Tilt(docid,pageid) {
         var visibility = progress.css("visibility","visible");
         progress.css("z-index","20");
         client.onreadystatechange = function(){
-            // readyState 4 means that the flow has ended
+            // readyState 4 means that the job has been queued (or refused)
             if( client.readyState == 4 )
             {
                 if ( client.status >= 300 )
                 {
                     console.log("Error:"+client.status);
-                    $("#progress").css("visibility","hidden");
-                    $("#progress").css("z-index","-11");    
+                    self.hideProgress();
                 }
                 else
-                {
-                    readSoFar = self.updateProgress(client,readSoFar);
-                    setTimeout(function(){
-                        $("#progress").css("visibility","hidden");
-                        $("#progress").css("z-index","-11");
-                        self.getGeoJson($("#documents").val(),$("#pages").val());
-                    }, 1000);
-                }
-                
-            }
-            // readyState 3 means that data is ready
-            else if (client.readyState == 3) 
-            {
-                if (client.status ==200) 
-                {
-                    readSoFar = self.updateProgress(client,readSoFar);
-                }
-                else if ( client.status >= 300 )
-                {
-                   console.log("Error:"+client.status);
-                }
+                    self.pollJob( JSON.parse(client.responseText) );
             }
         };
     });